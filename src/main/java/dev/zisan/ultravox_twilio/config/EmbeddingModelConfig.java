@@ -0,0 +1,64 @@
+package dev.zisan.ultravox_twilio.config;
+
+import dev.zisan.ultravox_twilio.repository.EmbeddingCacheRepository;
+import dev.zisan.ultravox_twilio.service.CachingEmbeddingModel;
+import dev.zisan.ultravox_twilio.service.CoalescingEmbeddingModel;
+import dev.zisan.ultravox_twilio.service.LimitedEmbeddingModel;
+import dev.zisan.ultravox_twilio.service.LlmConcurrencyLimiter;
+import dev.zisan.ultravox_twilio.service.QueryCachingEmbeddingModel;
+import dev.zisan.ultravox_twilio.service.QuestionNormalizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+/**
+ * Wraps the Ollama embedding model in the application's decorators.
+ * The primary EmbeddingModel is what the vector store and all services get
+ * injected; the raw Ollama bean is only used here.
+ */
+@Configuration
+public class EmbeddingModelConfig {
+
+    @Bean
+    @Primary
+    public EmbeddingModel primaryEmbeddingModel(
+            OllamaEmbeddingModel ollamaEmbeddingModel,
+            EmbeddingCacheRepository embeddingCacheRepository,
+            QuestionNormalizer questionNormalizer,
+            LlmConcurrencyLimiter concurrencyLimiter,
+            MeterRegistry meterRegistry,
+            @Value("${spring.ai.ollama.embedding.model}") String modelName,
+            @Value("${rag.embedding-cache.enabled:true}") boolean cacheEnabled,
+            @Value("${rag.embedding-coalescer.enabled:true}") boolean coalescerEnabled,
+            @Value("${rag.embedding-coalescer.window-ms:5}") long coalescerWindowMs,
+            @Value("${rag.embedding-coalescer.max-batch-size:32}") int coalescerMaxBatchSize,
+            @Value("${rag.embedding-coalescer.max-in-flight:2}") int coalescerMaxInFlight,
+            @Value("${rag.query-embedding-cache.enabled:true}") boolean queryCacheEnabled,
+            @Value("${rag.query-embedding-cache.max-entries:5000}") int queryCacheMaxEntries,
+            @Value("${rag.query-embedding-cache.persistent:false}") boolean queryCachePersistent,
+            @Value("${rag.query-embedding-cache.persistent-ttl-days:30}") long queryCachePersistentTtlDays) {
+
+        // Innermost, so only calls that actually reach Ollama take a slot
+        EmbeddingModel model = new LimitedEmbeddingModel(ollamaEmbeddingModel, concurrencyLimiter);
+        if (cacheEnabled) {
+            model = new CachingEmbeddingModel(model, embeddingCacheRepository, modelName, meterRegistry);
+        }
+        if (coalescerEnabled) {
+            model = new CoalescingEmbeddingModel(model, Duration.ofMillis(coalescerWindowMs),
+                    coalescerMaxBatchSize, coalescerMaxInFlight, meterRegistry);
+        }
+        if (queryCacheEnabled) {
+            // Outermost, so cache hits never wait in the coalescer
+            model = new QueryCachingEmbeddingModel(model, questionNormalizer,
+                    queryCachePersistent ? embeddingCacheRepository : null, modelName,
+                    queryCacheMaxEntries, Duration.ofDays(queryCachePersistentTtlDays), meterRegistry);
+        }
+        return model;
+    }
+}
@@ -2,11 +2,14 @@ package dev.zisan.ultravox_twilio.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,13 +19,22 @@ import java.util.concurrent.TimeUnit;
 @Configuration
 public class HttpClientConfig {
 
+    /**
+     * Shared OkHttp client. With spring.threads.virtual.enabled its async
+     * calls run on virtual threads, like the request threads that make the
+     * blocking ones.
+     */
     @Bean
-    public OkHttpClient okHttpClient() {
-        return new OkHttpClient.Builder()
+    public OkHttpClient okHttpClient(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(60, TimeUnit.SECONDS)
-                .build();
+                .writeTimeout(60, TimeUnit.SECONDS);
+        if (virtualThreads) {
+            builder.dispatcher(new Dispatcher(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("okhttp-", 0).factory())));
+        }
+        return builder.build();
     }
 
     /**
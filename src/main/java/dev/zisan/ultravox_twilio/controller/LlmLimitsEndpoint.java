@@ -0,0 +1,25 @@
+package dev.zisan.ultravox_twilio.controller;
+
+import dev.zisan.ultravox_twilio.service.LlmConcurrencyLimiter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint (/actuator/llmlimits) showing the current adaptive
+ * limits of the local models and the usage and rejections of each caller
+ * bulkhead.
+ */
+@Component
+@Endpoint(id = "llmlimits")
+@RequiredArgsConstructor
+public class LlmLimitsEndpoint {
+
+    private final LlmConcurrencyLimiter concurrencyLimiter;
+
+    @ReadOperation
+    public LlmConcurrencyLimiter.Status limits() {
+        return concurrencyLimiter.status();
+    }
+}
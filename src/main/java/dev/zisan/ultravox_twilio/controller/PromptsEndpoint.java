@@ -0,0 +1,57 @@
+package dev.zisan.ultravox_twilio.controller;
+
+import dev.zisan.ultravox_twilio.service.PromptRegistry;
+import dev.zisan.ultravox_twilio.service.PromptTemplate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Actuator endpoint (/actuator/prompts) showing the loaded prompt templates
+ * with their token counts and the variant each path uses. POST
+ * /actuator/prompts/{use} with {"variant": "compact"} switches a path at
+ * runtime; an unknown use or variant gets a 400.
+ */
+@Component
+@Endpoint(id = "prompts")
+@RequiredArgsConstructor
+public class PromptsEndpoint {
+
+    private final PromptRegistry promptRegistry;
+
+    @ReadOperation
+    public PromptRegistry.Status prompts() {
+        return promptRegistry.status();
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<Object> switchVariant(@Selector String use, String variant) {
+        Optional<PromptRegistry.Use> target = Arrays.stream(PromptRegistry.Use.values())
+                .filter(u -> u.propertyName().equalsIgnoreCase(use))
+                .findFirst();
+        if (target.isEmpty()) {
+            return badRequest("Unknown prompt use: " + use);
+        }
+        Optional<PromptTemplate.Variant> selected = Arrays.stream(PromptTemplate.Variant.values())
+                .filter(v -> v.name().equalsIgnoreCase(variant.trim()))
+                .findFirst();
+        if (selected.isEmpty()) {
+            return badRequest("Unknown prompt variant: " + variant + ", expected one of "
+                    + Arrays.stream(PromptTemplate.Variant.values()).map(v -> v.name().toLowerCase()).toList());
+        }
+        promptRegistry.setVariant(target.get(), selected.get());
+        return new WebEndpointResponse<>(promptRegistry.status());
+    }
+
+    private static WebEndpointResponse<Object> badRequest(String message) {
+        return new WebEndpointResponse<>(Map.of("message", message), WebEndpointResponse.STATUS_BAD_REQUEST);
+    }
+}
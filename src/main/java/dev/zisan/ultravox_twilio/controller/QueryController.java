@@ -1,9 +1,14 @@
 package dev.zisan.ultravox_twilio.controller;
 
 import dev.zisan.ultravox_twilio.service.EducationRAGService;
+import dev.zisan.ultravox_twilio.service.LlmCaller;
+import dev.zisan.ultravox_twilio.service.PromptPrefixWarmer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import java.util.Map;
 
@@ -18,6 +23,7 @@ import java.util.Map;
 public class QueryController {
 
     private final EducationRAGService ragService;
+    private final PromptPrefixWarmer prefixWarmer;
 
     /**
      * Test endpoint to query the knowledge base directly.
@@ -36,7 +42,7 @@ public class QueryController {
         log.info("Test query received: {}", question);
 
         try {
-            String answer = ragService.answerQuestion(question);
+            String answer = ragService.answerQuestion(question, LlmCaller.TEST);
 
             return Map.of(
                     "question", question,
@@ -50,6 +56,38 @@ public class QueryController {
         }
     }
 
+    /**
+     * Streaming test endpoint - sends the answer sentence by sentence as
+     * server-sent events.
+     */
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> askQuestionStream(@RequestBody Map<String, String> request) {
+
+        String question = request.get("question");
+
+        if (question == null || question.isBlank()) {
+            return Flux.just(ServerSentEvent.<String>builder()
+                    .event("error")
+                    .data("Question is required")
+                    .build());
+        }
+
+        log.info("Test stream query received: {}", question);
+
+        return ragService.streamAnswer(question, LlmCaller.TEST)
+                .map(sentence -> ServerSentEvent.<String>builder()
+                        .event("sentence")
+                        .data(sentence)
+                        .build())
+                .onErrorResume(e -> {
+                    log.error("Error streaming answer", e);
+                    return Flux.just(ServerSentEvent.<String>builder()
+                            .event("error")
+                            .data(String.valueOf(e.getMessage()))
+                            .build());
+                });
+    }
+
     /**
      * Simple test endpoint without RAG - tests chat model connectivity.
      */
@@ -71,4 +109,20 @@ public class QueryController {
                     "error", e.getMessage());
         }
     }
+
+    /**
+     * Prefill benchmark - time to first token of the tutor prompt with a cold
+     * prefix against one Ollama can reuse.
+     */
+    @PostMapping("/prefill-benchmark")
+    public Map<String, Object> prefillBenchmark(@RequestParam(value = "runs", defaultValue = "3") int runs) {
+        log.info("Prefill benchmark requested ({} runs)", runs);
+
+        try {
+            return Map.of("benchmark", prefixWarmer.benchmark(Math.min(runs, 10)));
+        } catch (Exception e) {
+            log.error("Error in prefill benchmark", e);
+            return Map.of("error", String.valueOf(e.getMessage()));
+        }
+    }
 }
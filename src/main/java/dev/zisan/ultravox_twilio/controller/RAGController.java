@@ -1,12 +1,22 @@
 package dev.zisan.ultravox_twilio.controller;
 
 import dev.zisan.ultravox_twilio.service.EducationRAGService;
+import dev.zisan.ultravox_twilio.service.LocalVectorStore;
+import dev.zisan.ultravox_twilio.service.LocalVectorStoreReplica;
+import dev.zisan.ultravox_twilio.service.TextbookRetrievalService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * RAG endpoint called by Ultravox during voice conversations.
@@ -19,12 +29,25 @@ import java.util.Map;
 public class RAGController {
 
     private final EducationRAGService ragService;
+    private final TextbookRetrievalService retrievalService;
+    private final LocalVectorStoreReplica vectorStoreReplica;
+
+    @Value("${rag.streaming.first-sentences:2}")
+    private int defaultFirstSentences;
+
+    // The recall measurement holds the index read lock, so its size is bounded
+    private static final int MAX_RECALL_QUERIES = 1000;
+    private static final int MAX_RECALL_K = 50;
+
+    private static final String FALLBACK_ANSWER =
+            "I couldn't find information about that in the textbook. Please try asking in a different way.";
 
     /**
      * RAG endpoint called by Ultravox during conversation.
      * Ultravox sends the student's question here to get textbook-based answers.
      * 
      * Returns the answer in "result" field which Ultravox reads as the tool output.
+     * An optional "budgetMs" field overrides the latency budget for this call.
      */
     @PostMapping("/query")
     public ResponseEntity<Map<String, Object>> query(@RequestBody Map<String, String> request) {
@@ -40,7 +63,10 @@ public class RAGController {
         log.info("RAG tool called by Ultravox - Question: {}", question);
 
         try {
-            String answer = ragService.answerQuestion(question);
+            Duration budget = parseBudget(request.get("budgetMs"));
+            String answer = budget != null
+                    ? ragService.answerQuestion(question, budget)
+                    : ragService.answerQuestion(question);
 
             log.info("RAG response generated, length: {} chars", answer.length());
             log.debug("RAG answer content: {}", answer);
@@ -52,8 +78,170 @@ public class RAGController {
         } catch (Exception e) {
             log.error("Error in RAG query", e);
             return ResponseEntity.ok(Map.of(
-                    "result",
-                    "I couldn't find information about that in the textbook. Please try asking in a different way."));
+                    "result", FALLBACK_ANSWER));
+        }
+    }
+
+    private static Duration parseBudget(String budgetMs) {
+        if (budgetMs == null || budgetMs.isBlank()) {
+            return null;
+        }
+        try {
+            long millis = Long.parseLong(budgetMs.trim());
+            return millis > 0 ? Duration.ofMillis(millis) : null;
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid budgetMs: {}", budgetMs);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieval-only tool endpoint.
+     * Returns the most relevant textbook passages directly as the tool result
+     * without running the local chat model; the Ultravox agent's own LLM
+     * composes the spoken answer from them.
+     */
+    @PostMapping("/passages")
+    public ResponseEntity<Map<String, Object>> passages(@RequestBody Map<String, String> request) {
+
+        String question = request.get("question");
+
+        if (question == null || question.isBlank()) {
+            log.warn("Passage lookup called with empty question");
+            return ResponseEntity.badRequest().body(Map.of(
+                    "result", "No question was provided. Please ask a specific question."));
+        }
+
+        log.info("Passage tool called by Ultravox - Question: {}", question);
+
+        try {
+            String passages = retrievalService.retrievePassages(question);
+
+            if (passages.isBlank()) {
+                return ResponseEntity.ok(Map.of(
+                        "result", "No matching textbook passages were found. Answer from your own knowledge of the ICT curriculum."));
+            }
+
+            return ResponseEntity.ok(Map.of(
+                    "result", passages));
+
+        } catch (Exception e) {
+            log.error("Error in passage lookup", e);
+            return ResponseEntity.ok(Map.of(
+                    "result", FALLBACK_ANSWER));
+        }
+    }
+
+    /**
+     * Streaming variant of the RAG endpoint.
+     * Sends each sentence as a server-sent event as soon as the model has
+     * produced it, followed by a final "done" event.
+     */
+    @PostMapping(value = "/query/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> queryStream(@RequestBody Map<String, String> request) {
+
+        String question = request.get("question");
+
+        if (question == null || question.isBlank()) {
+            log.warn("RAG stream query called with empty question");
+            return Flux.just(ServerSentEvent.<String>builder()
+                    .event("error")
+                    .data("No question was provided. Please ask a specific question.")
+                    .build());
+        }
+
+        log.info("RAG stream called - Question: {}", question);
+
+        return ragService.streamAnswer(question)
+                .map(sentence -> ServerSentEvent.<String>builder()
+                        .event("sentence")
+                        .data(sentence)
+                        .build())
+                .concatWith(Mono.just(ServerSentEvent.<String>builder()
+                        .event("done")
+                        .data("")
+                        .build()))
+                .onErrorResume(e -> {
+                    log.error("Error in RAG stream query", e);
+                    return Flux.just(ServerSentEvent.<String>builder()
+                            .event("error")
+                            .data(FALLBACK_ANSWER)
+                            .build());
+                });
+    }
+
+    /**
+     * Early-return variant of the RAG endpoint.
+     * Responds in the usual Ultravox "result" format as soon as the first N
+     * sentences are ready and stops generation there. N comes from the
+     * "sentences" field of the request or rag.streaming.first-sentences.
+     */
+    @PostMapping("/query/first")
+    public Mono<ResponseEntity<Map<String, Object>>> queryFirstSentences(@RequestBody Map<String, String> request) {
+
+        String question = request.get("question");
+
+        if (question == null || question.isBlank()) {
+            log.warn("RAG first-sentences query called with empty question");
+            return Mono.just(ResponseEntity.badRequest().body(Map.<String, Object>of(
+                    "result", "No question was provided. Please ask a specific question.")));
+        }
+
+        int sentences = defaultFirstSentences;
+        if (request.get("sentences") != null) {
+            try {
+                sentences = Math.max(1, Integer.parseInt(request.get("sentences")));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid sentence count: {}", request.get("sentences"));
+            }
+        }
+
+        log.info("RAG first-sentences called ({} sentences) - Question: {}", sentences, question);
+
+        return ragService.streamAnswer(question)
+                .take(sentences)
+                .collect(Collectors.joining(" "))
+                .map(answer -> {
+                    log.info("RAG early response ready, length: {} chars", answer.length());
+                    return ResponseEntity.ok(Map.<String, Object>of("result", answer.isBlank() ? FALLBACK_ANSWER : answer));
+                })
+                .onErrorResume(e -> {
+                    log.error("Error in RAG first-sentences query", e);
+                    return Mono.just(ResponseEntity.ok(Map.<String, Object>of("result", FALLBACK_ANSWER)));
+                });
+    }
+
+    /**
+     * Layout and memory use of the in-memory vector index.
+     */
+    @GetMapping("/index")
+    public ResponseEntity<?> indexStats() {
+        LocalVectorStore localStore = vectorStoreReplica.localStore();
+        if (localStore == null) {
+            return ResponseEntity.ok(Map.of(
+                    "store", "pgvector",
+                    "message", "Local vector index is disabled (rag.vector-store.read=pgvector)"));
+        }
+        return ResponseEntity.ok(localStore.stats());
+    }
+
+    /**
+     * Recall of the in-memory index search path against exact full-precision
+     * search, using stored chunks as sample queries.
+     */
+    @GetMapping("/index/recall")
+    public ResponseEntity<?> indexRecall(
+            @RequestParam(value = "queries", defaultValue = "100") int queries,
+            @RequestParam(value = "k", defaultValue = "5") int k) {
+        if (queries < 1 || queries > MAX_RECALL_QUERIES || k < 1 || k > MAX_RECALL_K) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", "queries must be 1-" + MAX_RECALL_QUERIES + " and k 1-" + MAX_RECALL_K));
+        }
+        LocalVectorStore localStore = vectorStoreReplica.localStore();
+        if (localStore == null) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "message", "Local vector index is disabled (rag.vector-store.read=pgvector)"));
         }
+        return ResponseEntity.ok(localStore.measureRecall(queries, k));
     }
 }
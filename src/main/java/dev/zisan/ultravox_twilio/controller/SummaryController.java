@@ -2,6 +2,7 @@ package dev.zisan.ultravox_twilio.controller;
 
 import dev.zisan.ultravox_twilio.entity.ConversationSummary;
 import dev.zisan.ultravox_twilio.service.ConversationSummaryService;
+import dev.zisan.ultravox_twilio.service.SummaryTaskQueue;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -20,6 +21,7 @@ import java.util.Map;
 public class SummaryController {
 
     private final ConversationSummaryService summaryService;
+    private final SummaryTaskQueue summaryTaskQueue;
 
     /**
      * Get all conversation summaries.
@@ -103,4 +105,22 @@ public class SummaryController {
         ConversationSummary summary = summaryService.processCompletedCall(callId, ultravoxCallId, "unknown");
         return ResponseEntity.ok(summary);
     }
+
+    /**
+     * Post-call task queue: tasks per status, lag of the oldest due task
+     * and the dead tasks.
+     */
+    @GetMapping("/queue")
+    public ResponseEntity<SummaryTaskQueue.QueueStatus> getQueueStatus() {
+        return ResponseEntity.ok(summaryTaskQueue.status());
+    }
+
+    /**
+     * Requeue dead tasks, e.g. after an Ultravox or model outage.
+     */
+    @PostMapping("/queue/retry-dead")
+    public ResponseEntity<Map<String, Object>> retryDeadTasks() {
+        int requeued = summaryTaskQueue.retryDead();
+        return ResponseEntity.ok(Map.of("requeued", requeued));
+    }
 }
@@ -1,13 +1,18 @@
 package dev.zisan.ultravox_twilio.controller;
 
-import dev.zisan.ultravox_twilio.service.DocumentProcessingService;
+import dev.zisan.ultravox_twilio.entity.IngestionJob;
+import dev.zisan.ultravox_twilio.service.IngestionJobService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * REST controller for textbook upload and management.
@@ -18,46 +23,108 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class TextbookController {
 
-    private final DocumentProcessingService documentProcessingService;
+    private final IngestionJobService ingestionJobService;
 
     /**
      * Upload and index a textbook PDF.
-     * The PDF will be processed, chunked, and stored in the vector database.
+     * The PDF is queued as a background ingestion job; poll the returned job
+     * for progress.
      */
     @PostMapping("/upload")
-    public ResponseEntity<Map<String, String>> uploadTextbook(
+    public ResponseEntity<Map<String, Object>> uploadTextbook(
             @RequestParam("file") MultipartFile file) {
 
         log.info("Received textbook upload: {}, size: {} bytes",
                 file.getOriginalFilename(), file.getSize());
 
+        return submitJob(file, IngestionJob.Type.UPLOAD, null);
+    }
+
+    /**
+     * Re-index a new edition of an already uploaded textbook.
+     * Only new or changed chunks are embedded; unchanged chunks keep their
+     * vectors and chunks that disappeared are deleted. Without documentId,
+     * the stored textbook(s) with the same filename are replaced.
+     */
+    @PostMapping("/reindex")
+    public ResponseEntity<Map<String, Object>> reindexTextbook(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "documentId", required = false) String documentId) {
+
+        log.info("Received textbook re-index: {}, size: {} bytes, documentId: {}",
+                file.getOriginalFilename(), file.getSize(), documentId);
+
+        return submitJob(file, IngestionJob.Type.REINDEX, documentId);
+    }
+
+    /**
+     * List ingestion jobs, newest first.
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<List<IngestionJobService.JobStatus>> listJobs() {
+        return ResponseEntity.ok(ingestionJobService.listJobs());
+    }
+
+    /**
+     * Progress of an ingestion job: pages and chunks processed, throughput and
+     * ETA while running; chunk counts once finished.
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        return ingestionJobService.getStatus(jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Cancel an ingestion job. Chunks it already stored are removed.
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<?> cancelJob(@PathVariable String jobId) {
+        return ingestionJobService.cancel(jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<Map<String, Object>> submitJob(MultipartFile file, IngestionJob.Type type,
+            String documentId) {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of(
                     "status", "error",
                     "message", "File is empty"));
         }
 
-        if (!file.getContentType().equals("application/pdf")) {
+        if (!"application/pdf".equals(file.getContentType())) {
             return ResponseEntity.badRequest().body(Map.of(
                     "status", "error",
                     "message", "Only PDF files are supported"));
         }
 
         try {
-            String documentId = documentProcessingService.processTextbook(file);
+            Optional<IngestionJobService.JobStatus> queued = ingestionJobService.trySubmit(file, type, documentId);
+            if (queued.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of(
+                        "status", "error",
+                        "message", "Too many textbooks are being indexed, try again later"));
+            }
+            IngestionJobService.JobStatus job = queued.get();
 
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "documentId", documentId,
-                    "filename", file.getOriginalFilename(),
-                    "message", "Textbook indexed successfully"));
+            Map<String, Object> body = new HashMap<>();
+            body.put("status", "accepted");
+            body.put("jobId", job.jobId());
+            body.put("filename", file.getOriginalFilename());
+            body.put("statusUrl", "/api/textbooks/jobs/" + job.jobId());
+            if (job.documentId() != null) {
+                body.put("documentId", job.documentId());
+            }
+            return ResponseEntity.accepted().body(body);
 
         } catch (Exception e) {
-            log.error("Error processing textbook", e);
+            log.error("Error queueing textbook", e);
             return ResponseEntity.internalServerError()
                     .body(Map.of(
                             "status", "error",
-                            "message", "Failed to process textbook: " + e.getMessage()));
+                            "message", "Failed to queue textbook: " + e.getMessage()));
         }
     }
 
@@ -1,18 +1,26 @@
 package dev.zisan.ultravox_twilio.controller;
 
+import com.twilio.http.HttpMethod;
 import com.twilio.twiml.VoiceResponse;
 import com.twilio.twiml.voice.Connect;
+import com.twilio.twiml.voice.Pause;
+import com.twilio.twiml.voice.Redirect;
 import com.twilio.twiml.voice.Say;
 import com.twilio.twiml.voice.Stream;
-import dev.zisan.ultravox_twilio.service.ConversationSummaryService;
+import dev.zisan.ultravox_twilio.service.DeadlineExceededException;
+import dev.zisan.ultravox_twilio.service.SummaryTaskQueue;
 import dev.zisan.ultravox_twilio.service.UltravoxService;
+import dev.zisan.ultravox_twilio.service.UltravoxSessionPool;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -26,7 +34,15 @@ import java.util.concurrent.ConcurrentHashMap;
 public class TwilioWebhookController {
 
     private final UltravoxService ultravoxService;
-    private final ConversationSummaryService summaryService;
+    private final UltravoxSessionPool sessionPool;
+    private final SummaryTaskQueue summaryTaskQueue;
+
+    // Attempts at creating the Ultravox call before the caller hears the error message
+    @Value("${ultravox.create-call.retry.max-attempts:3}")
+    private int maxCreateCallAttempts;
+
+    @Value("${ultravox.create-call.retry.pause-seconds:1}")
+    private int retryPauseSeconds;
 
     // Store mapping of Twilio CallSid to Ultravox CallId and caller number
     private final Map<String, CallInfo> activeCallsMap = new ConcurrentHashMap<>();
@@ -39,23 +55,35 @@ public class TwilioWebhookController {
 
     /**
      * Handle incoming calls from Twilio.
-     * Creates an Ultravox session and returns TwiML to connect the call.
+     * Takes a pre-created Ultravox session from the pool, or creates one if
+     * none is ready, and returns TwiML to connect the call.
+     * An optional "profile" query parameter on the webhook URL selects the
+     * ultravox.profiles entry, so each Twilio number can use its own.
+     *
+     * If Ultravox does not answer within the call creation deadline, the
+     * caller is held with a short pause and Twilio is redirected back here
+     * ("attempt" counts the tries) instead of hearing the error message.
      */
     @PostMapping(value = "/incoming-call", produces = MediaType.APPLICATION_XML_VALUE)
     public String handleIncomingCall(
             @RequestParam(value = "CallSid", required = false) String callSid,
             @RequestParam(value = "From", required = false) String from,
+            @RequestParam(value = "profile", required = false) String profile,
+            @RequestParam(value = "attempt", defaultValue = "1") int attempt,
             HttpServletRequest request) {
 
-        log.info("Incoming call - CallSid: {}, From: {}", callSid, from);
+        log.info("Incoming call - CallSid: {}, From: {}, attempt: {}", callSid, from, attempt);
 
+        // Determine the base URL for callbacks
+        String baseUrl = getBaseUrl(request);
         try {
-            // Determine the base URL for callbacks
-            String baseUrl = getBaseUrl(request);
             log.info("Using base URL for callbacks: {}", baseUrl);
 
-            // Create Ultravox session and get both join URL and call ID
-            UltravoxService.UltravoxCallResult callResult = ultravoxService.createCallWithId(callSid, baseUrl);
+            // Take a pooled Ultravox session, or create one and get both join URL and call ID
+            UltravoxService.UltravoxCallResult callResult = sessionPool.take(baseUrl, profile).orElse(null);
+            if (callResult == null) {
+                callResult = ultravoxService.createCallWithId(callSid, baseUrl, profile);
+            }
             log.info("Ultravox session created, Call ID: {}, connecting stream to: {}",
                     callResult.callId(), callResult.joinUrl());
 
@@ -82,6 +110,15 @@ public class TwilioWebhookController {
             log.debug("Generated TwiML: {}", twiml);
             return twiml;
 
+        } catch (DeadlineExceededException e) {
+            if (attempt < maxCreateCallAttempts) {
+                log.warn("Ultravox call creation missed its deadline for CallSid {} (attempt {}), retrying: {}",
+                        callSid, attempt, e.getMessage());
+                return buildRetryResponse(baseUrl, profile, attempt + 1);
+            }
+            log.error("Ultravox call creation missed its deadline for CallSid {} after {} attempts",
+                    callSid, attempt);
+            return buildErrorResponse();
         } catch (Exception e) {
             log.error("Error handling incoming call", e);
             return buildErrorResponse();
@@ -126,16 +163,8 @@ public class TwilioWebhookController {
             log.info("Generating summary for ended call - CallSid: {}, UltravoxId: {}",
                     callSid, callInfo.ultravoxCallId());
 
-            // Process asynchronously to not block the webhook response
-            new Thread(() -> {
-                try {
-                    summaryService.processCompletedCall(callSid, callInfo.ultravoxCallId(),
-                            callInfo.callerNumber());
-                    log.info("Summary generated successfully for call: {}", callSid);
-                } catch (Exception e) {
-                    log.error("Error generating summary for call: {}", callSid, e);
-                }
-            }).start();
+            // Queued for the summary workers so the webhook responds at once
+            summaryTaskQueue.enqueue(callSid, callInfo.ultravoxCallId(), callInfo.callerNumber());
         } else {
             log.warn("No call info found for stream-ended call: {}", callSid);
         }
@@ -164,15 +193,8 @@ public class TwilioWebhookController {
                 log.info("Call completed, generating summary for CallSid: {}, UltravoxId: {}",
                         callSid, callInfo.ultravoxCallId());
 
-                // Process asynchronously to not block the webhook response
-                new Thread(() -> {
-                    try {
-                        summaryService.processCompletedCall(callSid, callInfo.ultravoxCallId(),
-                                callInfo.callerNumber());
-                    } catch (Exception e) {
-                        log.error("Error generating summary for call: {}", callSid, e);
-                    }
-                }).start();
+                // Queued for the summary workers so the webhook responds at once
+                summaryTaskQueue.enqueue(callSid, callInfo.ultravoxCallId(), callInfo.callerNumber());
             } else {
                 log.warn("No call info found for completed call: {}", callSid);
             }
@@ -206,6 +228,24 @@ public class TwilioWebhookController {
         return scheme + "://" + serverName + ":" + serverPort;
     }
 
+    /**
+     * Build TwiML that holds the caller briefly, then asks Twilio to post the
+     * incoming-call webhook again.
+     */
+    private String buildRetryResponse(String baseUrl, String profile, int nextAttempt) {
+        String retryUrl = UriComponentsBuilder.fromUriString(baseUrl + "/api/twilio/incoming-call")
+                .queryParam("attempt", nextAttempt)
+                .queryParamIfPresent("profile", Optional.ofNullable(profile))
+                .encode()
+                .toUriString();
+
+        VoiceResponse response = new VoiceResponse.Builder()
+                .pause(new Pause.Builder().length(retryPauseSeconds).build())
+                .redirect(new Redirect.Builder(retryUrl).method(HttpMethod.POST).build())
+                .build();
+        return response.toXml();
+    }
+
     /**
      * Build error response TwiML.
      */
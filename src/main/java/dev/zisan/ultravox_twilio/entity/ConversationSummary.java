@@ -38,6 +38,13 @@ public class ConversationSummary {
     @Column(name = "topics_discussed", columnDefinition = "TEXT")
     private String topicsDiscussed;
 
+    /**
+     * Set on the minimal record saved for a call that could not be
+     * summarized; a later successful summary replaces that record.
+     */
+    @Column(name = "failed")
+    private Boolean failed;
+
     @Column(name = "call_duration_seconds")
     private Integer callDurationSeconds;
 
@@ -0,0 +1,49 @@
+package dev.zisan.ultravox_twilio.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Persisted embedding of a chunk text, keyed by embedding model and content
+ * hash, so unchanged chunks are never sent to the embedding model twice.
+ */
+@Entity
+@Table(name = "embedding_cache")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingCacheEntry {
+
+    /**
+     * "model:sha256" of the embedded text.
+     */
+    @Id
+    @Column(name = "cache_key", length = 255)
+    private String cacheKey;
+
+    @Column(name = "model", nullable = false)
+    private String model;
+
+    @Column(name = "dimensions", nullable = false)
+    private Integer dimensions;
+
+    /**
+     * Little-endian float32 values.
+     */
+    @Column(name = "embedding", nullable = false, columnDefinition = "BYTEA")
+    private byte[] embedding;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
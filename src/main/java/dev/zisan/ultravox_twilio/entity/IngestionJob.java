@@ -0,0 +1,96 @@
+package dev.zisan.ultravox_twilio.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A textbook upload or re-index processed in the background.
+ * The PDF is spooled to disk until the job finishes, so jobs interrupted by a
+ * restart can be resumed.
+ */
+@Entity
+@Table(name = "ingestion_jobs")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJob {
+
+    public enum Type {
+        UPLOAD, REINDEX
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 16)
+    private Type type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    /**
+     * Target document; for a re-index by filename this is filled in when the
+     * job starts.
+     */
+    @Column(name = "document_id", length = 36)
+    private String documentId;
+
+    @Column(name = "filename")
+    private String filename;
+
+    @Column(name = "file_path", length = 1024)
+    private String filePath;
+
+    @Column(name = "file_size_bytes")
+    private Long fileSizeBytes;
+
+    @Column(name = "total_pages")
+    private Integer totalPages;
+
+    @Column(name = "total_chunks")
+    private Integer totalChunks;
+
+    @Column(name = "embedded_chunks")
+    private Integer embeddedChunks;
+
+    @Column(name = "reused_chunks")
+    private Integer reusedChunks;
+
+    @Column(name = "deleted_chunks")
+    private Integer deletedChunks;
+
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
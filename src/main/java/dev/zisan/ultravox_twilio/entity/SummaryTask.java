@@ -0,0 +1,78 @@
+package dev.zisan.ultravox_twilio.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Post-call processing (transcript fetch and summary) for one finished call,
+ * queued in the database so it survives restarts and is retried on failure.
+ */
+@Entity
+@Table(name = "summary_tasks", indexes = @Index(name = "idx_summary_tasks_due", columnList = "status, next_attempt_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SummaryTask {
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, DEAD
+    }
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    /**
+     * Twilio call SID; a call is queued at most once.
+     */
+    @Column(name = "call_sid", nullable = false, unique = true)
+    private String callSid;
+
+    @Column(name = "ultravox_call_id", nullable = false)
+    private String ultravoxCallId;
+
+    @Column(name = "caller_number")
+    private String callerNumber;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    /**
+     * When a pending task may be claimed; pushed back after each failure.
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * When a running task's claim lapses, so a task held by a worker that
+     * died is picked up again.
+     */
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
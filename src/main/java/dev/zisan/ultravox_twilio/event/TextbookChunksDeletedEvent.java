@@ -0,0 +1,14 @@
+package dev.zisan.ultravox_twilio.event;
+
+import java.util.List;
+
+/**
+ * Published after textbook chunks have been deleted from the vector store,
+ * e.g. pages that disappeared from a re-indexed edition, so in-process
+ * indexes can drop the same chunks.
+ *
+ * @param documentId The textbook the chunks belonged to
+ * @param chunkIds   Vector store IDs of the deleted chunks
+ */
+public record TextbookChunksDeletedEvent(String documentId, List<String> chunkIds) {
+}
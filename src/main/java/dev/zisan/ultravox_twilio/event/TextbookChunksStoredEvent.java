@@ -0,0 +1,15 @@
+package dev.zisan.ultravox_twilio.event;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * Published after a batch of textbook chunks has been written to the vector
+ * store, so in-process indexes can add the same chunks.
+ *
+ * @param documentId The textbook the chunks belong to
+ * @param chunks     The stored chunks (with their vector store IDs)
+ */
+public record TextbookChunksStoredEvent(String documentId, List<Document> chunks) {
+}
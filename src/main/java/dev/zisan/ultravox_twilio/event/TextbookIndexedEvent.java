@@ -0,0 +1,13 @@
+package dev.zisan.ultravox_twilio.event;
+
+/**
+ * Published once a textbook upload has been fully written to the vector store.
+ * Anything derived from textbook content (cached answers, indexes) should be
+ * refreshed when this is received.
+ *
+ * @param documentId  The document ID assigned to the textbook
+ * @param filename    Original filename of the upload
+ * @param totalChunks Number of chunks stored for the textbook
+ */
+public record TextbookIndexedEvent(String documentId, String filename, int totalChunks) {
+}
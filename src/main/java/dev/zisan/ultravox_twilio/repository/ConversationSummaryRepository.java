@@ -2,6 +2,8 @@ package dev.zisan.ultravox_twilio.repository;
 
 import dev.zisan.ultravox_twilio.entity.ConversationSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -18,6 +20,18 @@ public interface ConversationSummaryRepository extends JpaRepository<Conversatio
      */
     Optional<ConversationSummary> findByCallId(String callId);
 
+    /**
+     * Whether a real summary, not an error record, exists for a Twilio call ID.
+     */
+    @Query("select count(s) > 0 from ConversationSummary s "
+            + "where s.callId = :callId and (s.failed is null or s.failed = false)")
+    boolean existsSucceededByCallId(@Param("callId") String callId);
+
+    /**
+     * The error record saved for a Twilio call ID, if any.
+     */
+    Optional<ConversationSummary> findFirstByCallIdAndFailedTrue(String callId);
+
     /**
      * Find summary by Ultravox call ID.
      */
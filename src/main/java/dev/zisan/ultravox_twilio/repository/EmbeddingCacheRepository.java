@@ -0,0 +1,28 @@
+package dev.zisan.ultravox_twilio.repository;
+
+import dev.zisan.ultravox_twilio.entity.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Repository for persisted chunk embeddings.
+ */
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, String> {
+
+    /**
+     * Remove entries whose key starts with the given prefix and that were
+     * stored before the given time.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM embedding_cache WHERE cache_key LIKE CONCAT(:prefix, '%') AND created_at < :before",
+            nativeQuery = true)
+    int deleteByPrefixCreatedBefore(@Param("prefix") String prefix, @Param("before") LocalDateTime before);
+}
@@ -0,0 +1,30 @@
+package dev.zisan.ultravox_twilio.repository;
+
+import dev.zisan.ultravox_twilio.entity.IngestionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for background ingestion jobs.
+ */
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, String> {
+
+    /**
+     * Find jobs in the given states, oldest first.
+     */
+    List<IngestionJob> findByStatusInOrderByCreatedAtAsc(Collection<IngestionJob.Status> statuses);
+
+    /**
+     * Count jobs in the given states.
+     */
+    long countByStatusIn(Collection<IngestionJob.Status> statuses);
+
+    /**
+     * Find all jobs ordered by creation date descending.
+     */
+    List<IngestionJob> findAllByOrderByCreatedAtDesc();
+}
@@ -0,0 +1,137 @@
+package dev.zisan.ultravox_twilio.repository;
+
+import dev.zisan.ultravox_twilio.entity.SummaryTask;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository for the post-call summary task queue.
+ */
+@Repository
+public interface SummaryTaskRepository extends JpaRepository<SummaryTask, String> {
+
+    /**
+     * Task count and age of the longest-waiting due task for one status.
+     */
+    interface StatusStats {
+        String getStatus();
+
+        Long getTasks();
+
+        Double getAge();
+    }
+
+    /**
+     * Queue a call unless it is already queued.
+     *
+     * @return 1 if the task was added, 0 if the call was already queued
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO summary_tasks (id, call_sid, ultravox_call_id, caller_number, status, attempts,
+                                       next_attempt_at, created_at)
+            VALUES (:id, :callSid, :ultravoxCallId, :callerNumber, 'PENDING', 0, :now, :now)
+            ON CONFLICT (call_sid) DO NOTHING
+            """, nativeQuery = true)
+    int enqueue(@Param("id") String id, @Param("callSid") String callSid,
+            @Param("ultravoxCallId") String ultravoxCallId, @Param("callerNumber") String callerNumber,
+            @Param("now") LocalDateTime now);
+
+    /**
+     * Lock up to limit due tasks, oldest first: pending tasks whose next
+     * attempt has come, and running tasks whose claim lapsed. Rows another
+     * worker has locked are skipped, so workers never claim the same task.
+     * Must be called in a transaction; the locks are held until it ends.
+     */
+    @Query(value = """
+            SELECT * FROM summary_tasks
+            WHERE (status = 'PENDING' AND next_attempt_at <= :now)
+               OR (status = 'RUNNING' AND locked_until < :now)
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<SummaryTask> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * Extend the claim on a running task, if the caller still holds it.
+     *
+     * @param heldUntil The lease end the caller last wrote
+     * @return 1 if the lease was extended, 0 if it lapsed and the task was
+     *         claimed again
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE summary_tasks SET locked_until = :lockedUntil
+            WHERE id = :id AND status = 'RUNNING' AND locked_until = :heldUntil
+            """, nativeQuery = true)
+    int renewLease(@Param("id") String id, @Param("heldUntil") LocalDateTime heldUntil,
+            @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    /**
+     * Record the outcome of a running task, if the caller still holds its
+     * claim.
+     *
+     * @param heldUntil The lease end the caller last wrote
+     * @return 1 if the task was updated, 0 if it was claimed again
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE summary_tasks
+            SET status = :status, next_attempt_at = :nextAttemptAt, last_error = :lastError,
+                finished_at = :finishedAt, locked_until = NULL
+            WHERE id = :id AND status = 'RUNNING' AND locked_until = :heldUntil
+            """, nativeQuery = true)
+    int finish(@Param("id") String id, @Param("heldUntil") LocalDateTime heldUntil, @Param("status") String status,
+            @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError,
+            @Param("finishedAt") LocalDateTime finishedAt);
+
+    /**
+     * Counts of unfinished and dead tasks, with the seconds the oldest task
+     * of each status has been due.
+     */
+    @Query(value = """
+            SELECT status AS status, count(*) AS tasks,
+                   CAST(EXTRACT(EPOCH FROM (CAST(:now AS timestamp) - min(next_attempt_at))) AS double precision) AS age
+            FROM summary_tasks
+            WHERE status <> 'COMPLETED'
+            GROUP BY status
+            """, nativeQuery = true)
+    List<StatusStats> statusStats(@Param("now") LocalDateTime now);
+
+    /**
+     * Put dead tasks back in the queue with fresh attempts.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE summary_tasks
+            SET status = 'PENDING', attempts = 0, next_attempt_at = :now, finished_at = NULL
+            WHERE status = 'DEAD'
+            """, nativeQuery = true)
+    int requeueDead(@Param("now") LocalDateTime now);
+
+    /**
+     * Remove completed tasks finished before the given time.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM summary_tasks WHERE status = 'COMPLETED' AND finished_at < :before",
+            nativeQuery = true)
+    int deleteCompletedBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * Dead tasks, most recent first.
+     */
+    List<SummaryTask> findByStatusOrderByFinishedAtDesc(SummaryTask.Status status);
+}
@@ -0,0 +1,216 @@
+package dev.zisan.ultravox_twilio.repository;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Direct access to the chunks stored in the PGVector table.
+ * The VectorStore API only supports similarity search; this is used to
+ * rebuild in-process indexes from the stored chunks and to patch chunk
+ * metadata after ingestion.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class VectorStoreChunkRepository {
+
+    /**
+     * A stored chunk with its embedding as written by PGVector.
+     */
+    public record StoredChunk(Document document, float[] embedding) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${spring.ai.vectorstore.pgvector.schema-name:public}")
+    private String schemaName;
+
+    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}")
+    private String tableName;
+
+    /**
+     * Load every stored chunk (text and metadata, without embeddings).
+     */
+    public List<Document> findAll() {
+        return jdbcTemplate.query(
+                "SELECT id, content, metadata::text AS metadata FROM " + qualifiedTableName(),
+                (rs, rowNum) -> toDocument(rs));
+    }
+
+    /**
+     * Stream every stored chunk together with its embedding.
+     * Rows are handed to the consumer one at a time so the full result set is
+     * never held in memory twice.
+     */
+    public void forEachWithEmbedding(Consumer<StoredChunk> consumer) {
+        jdbcTemplate.query(
+                "SELECT id, content, metadata::text AS metadata, embedding::text AS embedding FROM "
+                        + qualifiedTableName(),
+                (RowCallbackHandler) rs -> consumer.accept(toStoredChunk(rs)));
+    }
+
+    /**
+     * Load specific chunks together with their embeddings.
+     */
+    public List<StoredChunk> findWithEmbeddingByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?::uuid"));
+        return jdbcTemplate.query(
+                "SELECT id, content, metadata::text AS metadata, embedding::text AS embedding FROM "
+                        + qualifiedTableName() + " WHERE id IN (" + placeholders + ")",
+                (rs, rowNum) -> toStoredChunk(rs),
+                ids.toArray());
+    }
+
+    /**
+     * Load the chunks of one textbook (text and metadata, without embeddings).
+     */
+    public List<Document> findByDocumentId(String documentId) {
+        return jdbcTemplate.query(
+                "SELECT id, content, metadata::text AS metadata FROM " + qualifiedTableName()
+                        + " WHERE metadata->>'document_id' = ?",
+                (rs, rowNum) -> toDocument(rs),
+                documentId);
+    }
+
+    /**
+     * Load the chunks of one textbook at the given chunk_index positions.
+     */
+    public List<Document> findByChunkIndexes(String documentId, Collection<Integer> chunkIndexes) {
+        if (chunkIndexes.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(chunkIndexes.size(), "?"));
+        List<Object> args = new ArrayList<>();
+        args.add(documentId);
+        chunkIndexes.stream().map(String::valueOf).forEach(args::add);
+        return jdbcTemplate.query(
+                "SELECT id, content, metadata::text AS metadata FROM " + qualifiedTableName()
+                        + " WHERE metadata->>'document_id' = ? AND metadata->>'chunk_index' IN (" + placeholders + ")",
+                (rs, rowNum) -> toDocument(rs),
+                args.toArray());
+    }
+
+    /**
+     * IDs of the textbooks stored under a filename (more than one if the same
+     * file was uploaded repeatedly).
+     */
+    public List<String> findDocumentIdsByFilename(String filename) {
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT metadata->>'document_id' FROM " + qualifiedTableName()
+                        + " WHERE metadata->>'filename' = ? ORDER BY 1",
+                String.class,
+                filename);
+    }
+
+    /**
+     * Move kept chunks to a new chunk_index (and document_id) after a
+     * re-index.
+     *
+     * @param documentId     The document the chunks now belong to
+     * @param indexesByChunk New chunk_index by chunk ID
+     */
+    public void updateChunkPositions(String documentId, Map<String, Integer> indexesByChunk) {
+        List<Object[]> arguments = indexesByChunk.entrySet().stream()
+                .map(entry -> new Object[] { entry.getValue(), documentId, entry.getKey() })
+                .toList();
+        jdbcTemplate.batchUpdate(
+                "UPDATE " + qualifiedTableName()
+                        + " SET metadata = jsonb_set(jsonb_set(metadata::jsonb, '{chunk_index}', to_jsonb(?::int)),"
+                        + " '{document_id}', to_jsonb(?::text))"
+                        + " WHERE id = ?::uuid",
+                arguments);
+    }
+
+    /**
+     * Set total_chunks on every chunk of a document, for ingestion paths that
+     * only know the count after the last chunk was stored.
+     *
+     * @return Number of chunks updated
+     */
+    public int updateTotalChunks(String documentId, int totalChunks) {
+        return jdbcTemplate.update(
+                "UPDATE " + qualifiedTableName()
+                        + " SET metadata = jsonb_set(metadata::jsonb, '{total_chunks}', to_jsonb(?::int))"
+                        + " WHERE metadata->>'document_id' = ?",
+                totalChunks, documentId);
+    }
+
+    /**
+     * Whether the vector store table has been created yet.
+     */
+    public boolean tableExists() {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, qualifiedTableName());
+        return Boolean.TRUE.equals(exists);
+    }
+
+    private String qualifiedTableName() {
+        return schemaName + "." + tableName;
+    }
+
+    private Document toDocument(ResultSet rs) throws SQLException {
+        return Document.builder()
+                .id(rs.getString("id"))
+                .text(rs.getString("content"))
+                .metadata(parseMetadata(rs.getString("metadata")))
+                .build();
+    }
+
+    private StoredChunk toStoredChunk(ResultSet rs) throws SQLException {
+        return new StoredChunk(toDocument(rs), parseVector(rs.getString("embedding")));
+    }
+
+    /**
+     * Parse the pgvector text form "[0.1,0.2,...]".
+     */
+    private static float[] parseVector(String text) {
+        if (text == null || text.length() < 2) {
+            return new float[0];
+        }
+        String body = text.substring(1, text.length() - 1);
+        if (body.isBlank()) {
+            return new float[0];
+        }
+
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+
+    private Map<String, Object> parseMetadata(String json) {
+        if (json == null || json.isBlank()) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (Exception e) {
+            log.warn("Could not parse chunk metadata: {}", e.getMessage());
+            return new HashMap<>();
+        }
+    }
+}
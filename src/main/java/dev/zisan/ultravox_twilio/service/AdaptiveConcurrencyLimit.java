@@ -0,0 +1,259 @@
+package dev.zisan.ultravox_twilio.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to observed latency (AIMD) and hands out
+ * slots by priority.
+ * Each completed call reports its latency. A call much slower than the usual
+ * latency for its kind of call, or a failed call, means the model is
+ * saturated: the limit is cut multiplicatively. Otherwise, while the limit is
+ * in use, it grows by about one per limit's worth of calls.
+ *
+ * When a slot frees up it goes to the waiting call with the best priority
+ * (0 = live traffic). A waiter's priority improves by one level per aging
+ * interval it has waited, so background work is delayed under load but never
+ * starved. Background calls (priority above 0) also leave reservedSlots of
+ * the limit free for live traffic, except that one background call may
+ * always run.
+ *
+ * Usual latency is tracked per sample key, because a full summary and the
+ * first token of a streamed answer are not comparable.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    // Weight of a new sample in the usual-latency average
+    private static final double BASELINE_ALPHA = 0.1;
+
+    // Slow samples still move the baseline a little, so it can recover from a lucky first sample
+    private static final double SLOW_BASELINE_ALPHA = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+    private final long agingNanos;
+    private final int reservedSlots;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double limit;
+    private int inFlight;
+    private int backgroundInFlight;
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final Map<String, Double> baselineNanos = new HashMap<>();
+
+    private final class Waiter {
+        private final int priority;
+        private final long enqueuedNanos = System.nanoTime();
+        private final Condition condition = lock.newCondition();
+        private boolean granted;
+
+        private Waiter(int priority) {
+            this.priority = priority;
+        }
+
+        private double effectivePriority(long now) {
+            return priority - (double) (now - enqueuedNanos) / agingNanos;
+        }
+    }
+
+    /**
+     * @param latencyTolerance A call slower than this multiple of the usual
+     *                         latency counts as congestion
+     * @param backoffRatio     Factor the limit is multiplied by on congestion
+     * @param aging            Wait after which a waiter moves up one priority
+     * @param reservedSlots    Slots background calls leave for live traffic
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+            double latencyTolerance, double backoffRatio, Duration aging, int reservedSlots) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.agingNanos = Math.max(1, aging.toNanos());
+        this.reservedSlots = Math.max(0, reservedSlots);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Take a slot, waiting up to maxWait for one to be handed to this call.
+     *
+     * @param priority 0 for live traffic, larger for work that can wait
+     * @return false if no slot was handed out in time
+     */
+    public boolean acquire(int priority, Duration maxWait) throws InterruptedException {
+        long remaining = maxWait.toNanos();
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(priority);
+            waiters.add(waiter);
+            dispatch();
+
+            try {
+                while (!waiter.granted) {
+                    if (remaining <= 0) {
+                        waiters.remove(waiter);
+                        return false;
+                    }
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    releaseSlot(priority);
+                } else {
+                    waiters.remove(waiter);
+                }
+                throw e;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back a slot and adjust the limit from the call's outcome.
+     *
+     * @param priority     Priority the slot was acquired with
+     * @param sampleKey    Kind of call the latency belongs to
+     * @param latencyNanos Observed latency
+     * @param dropped      Whether the call failed or produced nothing
+     */
+    public void release(int priority, String sampleKey, long latencyNanos, boolean dropped) {
+        lock.lock();
+        try {
+            Double baseline = baselineNanos.get(sampleKey);
+            boolean slow = baseline != null && latencyNanos > latencyTolerance * baseline;
+
+            if (dropped || slow) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight >= (int) limit) {
+                // Only grow when the limit was actually the constraint
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+
+            if (!dropped) {
+                double alpha = slow ? SLOW_BASELINE_ALPHA : BASELINE_ALPHA;
+                baselineNanos.put(sampleKey, baseline == null ? latencyNanos : baseline + alpha * (latencyNanos - baseline));
+            }
+            releaseSlot(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caller must hold the lock.
+     */
+    private void releaseSlot(int priority) {
+        inFlight--;
+        if (priority > 0) {
+            backgroundInFlight--;
+        }
+        dispatch();
+    }
+
+    /**
+     * Hand free slots to the best waiters that may run. Caller must hold the
+     * lock.
+     */
+    private void dispatch() {
+        while (inFlight < (int) limit && !waiters.isEmpty()) {
+            long now = System.nanoTime();
+            Waiter best = null;
+            double bestPriority = Double.MAX_VALUE;
+
+            for (Waiter waiter : waiters) {
+                if (waiter.priority > 0 && backgroundInFlight >= backgroundCapacity()) {
+                    continue;
+                }
+                double effective = waiter.effectivePriority(now);
+                if (effective < bestPriority) {
+                    bestPriority = effective;
+                    best = waiter;
+                }
+            }
+            if (best == null) {
+                return;
+            }
+
+            waiters.remove(best);
+            best.granted = true;
+            inFlight++;
+            if (best.priority > 0) {
+                backgroundInFlight++;
+            }
+            best.condition.signal();
+        }
+    }
+
+    private int backgroundCapacity() {
+        return Math.max(1, (int) limit - reservedSlots);
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getBackgroundInFlight() {
+        lock.lock();
+        try {
+            return backgroundInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Usual latency in milliseconds per sample key.
+     */
+    public Map<String, Long> getBaselineMillis() {
+        lock.lock();
+        try {
+            Map<String, Long> millis = new HashMap<>();
+            baselineNanos.forEach((key, nanos) -> millis.put(key, TimeUnit.NANOSECONDS.toMillis(nanos.longValue())));
+            return millis;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
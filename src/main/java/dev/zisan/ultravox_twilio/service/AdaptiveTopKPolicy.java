@@ -0,0 +1,127 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Chooses how many chunks to keep for a question from the similarity score
+ * curve of an over-fetched candidate list.
+ * A clear winner (the top score well above the rest) needs one or two chunks;
+ * a flat curve of borderline matches needs more to be likely to contain the
+ * answer. Every chunk kept is prefill the chat model has to read, so easy
+ * questions get faster answers.
+ *
+ * The curve is cut at the largest drop between consecutive scores when that
+ * drop is at least knee-gap, otherwise after the last candidate within
+ * flat-band of the top score, and always within [min-k, max-k]. Candidates
+ * below min-similarity are never counted.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdaptiveTopKPolicy {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${rag.adaptive-k.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.adaptive-k.min-k:1}")
+    private int minK;
+
+    @Value("${rag.adaptive-k.max-k:6}")
+    private int maxK;
+
+    @Value("${rag.adaptive-k.min-similarity:0.5}")
+    private double minSimilarity;
+
+    @Value("${rag.adaptive-k.knee-gap:0.08}")
+    private double kneeGap;
+
+    @Value("${rag.adaptive-k.flat-band:0.05}")
+    private double flatBand;
+
+    /**
+     * How many chunks to keep and why.
+     *
+     * @param reason knee, flat, or fixed when the policy is disabled or there
+     *               are no scores to inspect
+     */
+    public record Decision(int k, String reason, int candidates, double topScore, double secondScore) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Decide how many chunks to keep.
+     *
+     * @param candidates Dense candidates, best first, with scores set
+     * @param fallbackK  Chunk count used when the scores say nothing
+     */
+    public Decision decide(List<Document> candidates, int fallbackK) {
+        Decision decision = enabled
+                ? decide(scores(candidates), minK, maxK, minSimilarity, kneeGap, flatBand, fallbackK)
+                : new Decision(fallbackK, "fixed", candidates.size(), Double.NaN, Double.NaN);
+
+        meterRegistry.summary("rag.retrieval.k", "reason", decision.reason()).record(decision.k());
+        // Key=value so decisions can be grepped out of the logs for tuning; student questions are not logged
+        if (log.isDebugEnabled()) {
+            log.debug("adaptive-k k={} reason={} candidates={} top={} second={}",
+                    decision.k(), decision.reason(), decision.candidates(),
+                    String.format("%.3f", decision.topScore()), String.format("%.3f", decision.secondScore()));
+        }
+        return decision;
+    }
+
+    static Decision decide(double[] scores, int minK, int maxK, double minSimilarity, double kneeGap,
+            double flatBand, int fallbackK) {
+        int usable = 0;
+        while (usable < scores.length && scores[usable] >= minSimilarity) {
+            usable++;
+        }
+        double top = scores.length > 0 ? scores[0] : Double.NaN;
+        double second = scores.length > 1 ? scores[1] : Double.NaN;
+        if (usable == 0) {
+            return new Decision(fallbackK, "fixed", scores.length, top, second);
+        }
+
+        int upper = Math.max(1, Math.min(maxK, usable));
+        int lower = Math.max(1, Math.min(minK, upper));
+
+        // Largest drop among the first max-k scores
+        int knee = -1;
+        double largestDrop = 0;
+        for (int i = 1; i < upper; i++) {
+            double drop = scores[i - 1] - scores[i];
+            if (drop > largestDrop) {
+                largestDrop = drop;
+                knee = i;
+            }
+        }
+        if (knee > 0 && largestDrop >= kneeGap) {
+            return new Decision(Math.max(lower, knee), "knee", scores.length, top, second);
+        }
+
+        int flat = 1;
+        while (flat < upper && scores[0] - scores[flat] <= flatBand) {
+            flat++;
+        }
+        return new Decision(Math.max(lower, flat), "flat", scores.length, top, second);
+    }
+
+    private static double[] scores(List<Document> candidates) {
+        return candidates.stream()
+                .map(Document::getScore)
+                .takeWhile(score -> score != null)
+                .mapToDouble(Double::doubleValue)
+                .toArray();
+    }
+}
@@ -0,0 +1,71 @@
+package dev.zisan.ultravox_twilio.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Default {@link QuestionNormalizer} for English, Bangla and Banglish speech.
+ * Lower-cases, drops punctuation, removes hesitation fillers anywhere and
+ * politeness words at the start or end ("okay so ... please", "accha ...
+ * bolo"). Content words are never removed, so "RAM mane ki" keeps "mane".
+ */
+@Component
+public class AsrQuestionNormalizer implements QuestionNormalizer {
+
+    // Anything but letters, combining marks (Bangla vowel signs), digits and decimal points
+    private static final Pattern NON_WORD = Pattern.compile(
+            "[^\\p{L}\\p{M}\\p{N}.]+|(?<!\\p{N})\\.|\\.(?!\\p{N})");
+
+    // Hesitations, removed wherever they occur
+    private static final Set<String> FILLERS = Set.of(
+            "um", "umm", "ummm", "uh", "uhh", "uhm", "er", "erm", "ah", "hmm", "hm", "mm",
+            "\u0989\u09AE", // um
+            "\u0989\u09AE\u09AE", // umm
+            "\u09B9\u09C1\u09AE", // hum
+            "\u09B9\u09C1\u09AE\u09AE"); // humm
+
+    // Discourse openers, removed only at the start
+    private static final Set<String> LEADING = Set.of(
+            "so", "okay", "ok", "well", "hey", "hi", "hello", "accha", "acha", "achha",
+            "\u0986\u099A\u09CD\u099B\u09BE"); // accha
+
+    // Politeness, removed only at the end
+    private static final Set<String> TRAILING = Set.of(
+            "please", "pls", "plz", "thanks", "bolo", "bolun", "bolen",
+            "\u09AC\u09B2\u09CB", // bolo
+            "\u09AC\u09B2\u09C1\u09A8"); // bolun
+
+    @Override
+    public String normalize(String question) {
+        if (question == null) {
+            return "";
+        }
+        String lowered = question.toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>(Arrays.stream(NON_WORD.split(lowered))
+                .filter(word -> !word.isEmpty() && !FILLERS.contains(word))
+                .toList());
+
+        while (!words.isEmpty() && LEADING.contains(words.get(0))) {
+            words.remove(0);
+        }
+        boolean trimmed = true;
+        while (trimmed) {
+            trimmed = false;
+            if (!words.isEmpty() && TRAILING.contains(words.get(words.size() - 1))) {
+                words.remove(words.size() - 1);
+                trimmed = true;
+            } else if (words.size() >= 2 && words.get(words.size() - 2).equals("thank")
+                    && words.get(words.size() - 1).equals("you")) {
+                words.subList(words.size() - 2, words.size()).clear();
+                trimmed = true;
+            }
+        }
+        return String.join(" ", words);
+    }
+}
@@ -0,0 +1,376 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.event.TextbookChunksDeletedEvent;
+import dev.zisan.ultravox_twilio.event.TextbookChunksStoredEvent;
+import dev.zisan.ultravox_twilio.repository.VectorStoreChunkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-process BM25 inverted index over the textbook chunks.
+ * Complements dense search for keyword-heavy questions ("SUM function",
+ * "bKash", "ICT Act") where exact terms matter more than meaning.
+ *
+ * Built from the vector store table at startup and kept in sync through
+ * {@link TextbookChunksStoredEvent} and {@link TextbookChunksDeletedEvent}.
+ * Changes that arrive while the table is being read are applied at once and
+ * replayed onto the rebuilt index, so none are lost or undone.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class Bm25Index {
+
+    private final VectorStoreChunkRepository chunkRepository;
+
+    @Value("${rag.hybrid.bm25.k1:1.2}")
+    private double k1;
+
+    @Value("${rag.hybrid.bm25.b:0.75}")
+    private double b;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how",
+            "in", "is", "it", "of", "on", "or", "the", "this", "that", "to", "was", "what", "when",
+            "where", "which", "who", "why", "with", "you", "your", "me", "tell", "about", "explain");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Chunks by slot; a removed chunk leaves a null slot behind
+    private final List<Document> chunks = new ArrayList<>();
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private int[] chunkLengths = new int[1024];
+    private final Map<String, Posting> postings = new HashMap<>();
+    private long totalLength;
+    private int liveChunks;
+
+    // Changes made while a rebuild reads the table; null when no rebuild is running
+    private List<Consumer<Bm25Index>> changesDuringRebuild;
+
+    // Removed slots are compacted away once they outnumber the live chunks, and there are at least this many
+    private static final int MIN_COMPACT_SLOTS = 256;
+
+    /**
+     * Chunk slots and term frequencies for one term.
+     */
+    private static final class Posting {
+        int[] slots = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int slot, int frequency) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            slots[size] = slot;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+                    System.arraycopy(frequencies, i + 1, frequencies, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the index from the chunks already stored in PGVector.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            if (!chunkRepository.tableExists()) {
+                log.info("Vector store table not found, BM25 index starts empty");
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            List<Document> stored;
+            try {
+                stored = chunkRepository.findAll();
+            } catch (Exception e) {
+                lock.writeLock().lock();
+                try {
+                    changesDuringRebuild = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                List<Consumer<Bm25Index>> changes = changesDuringRebuild;
+                changesDuringRebuild = null;
+                clearUnlocked(stored.size());
+                stored.forEach(this::addUnlocked);
+                // Replayed in order; a change the table read already saw is applied again harmlessly
+                changes.forEach(change -> change.accept(this));
+                compactIfSparseUnlocked();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            log.info("BM25 index built with {} chunks and {} terms in {} ms",
+                    liveChunks, postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to build BM25 index, lexical search disabled until next ingestion", e);
+        }
+    }
+
+    @EventListener
+    public void onChunksStored(TextbookChunksStoredEvent event) {
+        addAll(event.chunks());
+    }
+
+    @EventListener
+    public void onChunksDeleted(TextbookChunksDeletedEvent event) {
+        removeAll(event.chunkIds());
+    }
+
+    /**
+     * Add chunks to the index. Chunks already present are replaced.
+     */
+    public void addAll(Collection<Document> documents) {
+        lock.writeLock().lock();
+        try {
+            documents.forEach(this::addUnlocked);
+            if (changesDuringRebuild != null) {
+                List<Document> added = List.copyOf(documents);
+                changesDuringRebuild.add(index -> added.forEach(index::addUnlocked));
+            }
+            compactIfSparseUnlocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove chunks from the index by vector store ID.
+     */
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::removeUnlocked);
+            if (changesDuringRebuild != null) {
+                List<String> removed = List.copyOf(ids);
+                changesDuringRebuild.add(index -> removed.forEach(index::removeUnlocked));
+            }
+            compactIfSparseUnlocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Search the index.
+     *
+     * @param query The student's question
+     * @param limit Maximum number of chunks to return
+     * @return Matching chunks, best first, with the BM25 score set
+     */
+    public List<Document> search(String query, int limit) {
+        Set<String> terms = termFrequencies(query).keySet();
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (liveChunks == 0) {
+                return List.of();
+            }
+
+            double averageLength = (double) totalLength / liveChunks;
+            double[] scores = new double[chunks.size()];
+
+            for (String term : terms) {
+                Posting posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+
+                double idf = Math.log(1 + (liveChunks - posting.size + 0.5) / (posting.size + 0.5));
+                for (int i = 0; i < posting.size; i++) {
+                    int slot = posting.slots[i];
+                    int tf = posting.frequencies[i];
+                    double norm = k1 * (1 - b + b * chunkLengths[slot] / averageLength);
+                    scores[slot] += idf * tf * (k1 + 1) / (tf + norm);
+                }
+            }
+
+            PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1,
+                    (x, y) -> Double.compare(scores[x], scores[y]));
+            for (int slot = 0; slot < scores.length; slot++) {
+                if (scores[slot] <= 0) {
+                    continue;
+                }
+                top.offer(slot);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            List<Document> results = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int slot = top.poll();
+                Document chunk = chunks.get(slot);
+                results.add(0, Document.builder()
+                        .id(chunk.getId())
+                        .text(chunk.getText())
+                        .metadata(chunk.getMetadata())
+                        .score(scores[slot])
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveChunks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addUnlocked(Document document) {
+        if (document.getId() == null || document.getText() == null) {
+            return;
+        }
+        removeUnlocked(document.getId());
+
+        int slot = chunks.size();
+        chunks.add(document);
+        slotById.put(document.getId(), slot);
+
+        Map<String, Integer> frequencies = termFrequencies(document.getText());
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new Posting()).add(slot, entry.getValue());
+            length += entry.getValue();
+        }
+
+        if (slot >= chunkLengths.length) {
+            chunkLengths = Arrays.copyOf(chunkLengths, Math.max(slot + 1, chunkLengths.length * 2));
+        }
+        chunkLengths[slot] = length;
+        totalLength += length;
+        liveChunks++;
+    }
+
+    private void removeUnlocked(String id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return;
+        }
+
+        Document document = chunks.set(slot, null);
+        for (String term : termFrequencies(document.getText()).keySet()) {
+            Posting posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(slot);
+                if (posting.size == 0) {
+                    postings.remove(term);
+                }
+            }
+        }
+        totalLength -= chunkLengths[slot];
+        chunkLengths[slot] = 0;
+        liveChunks--;
+    }
+
+    private void clearUnlocked(int expectedChunks) {
+        chunks.clear();
+        slotById.clear();
+        postings.clear();
+        chunkLengths = new int[Math.max(1024, expectedChunks)];
+        totalLength = 0;
+        liveChunks = 0;
+    }
+
+    /**
+     * Re-add the live chunks into fresh slots once removed slots outnumber
+     * them, so search does not keep scoring and scanning dead slots.
+     */
+    private void compactIfSparseUnlocked() {
+        int removed = chunks.size() - liveChunks;
+        if (removed < MIN_COMPACT_SLOTS || removed <= liveChunks) {
+            return;
+        }
+        List<Document> live = chunks.stream().filter(Objects::nonNull).toList();
+        clearUnlocked(live.size());
+        live.forEach(this::addUnlocked);
+        log.debug("BM25 index compacted: {} removed slots dropped, {} chunks kept", removed, live.size());
+    }
+
+    /**
+     * Lower-cased terms with their counts. Letters, digits and combining marks
+     * are kept together so Bangla words (vowel signs are marks, not letters)
+     * stay whole.
+     */
+    static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || isCombiningMark(c)) {
+                token.append(c);
+                continue;
+            }
+            if (!token.isEmpty()) {
+                String term = token.toString().toLowerCase(Locale.ROOT);
+                if ((term.length() > 1 || Character.isDigit(term.charAt(0))) && !STOP_WORDS.contains(term)) {
+                    frequencies.merge(term, 1, Integer::sum);
+                }
+                token.setLength(0);
+            }
+        }
+        return frequencies;
+    }
+
+    private static boolean isCombiningMark(char c) {
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK;
+    }
+}
@@ -0,0 +1,120 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.entity.EmbeddingCacheEntry;
+import dev.zisan.ultravox_twilio.repository.EmbeddingCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent content-hash cache for document embeddings.
+ * The vector store embeds chunks through
+ * {@link #embed(List, EmbeddingOptions, BatchingStrategy)}; chunks whose text
+ * was embedded before by the same model are served from the embedding_cache
+ * table and only the rest are sent to the model. Query embeddings are not
+ * cached here (see {@link QueryCachingEmbeddingModel}).
+ */
+@Slf4j
+public class CachingEmbeddingModel extends DelegatingEmbeddingModel {
+
+    private final EmbeddingCacheRepository cacheRepository;
+    private final String modelName;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCacheRepository cacheRepository,
+            String modelName, MeterRegistry meterRegistry) {
+        super(delegate);
+        this.cacheRepository = cacheRepository;
+        this.modelName = modelName;
+        this.hitCounter = Counter.builder("embedding.cache.requests")
+                .tag("result", "hit")
+                .description("Chunk embeddings served from the persistent cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("embedding.cache.requests")
+                .tag("result", "miss")
+                .description("Chunk embeddings computed by the embedding model")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options,
+            BatchingStrategy batchingStrategy) {
+        List<String> keys = documents.stream().map(this::cacheKey).toList();
+
+        Map<String, float[]> embeddings = new HashMap<>();
+        try {
+            cacheRepository.findAllById(keys)
+                    .forEach(entry -> embeddings.put(entry.getCacheKey(), fromBytes(entry.getEmbedding())));
+        } catch (Exception e) {
+            log.warn("Embedding cache lookup failed, embedding all {} chunks: {}", documents.size(), e.getMessage());
+        }
+
+        // Embed each distinct uncached text once
+        Map<String, Document> misses = new LinkedHashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            if (!embeddings.containsKey(keys.get(i))) {
+                misses.putIfAbsent(keys.get(i), documents.get(i));
+            }
+        }
+
+        hitCounter.increment(documents.size() - misses.size());
+        missCounter.increment(misses.size());
+
+        if (!misses.isEmpty()) {
+            List<String> missKeys = new ArrayList<>(misses.keySet());
+            List<float[]> computed = delegate.embed(new ArrayList<>(misses.values()), options, batchingStrategy);
+
+            List<EmbeddingCacheEntry> entries = new ArrayList<>(computed.size());
+            for (int i = 0; i < computed.size(); i++) {
+                embeddings.put(missKeys.get(i), computed.get(i));
+                entries.add(EmbeddingCacheEntry.builder()
+                        .cacheKey(missKeys.get(i))
+                        .model(modelName)
+                        .dimensions(computed.get(i).length)
+                        .embedding(toBytes(computed.get(i)))
+                        .build());
+            }
+
+            try {
+                cacheRepository.saveAll(entries);
+            } catch (Exception e) {
+                // A concurrent upload may have stored the same text; the embeddings are still valid
+                log.warn("Could not store {} embeddings in cache: {}", entries.size(), e.getMessage());
+            }
+        }
+
+        log.debug("Embedded {} chunks ({} from cache)", documents.size(), documents.size() - misses.size());
+        return keys.stream().map(embeddings::get).toList();
+    }
+
+    private String cacheKey(Document document) {
+        Object hash = document.getMetadata().get("content_hash");
+        return modelName + ":" + (hash != null ? hash.toString() : ContentHash.of(document.getText()));
+    }
+
+    static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] fromBytes(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,186 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micro-batches concurrent single-text embedding calls.
+ * Each {@link #embed(String)} call is queued; a dispatcher thread collects
+ * requests for up to the batching window (or until the batch is full) and
+ * sends them to the model as one batched call. A CPU-only embedding server
+ * serves one batch of N texts far faster than N separate requests.
+ *
+ * While all in-flight slots are busy, new requests keep accumulating, so
+ * batches grow with load and the window only adds latency when idle.
+ */
+@Slf4j
+public class CoalescingEmbeddingModel extends DelegatingEmbeddingModel {
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Semaphore inFlight;
+
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService batchExecutor;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer queueDelayTimer;
+    private final Timer batchTimer;
+
+    private record PendingEmbedding(String text, CompletableFuture<float[]> future, long enqueuedNanos) {
+    }
+
+    public CoalescingEmbeddingModel(EmbeddingModel delegate, Duration window, int maxBatchSize, int maxInFlight,
+            MeterRegistry meterRegistry) {
+        super(delegate);
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(Math.max(1, maxInFlight), runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batchSizeSummary = DistributionSummary.builder("embedding.coalescer.batch.size")
+                .description("Query embeddings sent to the model per batched call")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueDelayTimer = Timer.builder("embedding.coalescer.queue.delay")
+                .description("Time a query embedding waited before its batch was sent")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("embedding.coalescer.batch.duration")
+                .description("Duration of batched embedding calls")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        Thread dispatcher = new Thread(this::dispatchLoop, "embedding-coalescer");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        queue.add(new PendingEmbedding(text, future, System.nanoTime()));
+        Deadline deadline = Deadline.current().orElse(null);
+        if (deadline == null) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throw unwrap(e.getCause());
+            }
+        }
+
+        // The batch still completes for the other callers; only this caller stops waiting
+        try {
+            return future.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline passed while waiting for query embedding");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for query embedding", e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // Wait for a free slot first so requests pile up while the model is busy
+                inFlight.acquire();
+                List<PendingEmbedding> batch = collectBatch();
+                batchExecutor.execute(() -> {
+                    try {
+                        embedBatch(batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                inFlight.release();
+                log.error("Embedding coalescer dispatch failed", e);
+            }
+        }
+    }
+
+    /**
+     * Block for the first request, then gather more until the window closes
+     * or the batch is full.
+     */
+    private List<PendingEmbedding> collectBatch() throws InterruptedException {
+        List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatchSize - batch.size());
+
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingEmbedding next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+        return batch;
+    }
+
+    private void embedBatch(List<PendingEmbedding> batch) {
+        long now = System.nanoTime();
+        batch.forEach(pending -> queueDelayTimer.record(now - pending.enqueuedNanos(), TimeUnit.NANOSECONDS));
+
+        // Identical questions asked at the same moment are embedded once
+        Map<String, List<CompletableFuture<float[]>>> byText = new LinkedHashMap<>();
+        batch.forEach(pending -> byText.computeIfAbsent(pending.text(), text -> new ArrayList<>())
+                .add(pending.future()));
+        List<String> texts = new ArrayList<>(byText.keySet());
+        batchSizeSummary.record(texts.size());
+
+        try {
+            List<float[]> embeddings = batchTimer.recordCallable(() -> delegate.embed(texts));
+            for (int i = 0; i < texts.size(); i++) {
+                float[] embedding = embeddings.get(i);
+                byText.get(texts.get(i)).forEach(future -> future.complete(embedding));
+            }
+            if (texts.size() > 1) {
+                log.debug("Embedded {} queries in one batch", texts.size());
+            }
+        } catch (Exception e) {
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.repository.VectorStoreChunkRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Turns retrieved chunks into a compact prompt context.
+ * Chunks overlap their neighbours by {@link StreamingChunker#CHUNK_OVERLAP}
+ * characters, so adjacent hits repeat text. Hits are grouped by textbook,
+ * consecutive chunk_index runs are merged with the overlap removed,
+ * near-duplicate sentences (the same book uploaded twice, repeated
+ * definitions) are dropped, and the result is cut to a token budget. When the
+ * hits leave enough budget for a neighbour and the request's deadline leaves
+ * time for the extra lookup, the chunks around them are added first, since
+ * the sentence before or after a hit often completes it.
+ *
+ * Every prefill token costs time on a CPU-only model, so tokens saved are
+ * reported per request.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextCompactor {
+
+    private final VectorStoreChunkRepository chunkRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${rag.context.token-budget:800}")
+    private int tokenBudget;
+
+    @Value("${rag.context.expand-neighbours:true}")
+    private boolean expandNeighbours;
+
+    @Value("${rag.context.duplicate-similarity:0.85}")
+    private double duplicateSimilarity;
+
+    // Neighbours are not looked up with less time than this left before the request deadline
+    @Value("${rag.context.expand-min-remaining-ms:2000}")
+    private long expandMinRemainingMs;
+
+    // Overlaps shorter than this are coincidence, not chunk overlap
+    private static final int MIN_OVERLAP = 20;
+
+    // Sentences with fewer words are never treated as near-duplicates of each other
+    private static final int MIN_DUPLICATE_WORDS = 5;
+
+    // A cut-off passage is only worth including if this many tokens of budget are left
+    private static final int MIN_PARTIAL_TOKENS = 40;
+
+    // Neighbours are only looked up if this much budget is left; a smaller gap rarely fits one
+    private static final int MIN_NEIGHBOUR_TOKENS = 100;
+
+    private final TokenCountEstimator tokenEstimator = new JTokkitTokenCountEstimator();
+
+    private DistributionSummary contextTokensSummary;
+    private DistributionSummary savedTokensSummary;
+
+    /**
+     * Compacted context for one question.
+     *
+     * @param originalTokens  Tokens of the retrieved chunks as they were
+     * @param neighbourTokens Tokens of neighbour chunks added to fill the budget
+     * @param tokens          Tokens of the compacted context
+     * @param passages        Passages the context consists of
+     */
+    public record CompactedContext(String text, int originalTokens, int neighbourTokens, int tokens, int passages) {
+
+        /**
+         * Tokens removed by overlap merging, deduplication and the budget.
+         */
+        public int tokensSaved() {
+            return Math.max(0, originalTokens + neighbourTokens - tokens);
+        }
+    }
+
+    /**
+     * Consecutive chunks of one textbook merged into a single passage.
+     */
+    private static final class Passage {
+        private final String documentId;
+        private final int rank;
+        private int firstIndex;
+        private int lastIndex;
+        private String text;
+
+        private Passage(String documentId, int rank, int index, String text) {
+            this.documentId = documentId;
+            this.rank = rank;
+            this.firstIndex = index;
+            this.lastIndex = index;
+            this.text = text;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        contextTokensSummary = DistributionSummary.builder("rag.context.tokens")
+                .description("Estimated tokens of RAG context sent to the chat model")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        savedTokensSummary = DistributionSummary.builder("rag.context.tokens.saved")
+                .description("Estimated context tokens removed by compaction per request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        log.info("Context compaction: budget {} tokens, neighbour expansion: {}", tokenBudget, expandNeighbours);
+    }
+
+    /**
+     * Compact retrieved chunks into prompt context.
+     *
+     * @param documents Retrieved chunks, most relevant first
+     * @return The context, passages most relevant first
+     */
+    public CompactedContext compact(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return new CompactedContext("", 0, 0, 0, 0);
+        }
+
+        int originalTokens = estimate(documents.stream()
+                .map(Document::getText)
+                .collect(Collectors.joining(System.lineSeparator())));
+
+        List<Passage> passages = mergeRuns(documents);
+        int neighbourTokens = 0;
+        if (shouldExpand(passages)) {
+            neighbourTokens = expand(passages);
+        }
+
+        List<List<String>> sentences = removeDuplicateSentences(passages);
+        String text = fitToBudget(sentences);
+        int tokens = estimate(text);
+
+        CompactedContext context = new CompactedContext(text, originalTokens, neighbourTokens, tokens,
+                (int) sentences.stream().filter(s -> !s.isEmpty()).count());
+        contextTokensSummary.record(tokens);
+        savedTokensSummary.record(context.tokensSaved());
+
+        log.debug("Context compacted: {} chunk(s) -> {} passage(s), {} tokens (+{} from neighbours) -> {} ({} saved)",
+                documents.size(), context.passages(), originalTokens, neighbourTokens, tokens, context.tokensSaved());
+        return context;
+    }
+
+    private boolean shouldExpand(List<Passage> passages) {
+        if (!expandNeighbours || tokenBudget - estimate(passages) < MIN_NEIGHBOUR_TOKENS) {
+            return false;
+        }
+        return Deadline.current()
+                .map(deadline -> deadline.hasAtLeast(Duration.ofMillis(expandMinRemainingMs)))
+                .orElse(true);
+    }
+
+    /**
+     * Group hits by textbook and merge consecutive chunk_index runs. Hits
+     * without a position stay passages of their own.
+     */
+    private List<Passage> mergeRuns(List<Document> documents) {
+        Map<String, List<Integer>> ranksByDocument = new LinkedHashMap<>();
+        List<Passage> passages = new ArrayList<>();
+
+        for (int rank = 0; rank < documents.size(); rank++) {
+            Document document = documents.get(rank);
+            Object documentId = document.getMetadata().get("document_id");
+            int index = TextbookRetrievalService.chunkIndex(document);
+            if (documentId == null || index == Integer.MAX_VALUE) {
+                passages.add(new Passage(null, rank, index, document.getText()));
+            } else {
+                ranksByDocument.computeIfAbsent(documentId.toString(), id -> new ArrayList<>()).add(rank);
+            }
+        }
+
+        ranksByDocument.forEach((documentId, ranks) -> {
+            List<Integer> byPosition = new ArrayList<>(ranks);
+            byPosition.sort(Comparator.comparingInt(rank -> TextbookRetrievalService.chunkIndex(documents.get(rank))));
+
+            Passage run = null;
+            for (int rank : byPosition) {
+                Document document = documents.get(rank);
+                int index = TextbookRetrievalService.chunkIndex(document);
+                if (run != null && index == run.lastIndex) {
+                    continue;
+                }
+                if (run != null && index == run.lastIndex + 1) {
+                    run.text = join(run.text, document.getText());
+                    run.lastIndex = index;
+                    continue;
+                }
+                run = new Passage(documentId, rank, index, document.getText());
+                passages.add(run);
+            }
+        });
+
+        // A run is as relevant as its best hit
+        Map<Passage, Integer> bestRank = new HashMap<>();
+        for (Passage passage : passages) {
+            bestRank.put(passage, passage.documentId == null ? passage.rank : ranksByDocument.get(passage.documentId)
+                    .stream()
+                    .filter(rank -> {
+                        int index = TextbookRetrievalService.chunkIndex(documents.get(rank));
+                        return index >= passage.firstIndex && index <= passage.lastIndex;
+                    })
+                    .min(Integer::compare)
+                    .orElse(passage.rank));
+        }
+        passages.sort(Comparator.comparingInt(bestRank::get));
+        return passages;
+    }
+
+    /**
+     * Add the chunks just before and after each passage, most relevant
+     * passages first, while the budget allows.
+     *
+     * @return Tokens added
+     */
+    private int expand(List<Passage> passages) {
+        Map<String, Set<Integer>> wanted = new LinkedHashMap<>();
+        Map<String, Set<Integer>> covered = new HashMap<>();
+        for (Passage passage : passages) {
+            if (passage.documentId == null) {
+                continue;
+            }
+            Set<Integer> positions = covered.computeIfAbsent(passage.documentId, id -> new HashSet<>());
+            for (int i = passage.firstIndex; i <= passage.lastIndex; i++) {
+                positions.add(i);
+            }
+            Set<Integer> neighbours = wanted.computeIfAbsent(passage.documentId, id -> new TreeSet<>());
+            if (passage.firstIndex > 0) {
+                neighbours.add(passage.firstIndex - 1);
+            }
+            neighbours.add(passage.lastIndex + 1);
+        }
+
+        Map<String, Map<Integer, String>> neighbourTexts = new HashMap<>();
+        try {
+            wanted.forEach((documentId, positions) -> {
+                positions.removeAll(covered.get(documentId));
+                Map<Integer, String> texts = neighbourTexts.computeIfAbsent(documentId, id -> new HashMap<>());
+                chunkRepository.findByChunkIndexes(documentId, positions)
+                        .forEach(chunk -> texts.put(TextbookRetrievalService.chunkIndex(chunk), chunk.getText()));
+            });
+        } catch (Exception e) {
+            log.warn("Could not load neighbour chunks, using hits only: {}", e.getMessage());
+            return 0;
+        }
+
+        int used = estimate(passages);
+        int added = 0;
+        for (Passage passage : passages) {
+            if (passage.documentId == null) {
+                continue;
+            }
+            Map<Integer, String> texts = neighbourTexts.getOrDefault(passage.documentId, Map.of());
+            Set<Integer> taken = covered.get(passage.documentId);
+
+            String previous = texts.get(passage.firstIndex - 1);
+            if (previous != null && !taken.contains(passage.firstIndex - 1)) {
+                String merged = join(previous, passage.text);
+                int cost = estimate(merged) - estimate(passage.text);
+                if (used + cost <= tokenBudget) {
+                    passage.text = merged;
+                    passage.firstIndex--;
+                    taken.add(passage.firstIndex);
+                    used += cost;
+                    added += estimate(previous);
+                }
+            }
+
+            String next = texts.get(passage.lastIndex + 1);
+            if (next != null && !taken.contains(passage.lastIndex + 1)) {
+                String merged = join(passage.text, next);
+                int cost = estimate(merged) - estimate(passage.text);
+                if (used + cost <= tokenBudget) {
+                    passage.text = merged;
+                    passage.lastIndex++;
+                    taken.add(passage.lastIndex);
+                    used += cost;
+                    added += estimate(next);
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Split passages into sentences, dropping sentences that repeat an earlier
+     * one word for word or nearly so.
+     */
+    private List<List<String>> removeDuplicateSentences(List<Passage> passages) {
+        Set<String> seenKeys = new HashSet<>();
+        List<Set<String>> seenWords = new ArrayList<>();
+        List<List<String>> result = new ArrayList<>();
+
+        for (Passage passage : passages) {
+            List<String> kept = new ArrayList<>();
+            for (String sentence : SentenceBuffer.split(passage.text)) {
+                String key = sentence.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{M}\\p{N}]+", " ").trim();
+                if (key.isEmpty() || !seenKeys.add(key)) {
+                    continue;
+                }
+                Set<String> words = new HashSet<>(Arrays.asList(key.split(" ")));
+                if (words.size() >= MIN_DUPLICATE_WORDS && isNearDuplicate(words, seenWords)) {
+                    continue;
+                }
+                seenWords.add(words);
+                kept.add(sentence);
+            }
+            result.add(kept);
+        }
+        return result;
+    }
+
+    private boolean isNearDuplicate(Set<String> words, List<Set<String>> seenWords) {
+        for (Set<String> seen : seenWords) {
+            if (seen.size() < MIN_DUPLICATE_WORDS) {
+                continue;
+            }
+            long shared = words.stream().filter(seen::contains).count();
+            double jaccard = (double) shared / (words.size() + seen.size() - shared);
+            if (jaccard >= duplicateSimilarity) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keep whole passages while they fit, then as many sentences of the next
+     * one as fit if enough budget is left.
+     */
+    private String fitToBudget(List<List<String>> passages) {
+        List<String> selected = new ArrayList<>();
+        int used = 0;
+
+        for (List<String> sentences : passages) {
+            if (sentences.isEmpty()) {
+                continue;
+            }
+            String text = String.join(" ", sentences);
+            int tokens = estimate(text);
+            if (used + tokens <= tokenBudget) {
+                selected.add(text);
+                used += tokens;
+                continue;
+            }
+
+            if (tokenBudget - used >= MIN_PARTIAL_TOKENS) {
+                StringBuilder partial = new StringBuilder();
+                for (String sentence : sentences) {
+                    int sentenceTokens = estimate(sentence);
+                    if (used + sentenceTokens > tokenBudget) {
+                        break;
+                    }
+                    if (!partial.isEmpty()) {
+                        partial.append(' ');
+                    }
+                    partial.append(sentence);
+                    used += sentenceTokens;
+                }
+                if (!partial.isEmpty()) {
+                    selected.add(partial.toString());
+                }
+            }
+            break;
+        }
+        return String.join("\n\n", selected);
+    }
+
+    /**
+     * Join consecutive chunks, dropping the text the second repeats from the
+     * end of the first.
+     */
+    static String join(String first, String second) {
+        int max = Math.min(StreamingChunker.CHUNK_OVERLAP + 50, Math.min(first.length(), second.length()));
+        for (int length = max; length >= MIN_OVERLAP; length--) {
+            if (first.regionMatches(first.length() - length, second, 0, length)) {
+                return first + second.substring(length);
+            }
+        }
+        return first + " " + second;
+    }
+
+    private int estimate(List<Passage> passages) {
+        return passages.stream().mapToInt(passage -> estimate(passage.text)).sum();
+    }
+
+    private int estimate(String text) {
+        return text.isEmpty() ? 0 : tokenEstimator.estimate(text);
+    }
+}
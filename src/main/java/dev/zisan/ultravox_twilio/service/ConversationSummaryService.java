@@ -16,6 +16,7 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service for managing conversation summaries.
@@ -30,6 +31,8 @@ public class ConversationSummaryService {
     private final ChatClient.Builder chatClientBuilder;
     private final ObjectMapper objectMapper;
     private final OkHttpClient httpClient;
+    private final LlmConcurrencyLimiter concurrencyLimiter;
+    private final PromptRegistry promptRegistry;
 
     @Value("${ultravox.api-key}")
     private String ultravoxApiKey;
@@ -37,78 +40,92 @@ public class ConversationSummaryService {
     @Value("${ultravox.api-url}")
     private String ultravoxApiUrl;
 
-    private static final String SUMMARY_PROMPT = """
-            You are an expert at creating concise educational summaries.
-
-            Based on the following conversation transcript between a student and an AI tutor,
-            create a brief summary including:
-            1. Main topics discussed (comma-separated list)
-            2. Key questions the student asked
-            3. Overall summary (2-3 sentences)
-
-            Format your response as:
-            TOPICS: [topics]
-            SUMMARY: [summary]
-
-            Transcript:
-            %s
-            """;
-
     /**
      * Process a completed call and create a summary.
+     * If processing fails, a minimal record with the error is saved instead.
      *
      * @param callId         Twilio call SID
      * @param ultravoxCallId Ultravox call ID
      * @param callerNumber   Caller's phone number
      */
     public ConversationSummary processCompletedCall(String callId, String ultravoxCallId, String callerNumber) {
-        log.info("Processing completed call: {} (Ultravox: {})", callId, ultravoxCallId);
-
         try {
-            // Fetch transcript from Ultravox
-            String transcript = fetchTranscript(ultravoxCallId);
-
-            if (transcript == null || transcript.isBlank()) {
-                log.warn("No transcript available for call: {}", ultravoxCallId);
-                transcript = "No transcript available";
-            }
+            return summarize(callId, ultravoxCallId, callerNumber);
+        } catch (Exception e) {
+            log.error("Error processing completed call: {}", callId, e);
+            return saveFailedSummary(callId, ultravoxCallId, callerNumber, e.getMessage());
+        }
+    }
 
-            // Generate summary using AI
-            String summaryResponse = generateSummary(transcript);
+    /**
+     * Fetch the transcript of a completed call, summarize it and save the
+     * summary. Nothing is saved if a step fails, so the call can be retried.
+     *
+     * @throws IOException if Ultravox could not be reached or answered with
+     *                     a server error
+     */
+    public ConversationSummary summarize(String callId, String ultravoxCallId, String callerNumber) throws IOException {
+        log.info("Processing completed call: {} (Ultravox: {})", callId, ultravoxCallId);
 
-            // Parse the summary response
-            String topics = extractTopics(summaryResponse);
-            String summary = extractSummary(summaryResponse);
+        // Fetch transcript from Ultravox
+        String transcript = fetchTranscript(ultravoxCallId);
 
-            // Create and save summary entity
-            ConversationSummary conversationSummary = ConversationSummary.builder()
-                    .callId(callId)
-                    .ultravoxCallId(ultravoxCallId)
-                    .callerNumber(callerNumber)
-                    .summary(summary)
-                    .topicsDiscussed(topics)
-                    .callEndedAt(LocalDateTime.now())
-                    .build();
+        if (transcript == null || transcript.isBlank()) {
+            log.warn("No transcript available for call: {}", ultravoxCallId);
+            transcript = "No transcript available";
+        }
 
-            ConversationSummary saved = summaryRepository.save(conversationSummary);
-            log.info("Saved conversation summary with ID: {}", saved.getId());
+        // Generate summary using AI
+        String summaryResponse = generateSummary(transcript);
+
+        // Parse the summary response
+        String topics = extractTopics(summaryResponse);
+        String summary = extractSummary(summaryResponse);
+
+        // Replace the error record of an earlier failed attempt, or create a new summary
+        ConversationSummary conversationSummary = summaryRepository.findFirstByCallIdAndFailedTrue(callId)
+                .orElseGet(ConversationSummary::new);
+        conversationSummary.setCallId(callId);
+        conversationSummary.setUltravoxCallId(ultravoxCallId);
+        conversationSummary.setCallerNumber(callerNumber);
+        conversationSummary.setSummary(summary);
+        conversationSummary.setTopicsDiscussed(topics);
+        conversationSummary.setFailed(false);
+        if (conversationSummary.getCallEndedAt() == null) {
+            conversationSummary.setCallEndedAt(LocalDateTime.now());
+        }
 
-            return saved;
+        ConversationSummary saved = summaryRepository.save(conversationSummary);
+        log.info("Saved conversation summary with ID: {}", saved.getId());
 
-        } catch (Exception e) {
-            log.error("Error processing completed call: {}", callId, e);
+        return saved;
+    }
 
-            // Save a minimal record even if processing fails
-            ConversationSummary errorSummary = ConversationSummary.builder()
-                    .callId(callId)
-                    .ultravoxCallId(ultravoxCallId)
-                    .callerNumber(callerNumber)
-                    .summary("Error processing call: " + e.getMessage())
-                    .callEndedAt(LocalDateTime.now())
-                    .build();
+    /**
+     * Save a minimal record for a call that could not be summarized, or
+     * update the one an earlier failure left.
+     */
+    public ConversationSummary saveFailedSummary(String callId, String ultravoxCallId, String callerNumber,
+            String error) {
+        ConversationSummary errorSummary = summaryRepository.findFirstByCallIdAndFailedTrue(callId)
+                .orElseGet(() -> ConversationSummary.builder()
+                        .callId(callId)
+                        .ultravoxCallId(ultravoxCallId)
+                        .callerNumber(callerNumber)
+                        .failed(true)
+                        .callEndedAt(LocalDateTime.now())
+                        .build());
+        errorSummary.setSummary("Error processing call: " + error);
+
+        return summaryRepository.save(errorSummary);
+    }
 
-            return summaryRepository.save(errorSummary);
-        }
+    /**
+     * Whether a summary, not just an error record, was already saved for a
+     * Twilio call.
+     */
+    public boolean hasSummary(String callId) {
+        return summaryRepository.existsSucceededByCallId(callId);
     }
 
     /**
@@ -124,6 +141,10 @@ public class ConversationSummaryService {
                 .build();
 
         try (Response response = httpClient.newCall(request).execute()) {
+            // Server errors and rate limiting are worth retrying; other failures mean there is no transcript
+            if (response.code() >= 500 || response.code() == 429) {
+                throw new IOException("Failed to fetch transcript: " + response.code() + " - " + response.message());
+            }
             if (!response.isSuccessful()) {
                 log.warn("Failed to fetch transcript: {} - {}", response.code(), response.message());
                 return null;
@@ -154,12 +175,14 @@ public class ConversationSummaryService {
      */
     private String generateSummary(String transcript) {
         ChatClient chatClient = chatClientBuilder.build();
+        String prompt = promptRegistry.render(PromptRegistry.Use.SUMMARY, PromptRegistry.SUMMARY,
+                Map.of("transcript", transcript));
 
-        return chatClient
+        return concurrencyLimiter.call(LlmCaller.SUMMARY, () -> chatClient
                 .prompt()
-                .user(String.format(SUMMARY_PROMPT, transcript))
+                .user(prompt)
                 .call()
-                .content();
+                .content());
     }
 
     /**
@@ -0,0 +1,76 @@
+package dev.zisan.ultravox_twilio.service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Point in time by which a request must be answered.
+ * A deadline is attached to the current thread for the duration of a request,
+ * so components deep in the call chain (embedding, single-flight waits) can
+ * bound their waits without every signature in between carrying it.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * A deadline the given budget from now.
+     */
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * The deadline attached to the current thread, if any.
+     */
+    public static Optional<Deadline> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Attach this deadline to the current thread until the returned scope is
+     * closed.
+     */
+    public Scope attach() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Time left; zero once the deadline has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public boolean hasAtLeast(Duration duration) {
+        return deadlineNanos - System.nanoTime() >= duration.toNanos();
+    }
+
+    /**
+     * Restores the previously attached deadline when closed.
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,12 @@
+package dev.zisan.ultravox_twilio.service;
+
+/**
+ * Thrown when a step gives up waiting because the request's {@link Deadline}
+ * has passed.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,20 +1,24 @@
 package dev.zisan.ultravox_twilio.service;
 
+import dev.zisan.ultravox_twilio.event.TextbookChunksDeletedEvent;
+import dev.zisan.ultravox_twilio.event.TextbookChunksStoredEvent;
+import dev.zisan.ultravox_twilio.event.TextbookIndexedEvent;
+import dev.zisan.ultravox_twilio.repository.VectorStoreChunkRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 /**
  * Service for processing textbook PDFs and storing them in the vector database.
@@ -26,138 +30,232 @@ import java.util.UUID;
 public class DocumentProcessingService {
 
     private final VectorStore vectorStore;
+    private final ApplicationEventPublisher eventPublisher;
 
-    private static final int CHUNK_SIZE = 1000;
-    private static final int CHUNK_OVERLAP = 200;
+    private final TextbookIngestionPipeline ingestionPipeline;
+    private final VectorStoreChunkRepository chunkRepository;
+
+    private static final int BATCH_SIZE = 50;
+    private static final int TIKA_SLICE_LENGTH = 8192;
+
+    @Value("${ingestion.pipeline.enabled:true}")
+    private boolean pipelineEnabled;
 
     /**
-     * Process and index a textbook PDF.
-     * Extracts text, splits into chunks, and stores in PGVector.
+     * Result of indexing or re-indexing a textbook.
      *
-     * @param file The PDF file to process
-     * @return The document ID assigned to this textbook
+     * @param documentId     The document ID the chunks are stored under
+     * @param totalChunks    Chunks in the uploaded textbook
+     * @param embeddedChunks New or changed chunks that were embedded and stored
+     * @param reusedChunks   Unchanged chunks kept with their existing vectors
+     * @param deletedChunks  Stored chunks that no longer appear in the textbook
      */
-    public String processTextbook(MultipartFile file) throws IOException {
-        log.info("Processing textbook: {}", file.getOriginalFilename());
+    public record IndexResult(String documentId, int totalChunks, int embeddedChunks, int reusedChunks,
+            int deletedChunks) {
+    }
 
-        String documentId = UUID.randomUUID().toString();
+    /**
+     * Process and index a textbook PDF.
+     * Extracts text, splits into chunks, and stores in PGVector. Uses the
+     * parallel PDFBox pipeline when enabled, and Tika otherwise or when PDFBox
+     * finds no text.
+     *
+     * Chunks already stored under documentId (by an earlier, interrupted run)
+     * are kept, so resuming an ingestion only embeds what is missing.
+     *
+     * @param pdf        The PDF bytes
+     * @param filename   The original filename
+     * @param documentId The document ID to store the textbook under
+     * @param progress   Receives progress and is polled for cancellation
+     * @return What was embedded and kept
+     */
+    public IndexResult indexTextbook(byte[] pdf, String filename, String documentId, IngestionProgress progress)
+            throws IOException {
+        List<Document> storedChunks = chunkRepository.findByDocumentId(documentId);
+        if (!storedChunks.isEmpty()) {
+            log.info("Resuming {} with {} chunk(s) already stored", filename, storedChunks.size());
+        }
+        return index(pdf, filename, documentId, ReindexPlan.over(storedChunks), progress);
+    }
 
-        // Use Apache Tika for more robust PDF extraction (handles complex PDFs better)
-        InputStreamResource resource = new InputStreamResource(file.getInputStream());
-        TikaDocumentReader tikaReader = new TikaDocumentReader(resource);
-        List<Document> tikaDocuments = tikaReader.read();
+    /**
+     * Re-index a new edition of an already indexed textbook.
+     * Chunks are compared with the stored ones by content hash: only new or
+     * changed chunks are embedded, unchanged chunks keep their vectors, and
+     * chunks that disappeared are deleted.
+     *
+     * @param pdf        The PDF bytes
+     * @param filename   The original filename
+     * @param documentId The textbook to replace; if null, every stored textbook
+     *                   with the same filename is replaced (merging duplicate
+     *                   uploads into one)
+     * @param progress   Receives progress and is polled for cancellation
+     * @return What was embedded, kept and deleted
+     */
+    public IndexResult reindexTextbook(byte[] pdf, String filename, String documentId, IngestionProgress progress)
+            throws IOException {
+        List<String> replacedIds = documentId != null
+                ? List.of(documentId)
+                : chunkRepository.findDocumentIdsByFilename(filename);
 
-        log.info("Extracted {} document(s) from PDF", tikaDocuments.size());
+        String targetId = !replacedIds.isEmpty() ? replacedIds.get(0) : UUID.randomUUID().toString();
 
-        // Combine all content
-        StringBuilder fullText = new StringBuilder();
-        for (Document doc : tikaDocuments) {
-            String text = doc.getText();
-            if (text != null && !text.isBlank()) {
-                fullText.append(text).append(" ");
-            }
+        List<Document> storedChunks = new ArrayList<>();
+        for (String replacedId : replacedIds) {
+            storedChunks.addAll(chunkRepository.findByDocumentId(replacedId));
         }
+        log.info("Re-indexing {} as {} over {} stored chunk(s) from {} document(s)",
+                filename, targetId, storedChunks.size(), replacedIds.size());
 
-        String content = fullText.toString();
-        log.info("Total extracted text length: {} characters", content.length());
+        return index(pdf, filename, targetId, ReindexPlan.over(storedChunks), progress);
+    }
 
-        if (content.isBlank()) {
-            throw new IOException("No text could be extracted from the PDF");
+    /**
+     * Delete chunks from the vector store and the in-process indexes, e.g. to
+     * roll back a cancelled ingestion.
+     */
+    public void deleteChunks(String documentId, List<String> chunkIds) {
+        if (chunkIds.isEmpty()) {
+            return;
         }
+        vectorStore.delete(chunkIds);
+        eventPublisher.publishEvent(new TextbookChunksDeletedEvent(documentId, chunkIds));
+        log.info("Deleted {} chunk(s) of document {}", chunkIds.size(), documentId);
+    }
 
-        // Split into overlapping chunks
-        List<String> chunks = splitIntoChunks(content);
-        log.info("Split document into {} chunks", chunks.size());
-
-        // Create Spring AI Documents with metadata (process in batches to avoid OOM)
-        List<Document> documents = new ArrayList<>();
-        int batchSize = 50;
-        int totalChunks = chunks.size();
+    /**
+     * Delete every stored chunk of a textbook.
+     */
+    public void deleteTextbook(String documentId) {
+        deleteChunks(documentId, chunkRepository.findByDocumentId(documentId).stream()
+                .map(Document::getId)
+                .toList());
+    }
 
-        for (int i = 0; i < totalChunks; i++) {
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("document_id", documentId);
-            metadata.put("chunk_index", i);
-            metadata.put("filename", file.getOriginalFilename());
-            metadata.put("total_chunks", totalChunks);
+    private IndexResult index(byte[] pdf, String filename, String documentId, ReindexPlan plan,
+            IngestionProgress progress) throws IOException {
+        log.info("Processing textbook: {}", filename);
 
-            Document doc = new Document(chunks.get(i), metadata);
-            documents.add(doc);
+        int totalChunks = 0;
 
-            // Store in batches to avoid memory issues
-            if (documents.size() >= batchSize || i == totalChunks - 1) {
-                log.info("Storing batch of {} documents (chunk {} to {})",
-                        documents.size(), i - documents.size() + 1, i);
-                vectorStore.add(documents);
-                documents.clear();
+        if (pipelineEnabled) {
+            totalChunks = ingestionPipeline.ingest(pdf, documentId, filename, plan, progress).chunks();
+            if (totalChunks == 0) {
+                log.warn("PDFBox extracted no text from {}, falling back to Tika", filename);
             }
         }
 
-        log.info("Successfully indexed {} chunks for document: {}", totalChunks, documentId);
-        return documentId;
-    }
+        if (totalChunks == 0) {
+            totalChunks = processWithTika(pdf, filename, documentId, plan, progress);
+        }
 
-    /**
-     * Split text into overlapping chunks for better context preservation.
-     * Uses sentence boundaries when possible.
-     */
-    private List<String> splitIntoChunks(String text) {
-        List<String> chunks = new ArrayList<>();
+        // Kept chunks move to their new position (and to this document when merging duplicates)
+        if (!plan.keptPositions().isEmpty()) {
+            chunkRepository.updateChunkPositions(documentId, plan.keptPositions());
+        }
 
-        // Clean and normalize text
-        text = text.replaceAll("\\s+", " ").trim();
+        // New vectors are stored before the vanished ones go, so searches never see a gap
+        List<String> vanishedIds = plan.vanishedIds();
+        deleteChunks(documentId, vanishedIds);
 
-        if (text.isEmpty()) {
-            return chunks;
+        // The chunk count is only known once the last chunk is produced
+        if (totalChunks > 0) {
+            chunkRepository.updateTotalChunks(documentId, totalChunks);
         }
 
-        int textLength = text.length();
-        int start = 0;
+        // In-process indexes hold the kept chunks with their old positions
+        if (!plan.keptPositions().isEmpty()) {
+            List<Document> keptChunks = chunkRepository.findByDocumentId(documentId).stream()
+                    .filter(chunk -> plan.keptPositions().containsKey(chunk.getId()))
+                    .toList();
+            eventPublisher.publishEvent(new TextbookChunksStoredEvent(documentId, keptChunks));
+        }
 
-        while (start < textLength) {
-            // Calculate end position
-            int end = Math.min(start + CHUNK_SIZE, textLength);
+        IndexResult result = new IndexResult(documentId, totalChunks, totalChunks - plan.reusedCount(),
+                plan.reusedCount(), vanishedIds.size());
+        log.info("Successfully indexed {} chunks for document: {} ({} embedded, {} unchanged, {} deleted)",
+                totalChunks, documentId, result.embeddedChunks(), result.reusedChunks(), result.deletedChunks());
 
-            // Try to break at sentence boundary (only if not at the very end)
-            if (end < textLength) {
-                // Look for sentence boundary in the last 100 chars of the chunk
-                int searchStart = Math.max(start, end - 100);
-                int lastPeriod = text.lastIndexOf('.', end);
-                int lastQuestion = text.lastIndexOf('?', end);
-                int lastExclamation = text.lastIndexOf('!', end);
+        // Let caches and indexes derived from textbook content refresh themselves
+        eventPublisher.publishEvent(new TextbookIndexedEvent(documentId, filename, totalChunks));
+        return result;
+    }
 
-                int breakPoint = Math.max(lastPeriod, Math.max(lastQuestion, lastExclamation));
+    /**
+     * Extract the PDF with Tika and stream the text through the chunker,
+     * storing chunks in batches as they are produced.
+     *
+     * @return Number of chunks stored
+     */
+    private int processWithTika(byte[] pdf, String filename, String documentId, ReindexPlan plan,
+            IngestionProgress progress) throws IOException {
+        // Use Apache Tika for more robust PDF extraction (handles complex PDFs better)
+        TikaDocumentReader tikaReader = new TikaDocumentReader(new ByteArrayResource(pdf));
+        List<Document> tikaDocuments = tikaReader.read();
 
-                // Only use break point if it's within the search window
-                if (breakPoint > searchStart) {
-                    end = breakPoint + 1;
+        log.info("Extracted {} document(s) from PDF", tikaDocuments.size());
+        progress.started(0);
+
+        StreamingChunker chunker = new StreamingChunker();
+        List<Document> batch = new ArrayList<>();
+        int chunkIndex = 0;
+
+        try {
+            for (Document doc : tikaDocuments) {
+                String text = doc.getText();
+                if (text == null || text.isBlank()) {
+                    continue;
                 }
-            }
 
-            // Extract the chunk
-            String chunk = text.substring(start, end).trim();
-            if (!chunk.isEmpty() && chunk.length() > 50) {
-                chunks.add(chunk);
+                // Feed the chunker in slices so only one batch of chunks is held at a time
+                for (int offset = 0; offset < text.length(); offset += TIKA_SLICE_LENGTH) {
+                    if (progress.isCancelled()) {
+                        throw new CancellationException("Ingestion of " + filename + " was cancelled");
+                    }
+                    CharSequence slice = text.subSequence(offset, Math.min(text.length(), offset + TIKA_SLICE_LENGTH));
+                    chunkIndex = addChunks(chunker.append(slice), batch, documentId, filename, plan, progress,
+                            chunkIndex);
+                }
+                chunkIndex = addChunks(chunker.append(" "), batch, documentId, filename, plan, progress, chunkIndex);
             }
 
-            // Move to next position with overlap
-            // IMPORTANT: Always advance start to prevent infinite loop
-            int nextStart = end - CHUNK_OVERLAP;
-            if (nextStart <= start) {
-                // If we're not making progress, just move to end
-                start = end;
-            } else {
-                start = nextStart;
+            if (chunker.getTextLength() == 0) {
+                throw new IOException("No text could be extracted from the PDF");
             }
 
-            // Safety check: if we've processed enough chunks, break
-            if (chunks.size() > 10000) {
-                log.warn("Reached maximum chunk limit of 10000, stopping");
-                break;
+            chunkIndex = addChunks(chunker.finish(), batch, documentId, filename, plan, progress, chunkIndex);
+            if (!batch.isEmpty()) {
+                ingestionPipeline.store(List.copyOf(batch), documentId, progress);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while storing chunks", e);
         }
 
-        return chunks;
+        log.info("Total extracted text length: {} characters, split into {} chunks",
+                chunker.getTextLength(), chunkIndex);
+        return chunkIndex;
+    }
+
+    private int addChunks(List<String> chunks, List<Document> batch, String documentId, String filename,
+            ReindexPlan plan, IngestionProgress progress, int chunkIndex) throws InterruptedException {
+        for (String chunk : chunks) {
+            String contentHash = ContentHash.of(chunk);
+            int index = chunkIndex++;
+            progress.chunksProduced(1);
+            if (plan.reuse(contentHash, index)) {
+                continue;
+            }
+            batch.add(TextbookIngestionPipeline.chunkDocument(chunk, contentHash, documentId, filename, index));
+
+            // Store in batches to avoid memory issues
+            if (batch.size() >= BATCH_SIZE) {
+                log.info("Storing batch of {} documents", batch.size());
+                ingestionPipeline.store(List.copyOf(batch), documentId, progress);
+                batch.clear();
+            }
+        }
+        return chunkIndex;
     }
 
     /**
@@ -1,17 +1,31 @@
 package dev.zisan.ultravox_twilio.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * RAG (Retrieval Augmented Generation) service for answering student questions.
- * Uses Spring AI ChatClient with QuestionAnswerAdvisor to search textbook
- * content.
+ * Retrieves textbook content through TextbookRetrievalService (hybrid dense +
+ * BM25 search) and answers with the Spring AI ChatClient.
+ *
+ * Answers are produced within a latency budget. When the budget runs out the
+ * answer degrades instead of arriving late: the sentences generated so far, a
+ * close cached answer, the raw retrieved passages, and finally a holding reply.
  */
 @Slf4j
 @Service
@@ -19,264 +33,272 @@ import org.springframework.stereotype.Service;
 public class EducationRAGService {
 
     private final ChatClient.Builder chatClientBuilder;
-    private final VectorStore vectorStore;
-
-    private static final String SYSTEM_PROMPT = """
-            # Education AI - System Prompt
-
-## Identity & Core Role
-
-You are ** Education AI**, an exceptionally knowledgeable and intelligent education tutor specializing in the **NCTB (National Curriculum and Textbook Board) Class 9-10 ICT (Information and Communication Technology)** curriculum from Bangladesh. You are speaking with students over voice, so respond conversationally and naturally as if you're their trusted, friendly teacher who knows every page of their textbook by heart.
-
-You have deeply studied and memorized every chapter, every concept, every example, and every exercise from the ICT textbook. When students ask you questions, you answer with confidence and authority because you genuinely know the material inside out. You don't just recite information... you explain it in a way that makes students truly understand.
-
----
-
-## Voice Interaction Guidelines
-
-Since you are communicating through voice:
-
-- Speak casually and warmly, like a friendly teacher talking to a student on the phone
-- Keep responses concise but complete... aim for two to four sentences for simple questions, and break complex topics into digestible parts
-- Never use bullet points, numbered lists, emojis, or any formatting that doesn't translate to speech
-- Avoid stage directions like "pauses" or "laughs"... just speak naturally
-- When saying numbers, say them clearly... for example, say "nine dash ten" instead of "9-10"
-- Use natural pauses by including ellipses where appropriate
-- Be encouraging and supportive... celebrate when students understand something
-- If a student seems confused, offer to explain differently or give a simple example
-
----
-
-## Your Personality & Teaching Style
-
-You are:
-
-- **Deeply knowledgeable**: You know every chapter, every topic, every subtopic of the ICT textbook. You can recall specific examples, definitions, and explanations from the book.
-- **Patient and encouraging**: Learning technology concepts can be challenging. You never make students feel stupid for not knowing something.
-- **Clear and articulate**: You explain complex technical concepts using simple, relatable Bangladeshi examples that students can connect with.
-- **Confident but humble**: You speak with authority because you truly know the subject, but you're always ready to help students at their level.
-- **Contextually aware**: You understand the Bangladeshi context... Digital Bangladesh initiatives, local examples, and how ICT affects life in Bangladesh.
-
----
-
-## ICT Curriculum Mastery: Chapter-by-Chapter Deep Knowledge
-
-### Chapter 1: Information and Communication Technology and Our Bangladesh
-
-You know this chapter covers the foundation of ICT and its connection to Bangladesh's development. When students ask about this chapter, you confidently explain:
-
-**What ICT Is**:
-ICT stands for Information and Communication Technology. It's the combination of technologies used to handle information and enable communication. The five main components are hardware, software, people, data, and network. Hardware includes physical devices like computers, smartphones, and tablets. Software refers to programs and applications that run on hardware. People are the users who operate and benefit from technology. Data is the raw information that gets processed into meaningful output. Network connects devices to share information.
-
-**Digital Bangladesh Vision**:
-The Digital Bangladesh vision was launched in two thousand eight with the goal of transforming Bangladesh into a digitally empowered nation by two thousand twenty-one. This includes e-governance services, digital literacy, connectivity, and developing the ICT industry. You know examples like the national web portal, online birth registration, and the a2i project.
-
-**ICT in Bangladesh's Development**:
-You can explain how ICT supports agriculture through apps that give farmers weather updates and market prices. In healthcare, telemedicine connects rural patients with city doctors. Education uses digital content and online learning platforms. E-commerce has grown with services like bKash and Nagad enabling mobile financial services.
-
-**Digital Divide and Globalization**:
-The digital divide refers to the gap between those who have access to technology and those who don't. In Bangladesh, rural areas often have less connectivity than cities. Globalization means the world is more connected through technology, and Bangladesh participates through outsourcing, call centers, and freelancing.
-
-**Digital Citizenship and Ethics**:
-This covers responsible use of technology, respecting others online, understanding the consequences of cyber activities, and following the ICT Act of Bangladesh.
-
----
-
-### Chapter 2: Computer and the Internet
-
-You have mastered all concepts about computer architecture and internet fundamentals:
-
-**Computer Architecture**:
-A computer has input devices like keyboard and mouse that receive data, a CPU or Central Processing Unit that processes data... which is often called the brain of the computer, memory that stores data temporarily in RAM or permanently in ROM, and output devices like monitor and printer that show results. Storage devices include hard disks, SSDs, and USB drives.
-
-**System Software vs Application Software**:
-System software like Windows or Linux manages the computer's hardware and provides a platform for other programs. Application software like Microsoft Word or browsers are programs users interact with directly to accomplish tasks.
-
-**The Internet**:
-The Internet is a global network connecting millions of computers. You explain connection types including dial-up, broadband, and mobile internet like three G and four G. Web browsers like Chrome and Firefox let users access websites. Search engines like Google help find information. Email allows electronic message exchange.
-
-**Cloud Services**:
-Cloud computing means storing and accessing data and programs over the internet instead of the computer's hard drive. Examples include Google Drive and Dropbox. This allows access from anywhere.
-
-**Internet Safety**:
-You teach students about creating strong passwords, not sharing personal information online, recognizing fake websites, and being careful with downloads.
-
----
-
-### Chapter 3: Word Processing and Presentation
-
-You are an expert in document and presentation creation:
-
-**Word Processing**:
-Word processors like Microsoft Word or LibreOffice Writer create text documents. You explain formatting text using bold, italic, and underline. Paragraph formatting includes alignment and spacing. Styles help maintain consistent formatting. Tables organize information in rows and columns. You can insert images and clip arts. Headers appear at the top of pages and footers at the bottom. Page setup includes margins and orientation. Printing options let you control the final output.
-
-**Presentation Software**:
-Programs like Microsoft PowerPoint or LibreOffice Impress create slideshows. You explain creating slides, adding text and images, using transitions between slides, and applying animations to elements. Good presentation design includes readable fonts, appropriate colors, and not overcrowding slides with information.
-
----
-
-### Chapter 4: Data, Spreadsheet and Database Management
-
-You deeply understand data handling concepts:
-
-**Data and Information**:
-Data refers to raw facts and figures that by themselves don't mean much. When data is processed and organized, it becomes information which is meaningful and useful. Types of data include numeric, text, date, and logical or true-false values.
-
-**Spreadsheets**:
-Spreadsheet programs like Microsoft Excel or LibreOffice Calc work with data in cells organized in rows and columns. Cell references use letters for columns and numbers for rows, like A1 or B5. Formulas perform calculations using operators like plus, minus, multiply, and divide. Functions are predefined formulas like SUM for adding numbers, AVERAGE for finding mean values, MAX for highest value, and MIN for lowest value. Charts visualize data as bar charts, pie charts, or line graphs.
-
-**Databases**:
-A database is an organized collection of data. Tables store related data with rows called records and columns called fields. A primary key is a unique identifier for each record... like a student ID number. Databases are used in schools for student records, in banks for account information, and in hospitals for patient data.
-
----
-
-### Chapter 5: Programming and Programming Languages
-
-You can explain programming concepts clearly:
-
-**What is Programming**:
-A program is a set of instructions that tells a computer what to do. A programming language is a formal language with specific rules that computers can understand. Computers need these formal instructions because they cannot understand human language directly.
-
-**Problem Solving Steps**:
-First, understand the problem clearly. Second, write an algorithm which is a step-by-step solution in plain language. Third, draw a flowchart which is a visual representation using shapes... ovals for start and end, rectangles for processes, diamonds for decisions, and parallelograms for input-output. Fourth, write the code in a programming language.
-
-**Types of Programming Languages**:
-Low-level languages like machine language and assembly are close to what the computer understands but difficult for humans. High-level languages like C, Python, and Java are easier for humans to read and write. Compilers translate the entire program at once, while interpreters translate line by line.
-
-**Basic Programming Examples**:
-You can explain simple programs that calculate sums by adding numbers, find averages by dividing the total by count, and make decisions using if-else conditions. For example, a program to check if a number is even or odd uses the modulus operator to find the remainder when dividing by two.
-
----
-
-### Chapter 6: ICT in Everyday Life
-
-You know practical real-world applications:
-
-**E-Governance**:
-E-governance uses ICT to deliver government services. In Bangladesh, examples include the national web portal bangladesh dot gov dot bd, online birth and death registration, land records digitization, and digital service centers at union parishads.
-
-**E-Commerce**:
-E-commerce is buying and selling online. In Bangladesh, platforms like Daraz and Evaly are examples. Mobile banking through bKash, Nagad, and Rocket allows money transfers without visiting banks.
-
-**E-Learning**:
-Online learning platforms provide education through the internet. Shikkhok Batayon offers teacher resources. Ten minute school and other platforms provide video lessons. This is especially important for reaching students in remote areas.
-
-**E-Health**:
-Telemedicine connects patients with doctors through video calls. Digital health records make patient information accessible. Mobile apps track health and provide medical information.
-
-**Social Media**:
-Platforms like Facebook connect people and share information. While useful for communication, students should use them responsibly.
-
-**Benefits of ICT**:
-Speed and efficiency in completing tasks. Convenience of accessing services from home. Transparency in government processes. New job opportunities in the tech sector.
+    private final TextbookRetrievalService retrievalService;
+    private final ContextCompactor contextCompactor;
+    private final SemanticAnswerCache answerCache;
+    private final QuestionNormalizer questionNormalizer;
+    private final LlmConcurrencyLimiter concurrencyLimiter;
+    private final PromptRegistry promptRegistry;
+    private final MeterRegistry meterRegistry;
 
-**Risks of ICT**:
-Online fraud and scams. Misinformation spreading quickly. Some traditional jobs being replaced by automation. Digital addiction affecting health and studies.
+    @Value("${rag.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
 
----
+    @Value("${rag.single-flight.max-waiters:50}")
+    private int singleFlightMaxWaiters;
 
-### Chapter 7: ICT Security and Ethical Use
+    // 0 leaves answers without a default budget, so the degradation ladder only runs for requests that send one
+    @Value("${rag.deadline.budget-ms:0}")
+    private long defaultBudgetMs;
 
-You are knowledgeable about staying safe online:
+    // Stands in for "no budget" so the deadline-aware code paths need no special case
+    private static final Duration NO_BUDGET = Duration.ofHours(1);
 
-**Security Threats**:
-Viruses are malicious programs that can damage or delete files. Malware is software designed to harm computers. Phishing tricks users into revealing passwords by pretending to be legitimate websites. Password hacking tries to guess or steal login credentials. Data theft steals personal or sensitive information.
+    @Value("${rag.deadline.min-generation-ms:1500}")
+    private long minGenerationMs;
 
-**Protection Methods**:
-Install and update antivirus software. Use strong passwords with letters, numbers, and symbols. Enable two-factor authentication when available. Don't click suspicious links or download from unknown sources. Keep software and operating systems updated. Be careful when using public wifi.
+    @Value("${rag.deadline.fallback-reserve-ms:300}")
+    private long fallbackReserveMs;
 
-**Cyber Ethics**:
-Use social media responsibly without spreading rumors or hate. Respect others' privacy and don't share their information without permission. Avoid plagiarism by giving credit to original authors. Understand that online actions have real consequences.
+    @Value("${rag.deadline.cached-answer-similarity:0.8}")
+    private double degradedCacheSimilarity;
 
-**Cyber Laws in Bangladesh**:
-The ICT Act and Digital Security Act outline rules for online behavior and consequences for cybercrimes. Hacking, spreading false information, and online harassment are punishable offenses.
+    private ChatClient ragChatClient;
+    private SingleFlight<String> answerFlights;
+    private Timer firstTokenTimer;
 
-**Digital Citizenship**:
-Being a good digital citizen means using technology responsibly, respecting others online, protecting personal information, and contributing positively to online communities.
+    // Last rung of the degradation ladder, spoken when nothing better is ready in time
+    private static final String HOLDING_REPLY =
+            "Give me just a moment to look that up in the textbook... could you ask me that once more?";
 
----
-
-## How to Handle Questions
-
-**CRITICAL RULE - Never Deny Access to Data**:
-You must NEVER say that you don't have access to data from RAG or anything, couldn't retrieve information, or failed to get textbook content. You always have complete access to the NCTB ICT textbook. If asked any question, always respond confidently as if you have the full textbook right in front of you. Start your answers by naturally referencing the textbook content... for example say "Based on what the textbook covers..." or "From the ICT textbook, I can tell you that..." or simply dive straight into explaining the concept. Never use phrases like "I couldn't find this" or "I don't have access" or "the data wasn't available" or anything similar. You are the textbook... you know everything in it.
-
-**When a student asks about a topic**:
-Answer confidently because you know the textbook thoroughly. Provide clear explanations with examples from the Bangladeshi context. If appropriate, connect the topic to other related concepts in the curriculum. Always sound like you have instant access to all the information.
-
-**When a student asks something outside the ICT curriculum**:
-Politely mention that your specialty is ICT for class nine and ten, but you can try to help or suggest they ask their teacher for topics outside this subject. Do not say you lack data... just say your expertise is focused on ICT.
-
-**When a student seems confused**:
-Offer to explain the concept differently. Use a simple everyday example. Break down the explanation into smaller parts. Ask if they'd like you to repeat or clarify anything.
-
-**When a student asks for exam tips**:
-Share study strategies specific to ICT. Emphasize understanding concepts rather than memorizing. Suggest practicing the practical components like word processing and spreadsheets.
-
----
-
-## Response Style Examples
+    /**
+     * Sentences generated before the budget ran out; complete is false if
+     * generation was cut off.
+     */
+    private record Generation(String text, boolean complete) {
+    }
 
-If a student asks "What is a computer virus?"... you might say:
-"A computer virus is a type of malicious software that can copy itself and spread from one computer to another. Just like a biological virus makes people sick, a computer virus can damage your files, slow down your computer, or even steal your personal information. This is why it's so important to have updated antivirus software and be careful about what you download. The ICT Security chapter covers this in detail!"
+    @PostConstruct
+    public void init() {
+        ragChatClient = chatClientBuilder.clone().build();
+        answerFlights = new SingleFlight<>("rag-answer", singleFlightMaxWaiters, meterRegistry);
+        firstTokenTimer = Timer.builder("rag.answer.first.token")
+                .description("Time from starting generation to the first token of a RAG answer, including the wait for a model slot")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        log.info("RAG single-flight enabled: {}, max waiters: {}, answer budget: {}",
+                singleFlightEnabled, singleFlightMaxWaiters, defaultBudgetMs > 0 ? defaultBudgetMs + " ms" : "none");
+    }
 
-If a student asks "Can you explain RAM and ROM?"... you might say:
-"Sure! RAM stands for Random Access Memory... it's temporary memory that stores data while you're working on something. When you turn off the computer, RAM gets cleared. ROM stands for Read Only Memory... it stores permanent instructions that the computer needs to start up, and this data doesn't disappear when power is off. Think of RAM like a whiteboard you use during class that gets erased at the end, and ROM like a textbook that stays the same forever."
+    /**
+     * Answer a student's question using RAG within the default latency budget.
+     * Searches the vector store for relevant textbook content and generates a
+     * response. Identical questions (after normalization) that arrive while an
+     * answer is being generated wait for that answer instead of generating
+     * their own.
+     *
+     * @param question The student's question
+     * @return The AI-generated answer based on textbook content
+     */
+    public String answerQuestion(String question) {
+        return answerQuestion(question, defaultBudget());
+    }
 
----
+    /**
+     * Answer a student's question within the given latency budget. The budget
+     * bounds embedding, retrieval and generation; once it is nearly spent the
+     * answer degrades rather than arriving late.
+     *
+     * @param question The student's question
+     * @param budget   Time allowed for the whole answer
+     * @return The answer, or the best degraded reply available in time
+     */
+    public String answerQuestion(String question, Duration budget) {
+        return answerQuestion(question, budget, LlmCaller.INTERACTIVE);
+    }
 
-## Important Reminders
+    /**
+     * Answer a question on behalf of the given caller class, which decides the
+     * chat model bulkhead the generation runs in.
+     */
+    public String answerQuestion(String question, LlmCaller caller) {
+        return answerQuestion(question, defaultBudget(), caller);
+    }
 
-- You are speaking through voice, so never use formatting that won't work in speech
-- Be warm, encouraging, and make learning enjoyable
-- You genuinely know this curriculum deeply... speak with that confidence
-- Keep responses conversational and appropriately paced
-- When you mention chapter or topic references, do so naturally as if recalling from memory
-- Use Bangladeshi context and examples whenever possible to make concepts relatable
-- If students ask about NCTB English books, you can help with those too as part of class nine curriculum
+    private Duration defaultBudget() {
+        return defaultBudgetMs > 0 ? Duration.ofMillis(defaultBudgetMs) : NO_BUDGET;
+    }
 
----
+    private String answerQuestion(String question, Duration budget, LlmCaller caller) {
+        log.info("RAG Query - Question: {} (budget {} ms)", question, budget.toMillis());
+
+        Deadline deadline = Deadline.after(budget);
+        try (Deadline.Scope scope = deadline.attach()) {
+            String key = questionNormalizer.normalize(question);
+            if (!singleFlightEnabled || key.isEmpty()) {
+                return generateAnswer(question, deadline, caller);
+            }
+            return answerFlights.execute(key, () -> generateAnswer(question, deadline, caller));
+        } catch (DeadlineExceededException e) {
+            // Waited on an identical in-flight question past our own deadline
+            log.warn("RAG deadline exceeded waiting for in-flight answer: {}", e.getMessage());
+            return degrade(question, null, null);
+        }
+    }
 
-## Closing Note
+    private String generateAnswer(String question, Deadline deadline, LlmCaller caller) {
+        SemanticAnswerCache.Lookup cacheLookup = null;
+        List<Document> documents = null;
+
+        try {
+            // Serve near-identical questions from the semantic cache
+            if (answerCache.isEnabled()) {
+                cacheLookup = answerCache.lookup(question);
+                if (cacheLookup.isHit()) {
+                    log.info("Answered from semantic cache (similarity {})",
+                            String.format("%.3f", cacheLookup.similarity()));
+                    return cacheLookup.answer();
+                }
+            }
+
+            if (!deadline.hasAtLeast(Duration.ofMillis(minGenerationMs + fallbackReserveMs))) {
+                return degrade(question, cacheLookup, null);
+            }
+            documents = retrievalService.retrieve(question);
+            log.debug("Retrieved {} chunk(s) for question", documents.size());
+
+            // Keep back enough time to fall back if generation is cut off
+            Duration generationBudget = deadline.remaining().minusMillis(fallbackReserveMs);
+            if (generationBudget.toMillis() < minGenerationMs) {
+                return degrade(question, cacheLookup, documents);
+            }
+
+            Generation generation = generate(question, documents, generationBudget, caller);
+            log.debug("Generated response: {}", generation.text());
+
+            if (generation.complete()) {
+                if (cacheLookup != null) {
+                    answerCache.store(question, cacheLookup, generation.text());
+                }
+                return generation.text();
+            }
+            if (!generation.text().isBlank()) {
+                recordDegradation("partial_answer");
+                log.warn("RAG budget ran out during generation, returning the sentences generated so far");
+                return generation.text();
+            }
+            return degrade(question, cacheLookup, documents);
+
+        } catch (DeadlineExceededException e) {
+            log.warn("RAG deadline exceeded: {}", e.getMessage());
+            return degrade(question, cacheLookup, documents);
+        } catch (LlmOverloadedException e) {
+            log.warn("RAG model overloaded: {}", e.getMessage());
+            return degrade(question, cacheLookup, documents);
+        }
+    }
 
-You are not just reading from a textbook... you have internalized this knowledge and can discuss ICT topics as naturally as talking about your favorite subject. Students should feel like they're getting personalized tutoring from an expert who truly cares about their learning journey. Every interaction should leave them feeling more confident and knowledgeable about ICT.
+    /**
+     * Generate an answer, stopping at the budget. Streaming lets a cut-off
+     * generation still yield its complete sentences, and cancelling the stream
+     * stops the model from spending time on an answer nobody will hear.
+     */
+    private Generation generate(String question, List<Document> documents, Duration budget, LlmCaller caller) {
+        SentenceBuffer buffer = new SentenceBuffer();
+        StringBuilder sentences = new StringBuilder();
+        AtomicBoolean cutOff = new AtomicBoolean();
+
+        ragStream(question, documents, caller)
+                .concatMapIterable(buffer::append)
+                .concatWith(Mono.fromSupplier(buffer::flush))
+                .takeUntilOther(Mono.delay(budget).doOnNext(tick -> cutOff.set(true)))
+                .doOnNext(sentence -> {
+                    if (!sentences.isEmpty()) {
+                        sentences.append(' ');
+                    }
+                    sentences.append(sentence);
+                })
+                .blockLast();
+
+        if (cutOff.get()) {
+            return new Generation(sentences.toString(), false);
+        }
+        return new Generation(buffer.getFullText(), true);
+    }
 
-Welcome each student warmly and let them know you're here to help them master ICT!
+    /**
+     * Best reply available without generating: a close cached answer, then the
+     * retrieved passages (keyword search if dense retrieval did not finish),
+     * then a holding reply.
+     */
+    private String degrade(String question, SemanticAnswerCache.Lookup cacheLookup, List<Document> documents) {
+        if (cacheLookup != null && cacheLookup.nearestAnswer() != null
+                && cacheLookup.similarity() >= degradedCacheSimilarity) {
+            recordDegradation("cached_answer");
+            log.warn("RAG budget exhausted, answering from cache (similarity {})",
+                    String.format("%.3f", cacheLookup.similarity()));
+            return cacheLookup.nearestAnswer();
+        }
+
+        List<Document> passageSource = documents != null ? documents : retrievalService.retrieveLexical(question);
+        String passages = retrievalService.formatPassages(passageSource);
+        if (!passages.isBlank()) {
+            recordDegradation("passages");
+            log.warn("RAG budget exhausted, returning {} chars of raw passages", passages.length());
+            return passages;
+        }
+
+        recordDegradation("holding_reply");
+        log.warn("RAG budget exhausted with nothing to return, sending holding reply");
+        return HOLDING_REPLY;
+    }
 
-            """;
+    private void recordDegradation(String level) {
+        meterRegistry.counter("rag.degraded", "level", level).increment();
+    }
 
     /**
-     * Answer a student's question using RAG.
-     * Searches the vector store for relevant textbook content and generates a
-     * response.
+     * Answer a student's question using RAG, streaming the answer sentence by
+     * sentence as the model produces it.
+     * Cached answers are replayed as sentences immediately. Answers are only
+     * cached when the stream runs to completion, so a client that stops after
+     * the first few sentences does not leave a truncated answer behind.
      *
      * @param question The student's question
-     * @return The AI-generated answer based on textbook content
+     * @return Flux of complete sentences
      */
-    public String answerQuestion(String question) {
-        log.info("RAG Query - Question: {}", question);
-
-        // Build chat client with RAG advisor using builder pattern (Spring AI 1.1.2+)
-        ChatClient chatClient = chatClientBuilder
-                .defaultAdvisors(
-                        QuestionAnswerAdvisor.builder(vectorStore)
-                                .searchRequest(SearchRequest.builder()
-                                        .topK(5)
-                                        .similarityThreshold(0.7)
-                                        .build())
-                                .build())
-                .build();
-
-        // Get response
-        String response = chatClient
-                .prompt()
-                .system(SYSTEM_PROMPT)
-                .user(question)
-                .call()
-                .content();
+    public Flux<String> streamAnswer(String question) {
+        return streamAnswer(question, LlmCaller.INTERACTIVE);
+    }
 
-        log.debug("Generated response: {}", response);
-        return response;
+    /**
+     * Stream an answer on behalf of the given caller class.
+     */
+    public Flux<String> streamAnswer(String question, LlmCaller caller) {
+        log.info("RAG Stream Query - Question: {}", question);
+
+        // The lookup embeds the question, so it waits for a subscriber like retrieval does
+        return Flux.defer(() -> {
+            SemanticAnswerCache.Lookup cacheLookup = answerCache.isEnabled() ? answerCache.lookup(question) : null;
+            if (cacheLookup != null && cacheLookup.isHit()) {
+                log.info("Streaming answer from semantic cache (similarity {})",
+                        String.format("%.3f", cacheLookup.similarity()));
+                return Flux.fromIterable(SentenceBuffer.split(cacheLookup.answer()));
+            }
+
+            SentenceBuffer buffer = new SentenceBuffer();
+            List<Document> documents = retrievalService.retrieve(question);
+
+            return ragStream(question, documents, caller)
+                    .concatMapIterable(buffer::append)
+                    .concatWith(Mono.fromSupplier(buffer::flush))
+                    .doOnComplete(() -> {
+                        log.debug("Streamed response: {}", buffer.getFullText());
+                        if (cacheLookup != null) {
+                            answerCache.store(question, cacheLookup, buffer.getFullText());
+                        }
+                    });
+        });
     }
 
     /**
@@ -287,11 +309,45 @@ Welcome each student warmly and let them know you're here to help them master IC
 
         ChatClient chatClient = chatClientBuilder.build();
 
-        return chatClient
+        return concurrencyLimiter.call(LlmCaller.TEST, () -> chatClient
                 .prompt()
                 .system("You are a helpful assistant. Answer briefly.")
                 .user(question)
                 .call()
-                .content();
+                .content());
+    }
+
+    /**
+     * Stream the model's answer tokens through the concurrency limiter,
+     * recording the time to the first token.
+     */
+    private Flux<String> ragStream(String question, List<Document> documents, LlmCaller caller) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return concurrencyLimiter.stream(caller, () -> ragPrompt(question, documents).stream().content())
+                    .doOnNext(token -> {
+                        if (first.compareAndSet(true, false)) {
+                            firstTokenTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Build the RAG prompt for a question from the retrieved textbook chunks,
+     * compacted to the context token budget.
+     * Everything per-question goes in the user turn after the static tutor
+     * prompt, so Ollama can reuse the prefilled persona (see
+     * PromptPrefixWarmer); the question comes last, next to the answer.
+     */
+    private ChatClient.ChatClientRequestSpec ragPrompt(String question, List<Document> documents) {
+        String context = contextCompactor.compact(documents).text();
+
+        return ragChatClient
+                .prompt()
+                .system(promptRegistry.render(PromptRegistry.Use.RAG_ANSWER, PromptRegistry.TUTOR))
+                .user(promptRegistry.render(PromptRegistry.Use.RAG_ANSWER, PromptRegistry.RAG_USER,
+                        Map.of("context", context, "question", question)));
     }
 }
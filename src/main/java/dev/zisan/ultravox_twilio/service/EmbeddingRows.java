@@ -0,0 +1,102 @@
+package dev.zisan.ultravox_twilio.service;
+
+/**
+ * Row storage and scoring for {@link LocalVectorStore}.
+ * Rows are unit-length embeddings addressed by a dense row number; the store
+ * keeps the mapping from chunk IDs to rows.
+ */
+abstract class EmbeddingRows {
+
+    /**
+     * How embeddings are held in memory.
+     */
+    enum Mode {
+        /** Full-precision floats on heap, exact search. */
+        NONE,
+        /** One signed byte per dimension plus a scale per row, rescored exactly. */
+        INT8,
+        /** One sign bit per dimension, rescored exactly. */
+        BINARY
+    }
+
+    protected final int dimensions;
+
+    protected EmbeddingRows(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    static EmbeddingRows create(Mode mode, int dimensions, int rescoreFactor) {
+        return mode == Mode.NONE
+                ? new FloatEmbeddingRows(dimensions)
+                : new QuantizedEmbeddingRows(mode, dimensions, rescoreFactor);
+    }
+
+    abstract Mode mode();
+
+    /**
+     * Make room for at least {@code rows} rows, keeping existing contents.
+     */
+    abstract void ensureCapacity(int rows);
+
+    abstract void set(int row, float[] unitVector);
+
+    /**
+     * Copy row {@code from} over row {@code to}.
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * Full-precision copy of a stored row.
+     */
+    abstract float[] vector(int row);
+
+    /**
+     * Find the best rows for a query using the mode's normal search path.
+     *
+     * @return Number of results written to topRows/topScores, best first
+     */
+    abstract int search(float[] unitQuery, int rowCount, int topK, double threshold,
+            int[] topRows, float[] topScores);
+
+    /**
+     * Exhaustive full-precision search, used as ground truth for recall.
+     */
+    int exactSearch(float[] unitQuery, int rowCount, int topK, double threshold,
+            int[] topRows, float[] topScores) {
+        int found = 0;
+        for (int row = 0; row < rowCount; row++) {
+            float score = VectorMath.dot(unitQuery, vector(row), 0, dimensions);
+            if (score >= threshold) {
+                found = offer(found, topK, row, score, topRows, topScores);
+            }
+        }
+        return found;
+    }
+
+    abstract long heapBytes();
+
+    long offHeapBytes() {
+        return 0;
+    }
+
+    /**
+     * Insert a candidate into small top-k arrays kept sorted best first.
+     *
+     * @return The new number of entries in the arrays
+     */
+    static int offer(int found, int topK, int row, float score, int[] topRows, float[] topScores) {
+        if (found == topK && score <= topScores[found - 1]) {
+            return found;
+        }
+
+        int position = found < topK ? found++ : topK - 1;
+        while (position > 0 && topScores[position - 1] < score) {
+            topScores[position] = topScores[position - 1];
+            topRows[position] = topRows[position - 1];
+            position--;
+        }
+        topScores[position] = score;
+        topRows[position] = row;
+        return found;
+    }
+}
@@ -0,0 +1,66 @@
+package dev.zisan.ultravox_twilio.service;
+
+import java.util.Arrays;
+
+/**
+ * Full-precision rows in one contiguous row-major float array on heap,
+ * scored by brute force.
+ */
+class FloatEmbeddingRows extends EmbeddingRows {
+
+    private float[] matrix;
+
+    FloatEmbeddingRows(int dimensions) {
+        super(dimensions);
+        this.matrix = new float[1024 * dimensions];
+    }
+
+    @Override
+    Mode mode() {
+        return Mode.NONE;
+    }
+
+    @Override
+    void ensureCapacity(int rows) {
+        if ((long) rows * dimensions > matrix.length) {
+            matrix = Arrays.copyOf(matrix, Math.max(rows, matrix.length / dimensions * 2) * dimensions);
+        }
+    }
+
+    @Override
+    void set(int row, float[] unitVector) {
+        System.arraycopy(unitVector, 0, matrix, row * dimensions, dimensions);
+    }
+
+    @Override
+    void move(int from, int to) {
+        System.arraycopy(matrix, from * dimensions, matrix, to * dimensions, dimensions);
+    }
+
+    @Override
+    float[] vector(int row) {
+        return Arrays.copyOfRange(matrix, row * dimensions, (row + 1) * dimensions);
+    }
+
+    @Override
+    int search(float[] unitQuery, int rowCount, int topK, double threshold, int[] topRows, float[] topScores) {
+        return exactSearch(unitQuery, rowCount, topK, threshold, topRows, topScores);
+    }
+
+    @Override
+    int exactSearch(float[] unitQuery, int rowCount, int topK, double threshold, int[] topRows, float[] topScores) {
+        int found = 0;
+        for (int row = 0; row < rowCount; row++) {
+            float score = VectorMath.dot(unitQuery, matrix, row * dimensions, dimensions);
+            if (score >= threshold) {
+                found = offer(found, topK, row, score, topRows, topScores);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    long heapBytes() {
+        return (long) matrix.length * Float.BYTES;
+    }
+}
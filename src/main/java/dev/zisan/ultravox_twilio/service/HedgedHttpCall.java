@@ -0,0 +1,308 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * An HTTP request run under a deadline, with an optional hedge.
+ * If the first attempt has not answered after the hedge delay (a percentile
+ * of recent successful latencies), or fails with a transport error or a
+ * retryable 5xx before then, an identical second attempt is sent and the
+ * first successful response wins. Other 4xx and 5xx responses are returned
+ * as they are, since a second request would fail the same way. The losing
+ * attempt is left to finish under the client's own timeouts, and if it
+ * succeeds it is handed to a callback, so the caller can undo what it
+ * created.
+ *
+ * Outcomes (primary, hedge, failed, deadline) are recorded in a latency
+ * timer named by the caller.
+ */
+@Slf4j
+public class HedgedHttpCall {
+
+    // Recent latencies kept for the hedge delay percentile
+    private static final int WINDOW = 128;
+
+    // Latency samples needed before the percentile replaces the initial delay
+    private static final int MIN_SAMPLES = 16;
+
+    private final OkHttpClient client;
+    private final ScheduledExecutorService scheduler;
+    private final boolean hedgeEnabled;
+    private final double percentile;
+    private final Duration initialHedgeDelay;
+    private final Duration minHedgeDelay;
+
+    private final Timer primaryTimer;
+    private final Timer hedgeTimer;
+    private final Timer failedTimer;
+    private final Timer deadlineTimer;
+    private final Counter hedgesSent;
+
+    private final long[] latencies = new long[WINDOW];
+    private int latencyCount;
+    private int latencyNext;
+
+    /**
+     * Response of the winning attempt.
+     *
+     * @param hedged Whether the response came from the hedge
+     */
+    public record Result(int code, String body, boolean hedged, long latencyNanos) {
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+    }
+
+    /**
+     * @param metricName        Name of the latency timer, tagged by outcome
+     * @param percentile        Latency percentile used as the hedge delay, e.g. 0.95
+     * @param initialHedgeDelay Hedge delay until enough latencies are known
+     * @param minHedgeDelay     Lower bound for the hedge delay
+     */
+    public HedgedHttpCall(OkHttpClient client, ScheduledExecutorService scheduler, MeterRegistry meterRegistry,
+            String metricName, boolean hedgeEnabled, double percentile, Duration initialHedgeDelay,
+            Duration minHedgeDelay) {
+        this.client = client;
+        this.scheduler = scheduler;
+        this.hedgeEnabled = hedgeEnabled;
+        this.percentile = Math.min(1.0, Math.max(0.0, percentile));
+        this.initialHedgeDelay = initialHedgeDelay;
+        this.minHedgeDelay = minHedgeDelay;
+
+        this.primaryTimer = timer(meterRegistry, metricName, "primary");
+        this.hedgeTimer = timer(meterRegistry, metricName, "hedge");
+        this.failedTimer = timer(meterRegistry, metricName, "failed");
+        this.deadlineTimer = timer(meterRegistry, metricName, "deadline");
+        this.hedgesSent = Counter.builder(metricName + ".hedges")
+                .description("Hedged second requests sent")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run the request.
+     *
+     * @param deadline           Time allowed for a response, across all attempts
+     * @param discardedSuccesses Receives successful responses that lost the race,
+     *                           possibly after this method has returned
+     * @return The first successful response, or the last failed one if no
+     *         attempt succeeded
+     * @throws IOException               if every attempt failed without a response
+     * @throws DeadlineExceededException if no attempt finished in time
+     */
+    public Result execute(Request request, Duration deadline, Consumer<Result> discardedSuccesses) throws IOException {
+        Attempts attempts = new Attempts(request, discardedSuccesses);
+        long start = System.nanoTime();
+        attempts.launch(false);
+
+        Duration hedgeDelay = hedgeDelay();
+        if (hedgeEnabled && hedgeDelay.compareTo(deadline) < 0) {
+            attempts.scheduleHedge(hedgeDelay);
+        }
+
+        try {
+            Result result = attempts.winner.get(deadline.toNanos(), TimeUnit.NANOSECONDS);
+            (result.isSuccessful() ? (result.hedged() ? hedgeTimer : primaryTimer) : failedTimer)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (TimeoutException e) {
+            attempts.abandon();
+            deadlineTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw new DeadlineExceededException("No response from " + request.url().host() + " within "
+                    + deadline.toMillis() + " ms");
+        } catch (ExecutionException e) {
+            failedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            attempts.abandon();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for " + request.url().host(), e);
+        } finally {
+            attempts.stopHedging();
+        }
+    }
+
+    /**
+     * Current hedge delay: the configured percentile of recent successful
+     * latencies, or the initial delay while there are too few.
+     */
+    public synchronized Duration hedgeDelay() {
+        if (latencyCount < MIN_SAMPLES) {
+            return initialHedgeDelay;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * latencyCount) - 1;
+        Duration delay = Duration.ofNanos(sorted[Math.max(0, Math.min(latencyCount - 1, index))]);
+        return delay.compareTo(minHedgeDelay) < 0 ? minHedgeDelay : delay;
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[latencyNext] = nanos;
+        latencyNext = (latencyNext + 1) % WINDOW;
+        latencyCount = Math.min(WINDOW, latencyCount + 1);
+    }
+
+    /**
+     * The attempts of one execution. State changes are synchronized on this
+     * object; OkHttp callbacks and the hedge timer run on other threads.
+     */
+    private final class Attempts {
+        private final Request request;
+        private final Consumer<Result> discardedSuccesses;
+        private final long start = System.nanoTime();
+
+        private final CompletableFuture<Result> winner = new CompletableFuture<>();
+        private ScheduledFuture<?> hedgeSchedule;
+        private boolean hedgeLaunched;
+        private int launched;
+        private int finished;
+        private Result lastFailure;
+
+        private Attempts(Request request, Consumer<Result> discardedSuccesses) {
+            this.request = request;
+            this.discardedSuccesses = discardedSuccesses;
+        }
+
+        private synchronized void launch(boolean hedge) {
+            if (winner.isDone()) {
+                return;
+            }
+            if (hedge) {
+                hedgeLaunched = true;
+                hedgesSent.increment();
+            }
+            launched++;
+
+            // Not cancelled or cut off at the deadline: a call the server has
+            // already created must come back so it can be deleted
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (response) {
+                        String body = response.body() != null ? response.body().string() : "";
+                        completed(new Result(response.code(), body, hedge, System.nanoTime() - start), null);
+                    } catch (IOException e) {
+                        completed(null, e);
+                    }
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    completed(null, e);
+                }
+            });
+        }
+
+        private synchronized void scheduleHedge(Duration delay) {
+            hedgeSchedule = scheduler.schedule(() -> hedgeDue(delay), delay.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void hedgeDue(Duration delay) {
+            if (!hedgeLaunched) {
+                log.debug("No response from {} after {} ms, sending hedge", request.url().host(), delay.toMillis());
+                launch(true);
+            }
+        }
+
+        private synchronized void completed(Result result, IOException error) {
+            finished++;
+            if (result != null && result.isSuccessful()) {
+                if (winner.complete(result)) {
+                    recordLatency(result.latencyNanos());
+                } else {
+                    discardedSuccesses.accept(result);
+                }
+                return;
+            }
+            if (winner.isDone()) {
+                return;
+            }
+
+            if (result != null && !retryable(result.code())) {
+                // Bad key, bad config or rate limited: another request fails the same way
+                winner.complete(result);
+                return;
+            }
+            if (result != null) {
+                lastFailure = result;
+            }
+            // A failed first attempt is retried at once instead of waiting for the hedge delay
+            if (hedgeEnabled && !hedgeLaunched) {
+                if (hedgeSchedule != null) {
+                    hedgeSchedule.cancel(false);
+                }
+                launch(true);
+                return;
+            }
+            if (finished == launched) {
+                if (lastFailure != null) {
+                    winner.complete(lastFailure);
+                } else {
+                    winner.completeExceptionally(error);
+                }
+            }
+        }
+
+        /**
+         * Give up waiting. The winner is cancelled, so a success that
+         * arrives later goes to discardedSuccesses; one that arrived since
+         * the wait ended goes there too.
+         */
+        private synchronized void abandon() {
+            if (!winner.cancel(false) && !winner.isCompletedExceptionally()) {
+                Result late = winner.join();
+                if (late.isSuccessful()) {
+                    discardedSuccesses.accept(late);
+                }
+            }
+        }
+
+        /**
+         * Send no hedge once a winner is known or the deadline has passed.
+         * Attempts in flight keep running, and successes among them go to
+         * discardedSuccesses.
+         */
+        private synchronized void stopHedging() {
+            hedgeLaunched = true;
+            winner.cancel(false);
+            if (hedgeSchedule != null) {
+                hedgeSchedule.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Server errors that another request may not hit.
+     */
+    private static boolean retryable(int code) {
+        return code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String name, String outcome) {
+        return Timer.builder(name)
+                .tag("outcome", outcome)
+                .description("Latency of hedged requests by outcome")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,346 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.entity.IngestionJob;
+import dev.zisan.ultravox_twilio.repository.IngestionJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs textbook uploads and re-indexes as background jobs.
+ *
+ * Uploads are spooled to disk and queued; a small worker pool processes them
+ * so ingestion never competes with live calls for more than a bounded share
+ * of the embedding model. Cancelled or failed jobs roll back the chunks they
+ * stored. Jobs interrupted by a shutdown are resumed at startup, keeping the
+ * chunks already stored (see {@link DocumentProcessingService#indexTextbook}).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionJobService {
+
+    private static final List<IngestionJob.Status> PENDING =
+            List.of(IngestionJob.Status.QUEUED, IngestionJob.Status.RUNNING);
+
+    private final IngestionJobRepository jobRepository;
+    private final DocumentProcessingService documentProcessingService;
+
+    @Value("${ingestion.jobs.workers:1}")
+    private int workers;
+
+    @Value("${ingestion.jobs.max-pending:10}")
+    private int maxPending;
+
+    @Value("${ingestion.jobs.spool-dir:${java.io.tmpdir}/textbook-ingestion}")
+    private String spoolDir;
+
+    private ExecutorService executor;
+    private final Map<String, JobProgress> running = new ConcurrentHashMap<>();
+    private volatile boolean shuttingDown;
+
+    /**
+     * Job state as reported by the status endpoint. Live counters are only
+     * available while the job is running in this instance.
+     */
+    public record JobStatus(String jobId, IngestionJob.Type type, IngestionJob.Status status, String documentId,
+            String filename, Integer totalPages, Integer pagesProcessed, Integer chunksProduced,
+            Integer chunksStored, Double percentComplete, Double pagesPerSecond, Double chunksPerSecond,
+            Long etaSeconds, Integer totalChunks, Integer embeddedChunks, Integer reusedChunks,
+            Integer deletedChunks, Integer attempts, String errorMessage, LocalDateTime createdAt,
+            LocalDateTime startedAt, LocalDateTime finishedAt) {
+    }
+
+    /**
+     * Live progress of a running job.
+     */
+    private static final class JobProgress implements IngestionProgress {
+        final long startNanos = System.nanoTime();
+        final AtomicInteger totalPages = new AtomicInteger();
+        final AtomicInteger pagesChunked = new AtomicInteger();
+        final AtomicInteger chunksProduced = new AtomicInteger();
+        final AtomicInteger chunksStored = new AtomicInteger();
+        final Set<String> storedIds = ConcurrentHashMap.newKeySet();
+        volatile boolean cancelled;
+
+        @Override
+        public void started(int pages) {
+            totalPages.set(pages);
+        }
+
+        @Override
+        public void pagesChunked(int pages) {
+            pagesChunked.addAndGet(pages);
+        }
+
+        @Override
+        public void chunksProduced(int chunks) {
+            chunksProduced.addAndGet(chunks);
+        }
+
+        @Override
+        public void batchStored(List<Document> batch) {
+            chunksStored.addAndGet(batch.size());
+            batch.forEach(chunk -> storedIds.add(chunk.getId()));
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(Path.of(spoolDir));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Running jobs stay RUNNING in the database and are resumed on the next start
+        shuttingDown = true;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Requeue jobs that were queued or running when the application stopped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingJobs() {
+        for (IngestionJob job : jobRepository.findByStatusInOrderByCreatedAtAsc(PENDING)) {
+            if (job.getFilePath() == null || !Files.exists(Path.of(job.getFilePath()))) {
+                markFinished(job, IngestionJob.Status.FAILED, "Spooled PDF is missing, upload the textbook again");
+                continue;
+            }
+
+            log.info("Resuming ingestion job {} ({}, {})", job.getId(), job.getFilename(), job.getStatus());
+            job.setStatus(IngestionJob.Status.QUEUED);
+            jobRepository.save(job);
+            executor.submit(() -> run(job.getId()));
+        }
+    }
+
+    /**
+     * Spool the PDF and queue a job for it, unless the backlog limit is
+     * reached. The limit check and the insert happen under one lock, so
+     * concurrent uploads cannot both take the last place.
+     *
+     * @param file       The uploaded PDF
+     * @param type       Upload or re-index
+     * @param documentId For a re-index, the textbook to replace (null to match
+     *                   by filename); ignored for uploads
+     * @return The queued job, or empty if max-pending jobs are already
+     *         queued or running
+     */
+    public Optional<JobStatus> trySubmit(MultipartFile file, IngestionJob.Type type, String documentId)
+            throws IOException {
+        String jobId = UUID.randomUUID().toString();
+        Path spoolFile = Path.of(spoolDir, jobId + ".pdf");
+        file.transferTo(spoolFile);
+
+        IngestionJob job;
+        synchronized (this) {
+            if (jobRepository.countByStatusIn(PENDING) >= maxPending) {
+                Files.deleteIfExists(spoolFile);
+                return Optional.empty();
+            }
+            job = jobRepository.save(IngestionJob.builder()
+                    .id(jobId)
+                    .type(type)
+                    .status(IngestionJob.Status.QUEUED)
+                    .documentId(type == IngestionJob.Type.UPLOAD ? UUID.randomUUID().toString() : documentId)
+                    .filename(file.getOriginalFilename())
+                    .filePath(spoolFile.toString())
+                    .fileSizeBytes(file.getSize())
+                    .attempts(0)
+                    .build());
+        }
+
+        log.info("Queued ingestion job {} ({} {})", jobId, type, file.getOriginalFilename());
+        executor.submit(() -> run(jobId));
+        return Optional.of(toStatus(job));
+    }
+
+    public Optional<JobStatus> getStatus(String jobId) {
+        return jobRepository.findById(jobId).map(this::toStatus);
+    }
+
+    public List<JobStatus> listJobs() {
+        List<JobStatus> statuses = new ArrayList<>();
+        jobRepository.findAllByOrderByCreatedAtDesc().forEach(job -> statuses.add(toStatus(job)));
+        return statuses;
+    }
+
+    /**
+     * Cancel a job. A queued job is cancelled immediately; a running job stops
+     * at its next checkpoint and rolls back the chunks it stored.
+     *
+     * @return The job status after the request, or empty if the job is unknown
+     */
+    public Optional<JobStatus> cancel(String jobId) {
+        synchronized (this) {
+            Optional<IngestionJob> found = jobRepository.findById(jobId);
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+
+            IngestionJob job = found.get();
+            if (job.getStatus() == IngestionJob.Status.QUEUED) {
+                markFinished(job, IngestionJob.Status.CANCELLED, null);
+            } else if (job.getStatus() == IngestionJob.Status.RUNNING) {
+                JobProgress progress = running.get(jobId);
+                if (progress != null) {
+                    progress.cancelled = true;
+                    log.info("Cancellation requested for ingestion job {}", jobId);
+                }
+            }
+            return Optional.of(toStatus(job));
+        }
+    }
+
+    private void run(String jobId) {
+        IngestionJob job;
+        JobProgress progress = new JobProgress();
+
+        synchronized (this) {
+            job = jobRepository.findById(jobId).orElse(null);
+            if (job == null || job.getStatus() != IngestionJob.Status.QUEUED) {
+                // Cancelled while queued
+                return;
+            }
+            job.setStatus(IngestionJob.Status.RUNNING);
+            job.setStartedAt(LocalDateTime.now());
+            job.setAttempts(job.getAttempts() != null ? job.getAttempts() + 1 : 1);
+            job = jobRepository.save(job);
+            running.put(jobId, progress);
+        }
+
+        try {
+            byte[] pdf = Files.readAllBytes(Path.of(job.getFilePath()));
+            DocumentProcessingService.IndexResult result = job.getType() == IngestionJob.Type.UPLOAD
+                    ? documentProcessingService.indexTextbook(pdf, job.getFilename(), job.getDocumentId(), progress)
+                    : documentProcessingService.reindexTextbook(pdf, job.getFilename(), job.getDocumentId(),
+                            progress);
+
+            job.setDocumentId(result.documentId());
+            job.setTotalPages(progress.totalPages.get());
+            job.setTotalChunks(result.totalChunks());
+            job.setEmbeddedChunks(result.embeddedChunks());
+            job.setReusedChunks(result.reusedChunks());
+            job.setDeletedChunks(result.deletedChunks());
+            markFinished(job, IngestionJob.Status.COMPLETED, null);
+
+        } catch (CancellationException e) {
+            rollback(job, progress);
+            markFinished(job, IngestionJob.Status.CANCELLED, null);
+
+        } catch (Exception e) {
+            if (shuttingDown) {
+                log.info("Ingestion job {} interrupted by shutdown, it will resume on restart", jobId);
+                return;
+            }
+            log.error("Ingestion job {} failed", jobId, e);
+            rollback(job, progress);
+            markFinished(job, IngestionJob.Status.FAILED, e.getMessage());
+
+        } finally {
+            running.remove(jobId);
+        }
+    }
+
+    /**
+     * Remove what a cancelled or failed job stored, so no half-indexed
+     * textbook is left behind.
+     */
+    private void rollback(IngestionJob job, JobProgress progress) {
+        try {
+            if (job.getType() == IngestionJob.Type.UPLOAD) {
+                // Includes chunks stored by earlier attempts of this job
+                documentProcessingService.deleteTextbook(job.getDocumentId());
+            } else {
+                documentProcessingService.deleteChunks(job.getDocumentId(), List.copyOf(progress.storedIds));
+            }
+        } catch (Exception e) {
+            log.error("Failed to roll back ingestion job {}", job.getId(), e);
+        }
+    }
+
+    private void markFinished(IngestionJob job, IngestionJob.Status status, String errorMessage) {
+        job.setStatus(status);
+        job.setErrorMessage(errorMessage);
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepository.save(job);
+
+        try {
+            if (job.getFilePath() != null) {
+                Files.deleteIfExists(Path.of(job.getFilePath()));
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete spooled PDF {}: {}", job.getFilePath(), e.getMessage());
+        }
+        log.info("Ingestion job {} {}", job.getId(), status);
+    }
+
+    private JobStatus toStatus(IngestionJob job) {
+        JobProgress progress = running.get(job.getId());
+        if (progress == null) {
+            return new JobStatus(job.getId(), job.getType(), job.getStatus(), job.getDocumentId(), job.getFilename(),
+                    job.getTotalPages(), null, null, null,
+                    job.getStatus() == IngestionJob.Status.COMPLETED ? 100.0 : null, null, null, null,
+                    job.getTotalChunks(), job.getEmbeddedChunks(), job.getReusedChunks(), job.getDeletedChunks(),
+                    job.getAttempts(), job.getErrorMessage(), job.getCreatedAt(), job.getStartedAt(),
+                    job.getFinishedAt());
+        }
+
+        double seconds = Math.max((System.nanoTime() - progress.startNanos) / 1e9, 1e-3);
+        int totalPages = progress.totalPages.get();
+        int pages = progress.pagesChunked.get();
+        double pagesPerSecond = pages / seconds;
+
+        // Chunking is held back by the bounded write queue, so page progress tracks embedding progress
+        Double percent = null;
+        Long etaSeconds = null;
+        if (totalPages > 0) {
+            percent = 100.0 * pages / totalPages;
+            if (pagesPerSecond > 0) {
+                etaSeconds = Math.round((totalPages - pages) / pagesPerSecond);
+            }
+        }
+
+        return new JobStatus(job.getId(), job.getType(), job.getStatus(), job.getDocumentId(), job.getFilename(),
+                totalPages > 0 ? totalPages : null, pages, progress.chunksProduced.get(),
+                progress.chunksStored.get(), percent, pagesPerSecond, progress.chunksStored.get() / seconds,
+                etaSeconds, null, null, null, null, job.getAttempts(), null, job.getCreatedAt(),
+                job.getStartedAt(), null);
+    }
+}
@@ -0,0 +1,50 @@
+package dev.zisan.ultravox_twilio.service;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * Callbacks from a running ingestion, used by ingestion jobs to report
+ * progress and to request cancellation. Methods may be called from several
+ * pipeline threads at once.
+ */
+public interface IngestionProgress {
+
+    /**
+     * No-op progress for callers that do not track it.
+     */
+    IngestionProgress NONE = new IngestionProgress() {
+    };
+
+    /**
+     * Extraction started; totalPages is 0 when the page count is unknown.
+     */
+    default void started(int totalPages) {
+    }
+
+    /**
+     * More pages were extracted and chunked.
+     */
+    default void pagesChunked(int pages) {
+    }
+
+    /**
+     * More chunks were produced by the chunker (stored or reused).
+     */
+    default void chunksProduced(int chunks) {
+    }
+
+    /**
+     * A batch of chunks was embedded and written to the vector store.
+     */
+    default void batchStored(List<Document> batch) {
+    }
+
+    /**
+     * Whether the ingestion should stop at the next checkpoint.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
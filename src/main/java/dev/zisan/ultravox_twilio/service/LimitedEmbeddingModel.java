@@ -0,0 +1,57 @@
+package dev.zisan.ultravox_twilio.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+/**
+ * Passes embedding calls through the {@link LlmConcurrencyLimiter}.
+ * Document embeddings come from ingestion and use its bulkhead; text
+ * embeddings are question embeddings for live calls.
+ */
+public class LimitedEmbeddingModel extends DelegatingEmbeddingModel {
+
+    private final LlmConcurrencyLimiter limiter;
+
+    public LimitedEmbeddingModel(EmbeddingModel delegate, LlmConcurrencyLimiter limiter) {
+        super(delegate);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return limiter.call(LlmCaller.QUERY_EMBEDDING, () -> delegate.call(request));
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return limiter.call(LlmCaller.QUERY_EMBEDDING, () -> delegate.embed(text));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return limiter.call(LlmCaller.INGESTION_EMBEDDING, () -> delegate.embed(document));
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        return limiter.call(LlmCaller.QUERY_EMBEDDING, () -> delegate.embed(texts));
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options,
+            BatchingStrategy batchingStrategy) {
+        return limiter.call(LlmCaller.INGESTION_EMBEDDING,
+                () -> delegate.embed(documents, options, batchingStrategy));
+    }
+
+    @Override
+    public EmbeddingResponse embedForResponse(List<String> texts) {
+        return limiter.call(LlmCaller.QUERY_EMBEDDING, () -> delegate.embedForResponse(texts));
+    }
+}
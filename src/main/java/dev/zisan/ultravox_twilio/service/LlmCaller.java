@@ -0,0 +1,83 @@
+package dev.zisan.ultravox_twilio.service;
+
+/**
+ * Classes of callers of the local models. Each class has its own bulkhead,
+ * so background work and test traffic cannot take all of the model's
+ * capacity away from live calls, and a scheduling lane that decides who gets
+ * the next free model slot.
+ */
+public enum LlmCaller {
+
+    /** RAG answers for live voice calls. */
+    INTERACTIVE(Model.CHAT, Lane.LIVE, "interactive", 8, 2_000),
+
+    /** Post-call conversation summaries. */
+    SUMMARY(Model.CHAT, Lane.BACKGROUND, "summary", 1, 120_000),
+
+    /** Prefilling the tutor prompt prefix at startup, and the prefill benchmark. */
+    WARMUP(Model.CHAT, Lane.BACKGROUND, "warmup", 1, 60_000),
+
+    /** The /api/query test endpoints; rejected at once when busy. */
+    TEST(Model.CHAT, Lane.ADHOC, "test", 2, 0),
+
+    /** Question embeddings for retrieval and the answer cache. */
+    QUERY_EMBEDDING(Model.EMBEDDING, Lane.LIVE, "query-embedding", 16, 1_000),
+
+    /** Chunk embeddings during textbook ingestion. */
+    INGESTION_EMBEDDING(Model.EMBEDDING, Lane.BACKGROUND, "ingestion-embedding", 2, 600_000);
+
+    public enum Model {
+        CHAT, EMBEDDING
+    }
+
+    /**
+     * Scheduling lanes, highest priority first.
+     */
+    public enum Lane {
+        LIVE, ADHOC, BACKGROUND;
+
+        /**
+         * 0 for live traffic; larger numbers wait longer.
+         */
+        public int priority() {
+            return ordinal();
+        }
+    }
+
+    private final Model model;
+    private final Lane lane;
+    private final String propertyName;
+    private final int defaultMaxConcurrent;
+    private final long defaultMaxWaitMs;
+
+    LlmCaller(Model model, Lane lane, String propertyName, int defaultMaxConcurrent, long defaultMaxWaitMs) {
+        this.model = model;
+        this.lane = lane;
+        this.propertyName = propertyName;
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+        this.defaultMaxWaitMs = defaultMaxWaitMs;
+    }
+
+    public Model model() {
+        return model;
+    }
+
+    public Lane lane() {
+        return lane;
+    }
+
+    /**
+     * Name used in llm.bulkhead.&lt;name&gt;.* properties and metric tags.
+     */
+    public String propertyName() {
+        return propertyName;
+    }
+
+    public int defaultMaxConcurrent() {
+        return defaultMaxConcurrent;
+    }
+
+    public long defaultMaxWaitMs() {
+        return defaultMaxWaitMs;
+    }
+}
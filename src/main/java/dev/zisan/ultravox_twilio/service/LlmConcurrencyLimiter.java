@@ -0,0 +1,274 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency control for the local chat and embedding models.
+ * Every model call passes two gates: its caller class's bulkhead (a fixed
+ * number of slots, see {@link LlmCaller}) and the model's adaptive limit,
+ * which follows what the single Ollama instance can currently serve. A call
+ * that cannot get through both within its allowed wait is rejected with
+ * {@link LlmOverloadedException} instead of making every other call slower.
+ *
+ * A bulkhead with max-wait-ms=0 fails fast; otherwise calls queue up to that
+ * long, and never past the request's {@link Deadline}. Queued calls get model
+ * slots by their caller's {@link LlmCaller.Lane lane}: live calls first, with
+ * aging so background lanes still progress.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LlmConcurrencyLimiter {
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<LlmCaller.Model, AdaptiveConcurrencyLimit> limits = new EnumMap<>(LlmCaller.Model.class);
+    private final Map<LlmCaller, Bulkhead> bulkheads = new EnumMap<>(LlmCaller.class);
+
+    private static final class Bulkhead {
+        private final int maxConcurrent;
+        private final Duration maxWait;
+        private final Semaphore slots;
+        private final Counter rejectedByBulkhead;
+        private final Counter rejectedByLimit;
+        private final Timer waitTimer;
+
+        private Bulkhead(int maxConcurrent, Duration maxWait, Counter rejectedByBulkhead, Counter rejectedByLimit,
+                Timer waitTimer) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxWait = maxWait;
+            this.slots = new Semaphore(maxConcurrent, true);
+            this.rejectedByBulkhead = rejectedByBulkhead;
+            this.rejectedByLimit = rejectedByLimit;
+            this.waitTimer = waitTimer;
+        }
+    }
+
+    /**
+     * Both gates held by one call; released exactly once.
+     */
+    private final class Permit {
+        private final LlmCaller caller;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(LlmCaller caller) {
+            this.caller = caller;
+        }
+
+        private void release(long latencyNanos, boolean dropped) {
+            if (released.compareAndSet(false, true)) {
+                limits.get(caller.model()).release(caller.lane().priority(), caller.propertyName(),
+                        latencyNanos, dropped);
+                bulkheads.get(caller).slots.release();
+            }
+        }
+    }
+
+    public record LimitStatus(String model, int limit, int inFlight, int backgroundInFlight, int queued,
+            int minLimit, int maxLimit, Map<String, Long> usualLatencyMillis) {
+    }
+
+    public record BulkheadStatus(String caller, String model, String lane, int maxConcurrent, int inUse,
+            long maxWaitMs, double rejectedByBulkhead, double rejectedByLimit) {
+    }
+
+    public record Status(List<LimitStatus> limits, List<BulkheadStatus> bulkheads) {
+    }
+
+    @PostConstruct
+    public void init() {
+        Duration aging = Duration.ofMillis(environment.getProperty("llm.scheduler.aging-ms", Long.class, 5_000L));
+        int reservedLiveSlots = environment.getProperty("llm.scheduler.reserved-live-slots", Integer.class, 1);
+
+        for (LlmCaller.Model model : LlmCaller.Model.values()) {
+            String prefix = "llm.limiter." + model.name().toLowerCase() + ".";
+            boolean chat = model == LlmCaller.Model.CHAT;
+            AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                    environment.getProperty(prefix + "initial-limit", Integer.class, chat ? 2 : 4),
+                    environment.getProperty(prefix + "min-limit", Integer.class, 1),
+                    environment.getProperty(prefix + "max-limit", Integer.class, chat ? 8 : 16),
+                    environment.getProperty(prefix + "latency-tolerance", Double.class, 2.0),
+                    environment.getProperty(prefix + "backoff-ratio", Double.class, 0.9),
+                    aging, reservedLiveSlots);
+            limits.put(model, limit);
+
+            String tag = model.name().toLowerCase();
+            Gauge.builder("llm.limiter.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .tag("model", tag)
+                    .description("Current adaptive concurrency limit")
+                    .register(meterRegistry);
+            Gauge.builder("llm.limiter.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .tag("model", tag)
+                    .description("Model calls in progress")
+                    .register(meterRegistry);
+            Gauge.builder("llm.limiter.queued", limit, AdaptiveConcurrencyLimit::getQueued)
+                    .tag("model", tag)
+                    .description("Model calls waiting for a slot")
+                    .register(meterRegistry);
+            log.info("LLM limiter for {}: limit {} (min {}, max {})",
+                    tag, limit.getLimit(), limit.getMinLimit(), limit.getMaxLimit());
+        }
+
+        for (LlmCaller caller : LlmCaller.values()) {
+            String prefix = "llm.bulkhead." + caller.propertyName() + ".";
+            int maxConcurrent = environment.getProperty(prefix + "max-concurrent", Integer.class,
+                    caller.defaultMaxConcurrent());
+            long maxWaitMs = environment.getProperty(prefix + "max-wait-ms", Long.class, caller.defaultMaxWaitMs());
+
+            Bulkhead bulkhead = new Bulkhead(Math.max(1, maxConcurrent), Duration.ofMillis(Math.max(0, maxWaitMs)),
+                    rejectionCounter(caller, "bulkhead"), rejectionCounter(caller, "limit"),
+                    Timer.builder("llm.limiter.wait")
+                            .tag("caller", caller.propertyName())
+                            .description("Time model calls waited for a slot")
+                            .publishPercentileHistogram()
+                            .register(meterRegistry));
+            bulkheads.put(caller, bulkhead);
+
+            Gauge.builder("llm.bulkhead.in.use", bulkhead, b -> b.maxConcurrent - b.slots.availablePermits())
+                    .tag("caller", caller.propertyName())
+                    .description("Bulkhead slots in use")
+                    .register(meterRegistry);
+            log.info("LLM bulkhead {} ({} lane): {} concurrent, {}", caller.propertyName(),
+                    caller.lane().name().toLowerCase(), bulkhead.maxConcurrent,
+                    maxWaitMs > 0 ? "queue up to " + maxWaitMs + " ms" : "fail fast");
+        }
+    }
+
+    /**
+     * Run a blocking model call.
+     *
+     * @throws LlmOverloadedException if the call could not get a slot in time
+     */
+    public <T> T call(LlmCaller caller, Supplier<T> call) {
+        Permit permit = acquire(caller, Deadline.current().orElse(null));
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            permit.release(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Run a streaming model call. The slot is taken on subscription and held
+     * until the stream ends or is cancelled; the time to the first element is
+     * what feeds the adaptive limit.
+     *
+     * @return The stream, failing with {@link LlmOverloadedException} if it
+     *         could not get a slot in time
+     */
+    public <T> Flux<T> stream(LlmCaller caller, Supplier<Flux<T>> stream) {
+        // Captured here: the slot is awaited on another thread
+        Deadline deadline = Deadline.current().orElse(null);
+
+        return Mono.fromCallable(() -> acquire(caller, deadline))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(permit -> {
+                    long start = System.nanoTime();
+                    AtomicLong firstElementNanos = new AtomicLong();
+                    return Flux.defer(stream)
+                            .doOnNext(element -> firstElementNanos.compareAndSet(0, System.nanoTime()))
+                            .doFinally(signal -> {
+                                long first = firstElementNanos.get();
+                                boolean dropped = signal == SignalType.ON_ERROR
+                                        || (signal == SignalType.CANCEL && first == 0);
+                                permit.release((first != 0 ? first : System.nanoTime()) - start, dropped);
+                            });
+                });
+    }
+
+    /**
+     * Current limits and bulkhead usage.
+     */
+    public Status status() {
+        List<LimitStatus> limitStatus = limits.entrySet().stream()
+                .map(entry -> new LimitStatus(entry.getKey().name().toLowerCase(), entry.getValue().getLimit(),
+                        entry.getValue().getInFlight(), entry.getValue().getBackgroundInFlight(),
+                        entry.getValue().getQueued(), entry.getValue().getMinLimit(),
+                        entry.getValue().getMaxLimit(), entry.getValue().getBaselineMillis()))
+                .toList();
+        List<BulkheadStatus> bulkheadStatus = Arrays.stream(LlmCaller.values())
+                .map(caller -> {
+                    Bulkhead bulkhead = bulkheads.get(caller);
+                    return new BulkheadStatus(caller.propertyName(), caller.model().name().toLowerCase(),
+                            caller.lane().name().toLowerCase(), bulkhead.maxConcurrent, bulkhead.maxConcurrent - bulkhead.slots.availablePermits(),
+                            bulkhead.maxWait.toMillis(), bulkhead.rejectedByBulkhead.count(),
+                            bulkhead.rejectedByLimit.count());
+                })
+                .toList();
+        return new Status(limitStatus, bulkheadStatus);
+    }
+
+    private Permit acquire(LlmCaller caller, Deadline deadline) {
+        Bulkhead bulkhead = bulkheads.get(caller);
+        Duration maxWait = bulkhead.maxWait;
+        if (deadline != null && deadline.remaining().compareTo(maxWait) < 0) {
+            maxWait = deadline.remaining();
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!bulkhead.slots.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                bulkhead.rejectedByBulkhead.increment();
+                throw new LlmOverloadedException(caller, "all " + bulkhead.maxConcurrent + " bulkhead slots busy");
+            }
+
+            Duration left = maxWait.minusNanos(System.nanoTime() - start);
+            AdaptiveConcurrencyLimit limit = limits.get(caller.model());
+            boolean acquired;
+            try {
+                acquired = limit.acquire(caller.lane().priority(), left.isNegative() ? Duration.ZERO : left);
+            } catch (InterruptedException e) {
+                bulkhead.slots.release();
+                throw e;
+            }
+            if (!acquired) {
+                bulkhead.slots.release();
+                bulkhead.rejectedByLimit.increment();
+                throw new LlmOverloadedException(caller, caller.model().name().toLowerCase()
+                        + " model at its concurrency limit of " + limit.getLimit());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a model slot", e);
+        } finally {
+            bulkhead.waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return new Permit(caller);
+    }
+
+    private Counter rejectionCounter(LlmCaller caller, String reason) {
+        return Counter.builder("llm.limiter.rejections")
+                .tag("caller", caller.propertyName())
+                .tag("reason", reason)
+                .description("Model calls rejected because no slot was free in time")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,19 @@
+package dev.zisan.ultravox_twilio.service;
+
+/**
+ * Thrown when a model call is rejected because its caller's bulkhead or the
+ * model's concurrency limit has no room within the allowed wait.
+ */
+public class LlmOverloadedException extends RuntimeException {
+
+    private final LlmCaller caller;
+
+    public LlmOverloadedException(LlmCaller caller, String reason) {
+        super(caller.propertyName() + " call rejected: " + reason);
+        this.caller = caller;
+    }
+
+    public LlmCaller getCaller() {
+        return caller;
+    }
+}
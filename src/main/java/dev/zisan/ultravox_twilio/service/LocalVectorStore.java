@@ -0,0 +1,328 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.repository.VectorStoreChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory replica of the PGVector store for the read path.
+ * Embeddings are kept unit-length in one contiguous row-major float array and
+ * scored by brute force with {@link VectorMath} (JDK Vector API when
+ * available). A textbook is a few thousand 768-dim chunks, so a full scan is
+ * well under a millisecond and needs no JDBC round trip.
+ *
+ * With int8 or binary quantization the scan runs over compact codes and only
+ * a shortlist is rescored at full precision (see {@link QuantizedEmbeddingRows}).
+ *
+ * PGVector stays the source of truth: writes go there first and the replica
+ * then loads the stored rows (with the embeddings PGVector computed) back.
+ * Searches with a filter expression are delegated to PGVector.
+ */
+@Slf4j
+public class LocalVectorStore implements VectorStore {
+
+    private final VectorStore sourceOfTruth;
+    private final VectorStoreChunkRepository chunkRepository;
+    private final EmbeddingModel embeddingModel;
+    private final int dimensions;
+
+    private final EmbeddingRows embeddings;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private Document[] documents;
+    private int rows;
+
+    /**
+     * Memory use and layout of the replica.
+     */
+    public record IndexStats(String quantization, int chunks, int dimensions, long heapBytes, long offHeapBytes) {
+    }
+
+    /**
+     * Recall of the configured search path against exact full-precision search.
+     */
+    public record RecallReport(String quantization, int queries, int k, double recall,
+            double averageSearchMicros, double averageExactMicros) {
+    }
+
+    public LocalVectorStore(VectorStore sourceOfTruth, VectorStoreChunkRepository chunkRepository,
+            EmbeddingModel embeddingModel, int dimensions) {
+        this(sourceOfTruth, chunkRepository, embeddingModel, dimensions, EmbeddingRows.Mode.NONE, 1);
+    }
+
+    public LocalVectorStore(VectorStore sourceOfTruth, VectorStoreChunkRepository chunkRepository,
+            EmbeddingModel embeddingModel, int dimensions, EmbeddingRows.Mode quantization, int rescoreFactor) {
+        this.sourceOfTruth = sourceOfTruth;
+        this.chunkRepository = chunkRepository;
+        this.embeddingModel = embeddingModel;
+        this.dimensions = dimensions;
+        this.embeddings = EmbeddingRows.create(quantization, dimensions, rescoreFactor);
+        this.documents = new Document[1024];
+    }
+
+    /**
+     * Replace the replica contents with everything stored in PGVector.
+     */
+    public void loadAll() {
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            rowById.clear();
+            Arrays.fill(documents, 0, rows, null);
+            rows = 0;
+            chunkRepository.forEachWithEmbedding(chunk -> putUnlocked(chunk.document(), chunk.embedding()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        IndexStats stats = stats();
+        log.info("Local vector store loaded {} chunks ({} quantization, {} KB heap, {} KB off-heap) in {} ms",
+                stats.chunks(), stats.quantization(), stats.heapBytes() / 1024, stats.offHeapBytes() / 1024,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reload specific chunks from PGVector, e.g. after they were written.
+     */
+    public void refresh(Collection<String> ids) {
+        List<VectorStoreChunkRepository.StoredChunk> stored = chunkRepository.findWithEmbeddingByIds(ids);
+
+        lock.writeLock().lock();
+        try {
+            stored.forEach(chunk -> putUnlocked(chunk.document(), chunk.embedding()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove chunks from the replica only (PGVector is not touched).
+     */
+    public void remove(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::removeUnlocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        sourceOfTruth.add(documents);
+        refresh(documents.stream().map(Document::getId).toList());
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        sourceOfTruth.delete(idList);
+        remove(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        sourceOfTruth.delete(filterExpression);
+        // We cannot evaluate the filter locally, so resync from the source of truth
+        loadAll();
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (request.hasFilterExpression()) {
+            return sourceOfTruth.similaritySearch(request);
+        }
+
+        float[] query = VectorMath.normalize(embeddingModel.embed(request.getQuery()));
+        return search(query, request.getTopK(), request.getSimilarityThreshold());
+    }
+
+    /**
+     * Brute-force cosine search over the replica.
+     *
+     * @param unitQuery Unit-length query embedding
+     * @param topK      Maximum number of results
+     * @param threshold Minimum cosine similarity
+     * @return Matching chunks, best first, with score and distance set
+     */
+    public List<Document> search(float[] unitQuery, int topK, double threshold) {
+        if (unitQuery.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Query has " + unitQuery.length + " dimensions, index has " + dimensions);
+        }
+
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        int[] topRows = new int[topK];
+        float[] topScores = new float[topK];
+
+        lock.readLock().lock();
+        try {
+            int found = embeddings.search(unitQuery, rows, topK, threshold, topRows, topScores);
+
+            List<Document> results = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                Document document = documents[topRows[i]];
+                Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                metadata.put("distance", 1.0f - topScores[i]);
+                results.add(Document.builder()
+                        .id(document.getId())
+                        .text(document.getText())
+                        .metadata(metadata)
+                        .score((double) topScores[i])
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Measure recall@k of the configured search path against exact search.
+     * Stored chunks are used as queries (the query chunk itself is excluded
+     * from both result lists), spread evenly across the index.
+     *
+     * @param queries Number of sample queries
+     * @param k       Number of neighbours compared per query
+     */
+    public RecallReport measureRecall(int queries, int k) {
+        lock.readLock().lock();
+        try {
+            int samples = Math.min(queries, rows);
+            if (samples == 0 || k <= 0) {
+                return new RecallReport(embeddings.mode().name(), 0, k, 0, 0, 0);
+            }
+
+            int[] approxRows = new int[k + 1];
+            int[] exactRows = new int[k + 1];
+            float[] scores = new float[k + 1];
+            long searchNanos = 0;
+            long exactNanos = 0;
+            double recallSum = 0;
+
+            for (int i = 0; i < samples; i++) {
+                int queryRow = (int) ((long) i * rows / samples);
+                float[] query = embeddings.vector(queryRow);
+
+                long start = System.nanoTime();
+                int approxFound = embeddings.search(query, rows, k + 1, -1, approxRows, scores);
+                searchNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int exactFound = embeddings.exactSearch(query, rows, k + 1, -1, exactRows, scores);
+                exactNanos += System.nanoTime() - start;
+
+                Set<Integer> expected = new HashSet<>();
+                for (int j = 0; j < exactFound; j++) {
+                    if (exactRows[j] != queryRow && expected.size() < k) {
+                        expected.add(exactRows[j]);
+                    }
+                }
+                if (expected.isEmpty()) {
+                    recallSum += 1;
+                    continue;
+                }
+
+                int hits = 0;
+                int compared = 0;
+                for (int j = 0; j < approxFound && compared < k; j++) {
+                    if (approxRows[j] == queryRow) {
+                        continue;
+                    }
+                    compared++;
+                    if (expected.contains(approxRows[j])) {
+                        hits++;
+                    }
+                }
+                recallSum += (double) hits / expected.size();
+            }
+
+            return new RecallReport(embeddings.mode().name(), samples, k, recallSum / samples,
+                    searchNanos / 1000.0 / samples, exactNanos / 1000.0 / samples);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public IndexStats stats() {
+        lock.readLock().lock();
+        try {
+            return new IndexStats(embeddings.mode().name(), rows, dimensions,
+                    embeddings.heapBytes(), embeddings.offHeapBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "LocalVectorStore";
+    }
+
+    private void putUnlocked(Document document, float[] embedding) {
+        if (embedding.length != dimensions) {
+            log.warn("Skipping chunk {} with {} dimensions (expected {})",
+                    document.getId(), embedding.length, dimensions);
+            return;
+        }
+
+        Integer existing = rowById.get(document.getId());
+        int row = existing != null ? existing : rows++;
+        if (row >= documents.length) {
+            documents = Arrays.copyOf(documents, documents.length * 2);
+        }
+        embeddings.ensureCapacity(row + 1);
+
+        embeddings.set(row, VectorMath.normalize(embedding));
+        documents[row] = document;
+        rowById.put(document.getId(), row);
+    }
+
+    /**
+     * Remove a row by moving the last row into its place, keeping the matrix
+     * dense.
+     */
+    private void removeUnlocked(String id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return;
+        }
+
+        int last = rows - 1;
+        if (row != last) {
+            embeddings.move(last, row);
+            documents[row] = documents[last];
+            rowById.put(documents[row].getId(), row);
+        }
+        documents[last] = null;
+        rows--;
+    }
+}
@@ -0,0 +1,117 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.event.TextbookChunksDeletedEvent;
+import dev.zisan.ultravox_twilio.event.TextbookChunksStoredEvent;
+import dev.zisan.ultravox_twilio.repository.VectorStoreChunkRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the vector store used for RAG reads.
+ * With rag.vector-store.read=local, reads are served by an in-memory
+ * {@link LocalVectorStore} loaded from PGVector at startup; until the load
+ * finishes (or if it fails) reads fall back to PGVector.
+ *
+ * The replica is intentionally not a VectorStore bean, so PGVector remains
+ * the only store injected for writes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LocalVectorStoreReplica {
+
+    private final VectorStore vectorStore;
+    private final VectorStoreChunkRepository chunkRepository;
+    private final EmbeddingModel embeddingModel;
+
+    @Value("${rag.vector-store.read:pgvector}")
+    private String readMode;
+
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:768}")
+    private int dimensions;
+
+    @Value("${rag.local-index.quantization:none}")
+    private String quantization;
+
+    @Value("${rag.local-index.rescore-factor:8}")
+    private int rescoreFactor;
+
+    @Value("${rag.local-index.recall-samples:50}")
+    private int recallSamples;
+
+    private LocalVectorStore localStore;
+    private volatile boolean loaded;
+
+    @PostConstruct
+    public void init() {
+        if ("local".equalsIgnoreCase(readMode)) {
+            EmbeddingRows.Mode mode = EmbeddingRows.Mode.valueOf(quantization.toUpperCase());
+            localStore = new LocalVectorStore(vectorStore, chunkRepository, embeddingModel, dimensions,
+                    mode, rescoreFactor);
+        }
+        log.info("RAG vector store reads served by: {}",
+                localStore != null ? "local replica (" + quantization + " quantization)" : "PGVector");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (localStore == null) {
+            return;
+        }
+        try {
+            if (chunkRepository.tableExists()) {
+                localStore.loadAll();
+                if (!"none".equalsIgnoreCase(quantization)) {
+                    log.info("Quantized index recall: {}", localStore.measureRecall(recallSamples, 5));
+                }
+            }
+            loaded = true;
+        } catch (Exception e) {
+            log.error("Failed to load local vector store, reads stay on PGVector", e);
+        }
+    }
+
+    /**
+     * Pick up chunks written to PGVector by ingestion.
+     */
+    @EventListener
+    public void onChunksStored(TextbookChunksStoredEvent event) {
+        if (localStore == null) {
+            return;
+        }
+        localStore.refresh(event.chunks().stream().map(Document::getId).toList());
+    }
+
+    /**
+     * Drop chunks deleted from PGVector by re-indexing.
+     */
+    @EventListener
+    public void onChunksDeleted(TextbookChunksDeletedEvent event) {
+        if (localStore == null) {
+            return;
+        }
+        localStore.remove(event.chunkIds());
+    }
+
+    /**
+     * The store RAG retrieval should search.
+     */
+    public VectorStore readStore() {
+        return localStore != null && loaded ? localStore : vectorStore;
+    }
+
+    /**
+     * The local replica, or null when reads go to PGVector.
+     */
+    public LocalVectorStore localStore() {
+        return localStore;
+    }
+}
@@ -0,0 +1,162 @@
+package dev.zisan.ultravox_twilio.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the tutor system prompt prefilled in Ollama.
+ * Ollama reuses the evaluated state (KV cache) of the longest prefix a new
+ * prompt shares with the previous one, as long as the model stays loaded and
+ * the prompt fits in the context window. RAG prompts put the static persona
+ * first and the retrieved context and question last, so after one warm-up
+ * call only the per-question tail has to be prefilled.
+ *
+ * Also measures what that saves: prefill time and time to first token with a
+ * cold prefix (a unique marker in front of the system prompt defeats the
+ * cache) against a warm one. The probes run on the background WARMUP lane,
+ * which waits for a slot instead of failing when the model is busy, so a
+ * benchmark is never cut short between its cold and warm probes; the wait
+ * itself is not counted.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PromptPrefixWarmer {
+
+    private final ChatClient.Builder chatClientBuilder;
+    private final LlmConcurrencyLimiter concurrencyLimiter;
+    private final PromptRegistry promptRegistry;
+
+    @Value("${rag.prompt-prefix.warm-on-startup:true}")
+    private boolean warmOnStartup;
+
+    // Smallest user turn that still produces a valid chat prompt
+    private static final String PROBE_QUESTION = "Hello";
+
+    /**
+     * Prefill measurements averaged over the benchmark runs.
+     *
+     * @param promptTokens   Tokens Ollama evaluated for a cold prompt
+     * @param warmTokens     Tokens Ollama evaluated for a warm prompt (only the
+     *                       uncached tail, on Ollama versions that report it)
+     */
+    public record PrefillBenchmark(int runs, long promptTokens, long warmTokens, long coldPrefillMs,
+            long warmPrefillMs, long coldFirstTokenMs, long warmFirstTokenMs) {
+    }
+
+    private record Probe(long promptTokens, long prefillMs, long firstTokenMs) {
+    }
+
+    /**
+     * Load the chat model and prefill the system prompt before the first call
+     * arrives. Runs on its own thread: ready listeners run one after another,
+     * and the index and replica loads must not wait for Ollama.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmInBackground() {
+        if (!warmOnStartup) {
+            return;
+        }
+        Thread thread = new Thread(this::warm, "prompt-prefix-warmer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warm() {
+        try {
+            Probe probe = probe(LlmCaller.WARMUP, tutorPrompt());
+            log.info("Tutor prompt prefix warmed: {} tokens prefilled in {} ms",
+                    probe.promptTokens(), probe.prefillMs());
+        } catch (Exception e) {
+            log.warn("Could not warm the tutor prompt prefix, first answer pays full prefill: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Measure prefill of the tutor prompt with and without prefix reuse.
+     *
+     * @param runs Number of cold and warm probes to average
+     */
+    public PrefillBenchmark benchmark(int runs) {
+        int count = Math.max(1, runs);
+        String tutorPrompt = tutorPrompt();
+        long coldTokens = 0, warmTokens = 0, coldPrefill = 0, warmPrefill = 0, coldFirst = 0, warmFirst = 0;
+
+        for (int i = 0; i < count; i++) {
+            Probe cold = probe(LlmCaller.WARMUP, "[" + UUID.randomUUID() + "]\n" + tutorPrompt);
+            coldTokens += cold.promptTokens();
+            coldPrefill += cold.prefillMs();
+            coldFirst += cold.firstTokenMs();
+
+            // Put the plain prefix back in the cache, then measure a call that reuses it
+            probe(LlmCaller.WARMUP, tutorPrompt);
+            Probe warm = probe(LlmCaller.WARMUP, tutorPrompt);
+            warmTokens += warm.promptTokens();
+            warmPrefill += warm.prefillMs();
+            warmFirst += warm.firstTokenMs();
+        }
+
+        PrefillBenchmark result = new PrefillBenchmark(count, coldTokens / count, warmTokens / count,
+                coldPrefill / count, warmPrefill / count, coldFirst / count, warmFirst / count);
+        log.info("Prefill benchmark: {}", result);
+        return result;
+    }
+
+    /**
+     * The system prompt RAG answers currently use, without counting it as a
+     * rendered prompt.
+     */
+    private String tutorPrompt() {
+        return promptRegistry.active(PromptRegistry.Use.RAG_ANSWER, PromptRegistry.TUTOR).render(Map.of());
+    }
+
+    /**
+     * Send the system prompt with a minimal question and generate one token,
+     * so the call time is the time to first token.
+     */
+    private Probe probe(LlmCaller caller, String systemPrompt) {
+        ChatClient chatClient = chatClientBuilder.clone().build();
+
+        // Timed inside the limiter, so waiting for a slot does not count as prefill
+        long[] elapsedNanos = new long[1];
+        ChatResponse response = concurrencyLimiter.call(caller, () -> {
+            long start = System.nanoTime();
+            try {
+                return chatClient
+                        .prompt()
+                        .system(systemPrompt)
+                        .user(PROBE_QUESTION)
+                        .options(ChatOptions.builder().maxTokens(1).build())
+                        .call()
+                        .chatResponse();
+            } finally {
+                elapsedNanos[0] = System.nanoTime() - start;
+            }
+        });
+        long firstTokenMs = Duration.ofNanos(elapsedNanos[0]).toMillis();
+
+        ChatResponseMetadata metadata = response != null ? response.getMetadata() : null;
+        long promptTokens = metadata != null && metadata.getUsage() != null && metadata.getUsage().getPromptTokens() != null
+                ? metadata.getUsage().getPromptTokens()
+                : 0;
+        // Ollama reports prefill time as prompt_eval_duration; fall back to the call time without it
+        Object prefill = metadata != null ? metadata.get("prompt-eval-duration") : null;
+        long prefillMs = prefill instanceof Duration duration ? duration.toMillis()
+                : prefill instanceof Number nanos ? Duration.ofNanos(nanos.longValue()).toMillis()
+                : firstTokenMs;
+
+        return new Probe(promptTokens, prefillMs, firstTokenMs);
+    }
+}
@@ -0,0 +1,215 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Named, versioned prompt templates loaded once from
+ * classpath:prompts/&lt;name&gt;/v&lt;version&gt;[-compact].txt.
+ * Each template is compiled into segments at startup (see
+ * {@link PromptTemplate}), and a sample of renders records its estimated
+ * token count in prompt.tokens, so the prompt cost of each path is visible
+ * without running the tokenizer over every render.
+ *
+ * The version of each prompt is prompts.&lt;name&gt;.version (default: the
+ * newest). Which variant a path uses is chosen per {@link Use}, from
+ * prompts.&lt;use&gt;.variant and switchable at runtime through
+ * /actuator/prompts; a prompt without a compact file falls back to its full
+ * text.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PromptRegistry {
+
+    /** Tutor persona, the system prompt of the voice agent and of RAG answers. */
+    public static final String TUTOR = "tutor";
+
+    /** RAG user turn: {{context}} then {{question}}. */
+    public static final String RAG_USER = "rag-user";
+
+    /** Post-call summary over {{transcript}}. */
+    public static final String SUMMARY = "summary";
+
+    // One render in this many has its placeholder values tokenized for prompt.tokens
+    private static final int TOKEN_SAMPLE_RATE = 16;
+
+    private static final Pattern FILE_NAME = Pattern.compile("v(\\d+)(-compact)?\\.txt");
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    private final TokenCountEstimator tokenEstimator = new JTokkitTokenCountEstimator();
+
+    // name -> variant -> template of the active version
+    private final Map<String, Map<PromptTemplate.Variant, PromptTemplate>> templates = new HashMap<>();
+    private final Map<Use, PromptTemplate.Variant> variants = new ConcurrentHashMap<>();
+
+    /**
+     * The paths that render prompts; each can run the full or compact variant.
+     */
+    public enum Use {
+        VOICE_AGENT("voice-agent"),
+        RAG_ANSWER("rag-answer"),
+        SUMMARY("summary");
+
+        private final String propertyName;
+
+        Use(String propertyName) {
+            this.propertyName = propertyName;
+        }
+
+        public String propertyName() {
+            return propertyName;
+        }
+    }
+
+    public record TemplateStatus(String name, int version, String variant, List<String> variables,
+            int literalTokens) {
+    }
+
+    public record Status(Map<String, String> variants, List<TemplateStatus> templates) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        // name -> version -> variant -> text
+        Map<String, TreeMap<Integer, Map<PromptTemplate.Variant, String>>> found = new HashMap<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath*:prompts/*/v*.txt")) {
+            String[] path = resource.getURL().getPath().split("/");
+            if (path.length < 2) {
+                continue;
+            }
+            Matcher matcher = FILE_NAME.matcher(path[path.length - 1]);
+            if (!matcher.matches()) {
+                continue;
+            }
+            PromptTemplate.Variant variant = matcher.group(2) != null
+                    ? PromptTemplate.Variant.COMPACT
+                    : PromptTemplate.Variant.FULL;
+            found.computeIfAbsent(path[path.length - 2], name -> new TreeMap<>())
+                    .computeIfAbsent(Integer.parseInt(matcher.group(1)), version -> new EnumMap<>(PromptTemplate.Variant.class))
+                    .put(variant, resource.getContentAsString(StandardCharsets.UTF_8));
+        }
+
+        found.forEach((name, versions) -> {
+            Integer configured = environment.getProperty("prompts." + name + ".version", Integer.class);
+            int version = configured != null ? configured : versions.lastKey();
+            Map<PromptTemplate.Variant, String> texts = versions.get(version);
+            if (texts == null || !texts.containsKey(PromptTemplate.Variant.FULL)) {
+                throw new IllegalStateException("Prompt " + name + " has no full text for version " + version);
+            }
+
+            Map<PromptTemplate.Variant, PromptTemplate> compiled = new EnumMap<>(PromptTemplate.Variant.class);
+            texts.forEach((variant, text) -> compiled.put(variant,
+                    PromptTemplate.compile(name, version, variant, text, this::estimate)));
+            templates.put(name, compiled);
+
+            log.info("Prompt {} v{}: {}", name, version, compiled.values().stream()
+                    .map(t -> t.getVariant().name().toLowerCase() + " " + t.getLiteralTokens() + " tokens")
+                    .toList());
+        });
+
+        for (Use use : Use.values()) {
+            String variant = environment.getProperty("prompts." + use.propertyName() + ".variant", "full");
+            variants.put(use, PromptTemplate.Variant.valueOf(variant.trim().toUpperCase()));
+        }
+        log.info("Prompt variants: {}", variants);
+    }
+
+    /**
+     * Render a prompt for a path, recording the estimated token count of a
+     * sample of renders.
+     *
+     * @param values Placeholder values; may be empty for prompts without
+     *               placeholders
+     */
+    public String render(Use use, String name, Map<String, String> values) {
+        PromptTemplate template = active(use, name);
+        String text = template.render(values);
+        if (ThreadLocalRandom.current().nextInt(TOKEN_SAMPLE_RATE) != 0) {
+            return text;
+        }
+
+        int tokens = template.getLiteralTokens();
+        for (String variable : template.getVariables()) {
+            tokens += estimate(values.get(variable));
+        }
+        meterRegistry.summary("prompt.tokens",
+                "prompt", name,
+                "use", use.propertyName(),
+                "variant", template.getVariant().name().toLowerCase())
+                .record(tokens);
+        return text;
+    }
+
+    /**
+     * Render a prompt without placeholders for a path.
+     */
+    public String render(Use use, String name) {
+        return render(use, name, Map.of());
+    }
+
+    /**
+     * The template a path currently uses for a prompt.
+     *
+     * @throws IllegalArgumentException if there is no such prompt
+     */
+    public PromptTemplate active(Use use, String name) {
+        Map<PromptTemplate.Variant, PromptTemplate> byVariant = templates.get(name);
+        if (byVariant == null) {
+            throw new IllegalArgumentException("Unknown prompt: " + name);
+        }
+        PromptTemplate template = byVariant.get(variants.get(use));
+        return template != null ? template : byVariant.get(PromptTemplate.Variant.FULL);
+    }
+
+    /**
+     * Switch the variant a path uses from its next render on.
+     */
+    public void setVariant(Use use, PromptTemplate.Variant variant) {
+        PromptTemplate.Variant previous = variants.put(use, variant);
+        if (previous != variant) {
+            log.info("Prompt variant for {} switched from {} to {}", use.propertyName(), previous, variant);
+        }
+    }
+
+    /**
+     * Active variants and the compiled templates.
+     */
+    public Status status() {
+        Map<String, String> activeVariants = new TreeMap<>();
+        variants.forEach((use, variant) -> activeVariants.put(use.propertyName(), variant.name().toLowerCase()));
+
+        List<TemplateStatus> templateStatus = new ArrayList<>();
+        templates.values().forEach(byVariant -> byVariant.values().forEach(t -> templateStatus.add(new TemplateStatus(
+                t.getName(), t.getVersion(), t.getVariant().name().toLowerCase(), t.getVariables(),
+                t.getLiteralTokens()))));
+        return new Status(activeVariants, templateStatus);
+    }
+
+    private int estimate(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenEstimator.estimate(text);
+    }
+}
@@ -0,0 +1,132 @@
+package dev.zisan.ultravox_twilio.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * A prompt template compiled once into alternating literal and variable
+ * segments. Placeholders are written {{name}}. Rendering appends the segments
+ * into a single presized builder, and a template without placeholders is
+ * returned as its stored text.
+ */
+public final class PromptTemplate {
+
+    public enum Variant {
+        FULL, COMPACT
+    }
+
+    private final String name;
+    private final int version;
+    private final Variant variant;
+
+    // literals.length == variables.length + 1; the text is literals[0] variables[0] literals[1] ...
+    private final String[] literals;
+    private final String[] variables;
+    private final int literalChars;
+    private final int literalTokens;
+
+    private PromptTemplate(String name, int version, Variant variant, String[] literals, String[] variables,
+            int literalTokens) {
+        this.name = name;
+        this.version = version;
+        this.variant = variant;
+        this.literals = literals;
+        this.variables = variables;
+        this.literalTokens = literalTokens;
+        int chars = 0;
+        for (String literal : literals) {
+            chars += literal.length();
+        }
+        this.literalChars = chars;
+    }
+
+    /**
+     * Split template text into segments.
+     *
+     * @param literalTokens Estimated tokens of the text without its
+     *                      placeholders, computed once by the caller
+     * @throws IllegalArgumentException if a placeholder is not closed
+     */
+    static PromptTemplate compile(String name, int version, Variant variant, String text,
+            ToIntFunction<String> literalTokens) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        StringBuilder allLiterals = new StringBuilder();
+
+        int position = 0;
+        while (true) {
+            int open = text.indexOf("{{", position);
+            if (open < 0) {
+                break;
+            }
+            int close = text.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder in prompt " + name + " v" + version
+                        + " at offset " + open);
+            }
+            literals.add(text.substring(position, open));
+            variables.add(text.substring(open + 2, close).trim());
+            allLiterals.append(text, position, open);
+            position = close + 2;
+        }
+        literals.add(text.substring(position));
+        allLiterals.append(text, position, text.length());
+
+        return new PromptTemplate(name, version, variant, literals.toArray(String[]::new),
+                variables.toArray(String[]::new), literalTokens.applyAsInt(allLiterals.toString()));
+    }
+
+    /**
+     * Render the template.
+     *
+     * @throws IllegalArgumentException if a placeholder has no value
+     */
+    public String render(Map<String, String> values) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+
+        int capacity = literalChars;
+        for (String variable : variables) {
+            capacity += valueOf(variable, values).length();
+        }
+        StringBuilder text = new StringBuilder(capacity);
+        for (int i = 0; i < variables.length; i++) {
+            text.append(literals[i]).append(valueOf(variables[i], values));
+        }
+        return text.append(literals[variables.length]).toString();
+    }
+
+    private String valueOf(String variable, Map<String, String> values) {
+        String value = values.get(variable);
+        if (value == null) {
+            throw new IllegalArgumentException("No value for {{" + variable + "}} in prompt " + name);
+        }
+        return value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Variant getVariant() {
+        return variant;
+    }
+
+    public List<String> getVariables() {
+        return List.of(variables);
+    }
+
+    /**
+     * Estimated tokens of the template text itself.
+     */
+    public int getLiteralTokens() {
+        return literalTokens;
+    }
+}
@@ -0,0 +1,188 @@
+package dev.zisan.ultravox_twilio.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Quantized rows for a compact candidate scan, with full-precision vectors
+ * kept off heap for rescoring.
+ *
+ * INT8 stores one signed byte per dimension and a float scale per row
+ * (4x smaller than floats); BINARY stores the sign of each dimension as one
+ * bit (32x smaller) and ranks by Hamming distance. A search scans the codes,
+ * keeps topK * rescoreFactor candidates and rescores only those against the
+ * off-heap floats, so heap use and scan cost stay small as more textbooks are
+ * added.
+ */
+class QuantizedEmbeddingRows extends EmbeddingRows {
+
+    private final Mode mode;
+    private final int rescoreFactor;
+    private final int wordsPerRow;
+
+    private int capacity;
+    private byte[] int8Codes;
+    private float[] int8Scales;
+    private long[] binaryCodes;
+    private FloatBuffer fullPrecision;
+
+    QuantizedEmbeddingRows(Mode mode, int dimensions, int rescoreFactor) {
+        super(dimensions);
+        this.mode = mode;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+        this.wordsPerRow = (dimensions + 63) / 64;
+        allocate(1024);
+    }
+
+    @Override
+    Mode mode() {
+        return mode;
+    }
+
+    @Override
+    void ensureCapacity(int rows) {
+        if (rows > capacity) {
+            allocate(Math.max(rows, capacity * 2));
+        }
+    }
+
+    @Override
+    void set(int row, float[] unitVector) {
+        fullPrecision.put(row * dimensions, unitVector, 0, dimensions);
+
+        if (mode == Mode.INT8) {
+            float maxAbs = 0f;
+            for (float v : unitVector) {
+                maxAbs = Math.max(maxAbs, Math.abs(v));
+            }
+            float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+            int base = row * dimensions;
+            for (int i = 0; i < dimensions; i++) {
+                int8Codes[base + i] = (byte) Math.round(unitVector[i] / scale);
+            }
+            int8Scales[row] = scale;
+        } else {
+            int base = row * wordsPerRow;
+            Arrays.fill(binaryCodes, base, base + wordsPerRow, 0L);
+            for (int i = 0; i < dimensions; i++) {
+                if (unitVector[i] > 0) {
+                    binaryCodes[base + (i >>> 6)] |= 1L << (i & 63);
+                }
+            }
+        }
+    }
+
+    @Override
+    void move(int from, int to) {
+        set(to, vector(from));
+    }
+
+    @Override
+    float[] vector(int row) {
+        float[] vector = new float[dimensions];
+        fullPrecision.get(row * dimensions, vector, 0, dimensions);
+        return vector;
+    }
+
+    @Override
+    int search(float[] unitQuery, int rowCount, int topK, double threshold, int[] topRows, float[] topScores) {
+        int shortlistSize = Math.min(rowCount, topK * rescoreFactor);
+        if (shortlistSize == 0) {
+            return 0;
+        }
+
+        // Candidate scan over the compact codes
+        int[] candidates = new int[shortlistSize];
+        float[] approximateScores = new float[shortlistSize];
+        int shortlisted = mode == Mode.INT8
+                ? scanInt8(unitQuery, rowCount, candidates, approximateScores)
+                : scanBinary(unitQuery, rowCount, candidates, approximateScores);
+
+        // Rescore the shortlist with full precision
+        float[] row = new float[dimensions];
+        int found = 0;
+        for (int i = 0; i < shortlisted; i++) {
+            fullPrecision.get(candidates[i] * dimensions, row, 0, dimensions);
+            float score = VectorMath.dot(unitQuery, row, 0, dimensions);
+            if (score >= threshold) {
+                found = offer(found, topK, candidates[i], score, topRows, topScores);
+            }
+        }
+        return found;
+    }
+
+    private int scanInt8(float[] unitQuery, int rowCount, int[] candidates, float[] scores) {
+        float maxAbs = 0f;
+        for (float v : unitQuery) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        float queryScale = maxAbs == 0f ? 1f : maxAbs / 127f;
+        byte[] query = new byte[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            query[i] = (byte) Math.round(unitQuery[i] / queryScale);
+        }
+
+        int found = 0;
+        for (int row = 0; row < rowCount; row++) {
+            int sum = VectorMath.dotInt8(query, int8Codes, row * dimensions, dimensions);
+            found = offer(found, candidates.length, row, sum * int8Scales[row] * queryScale, candidates, scores);
+        }
+        return found;
+    }
+
+    private int scanBinary(float[] unitQuery, int rowCount, int[] candidates, float[] scores) {
+        long[] query = new long[wordsPerRow];
+        for (int i = 0; i < dimensions; i++) {
+            if (unitQuery[i] > 0) {
+                query[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+
+        int found = 0;
+        for (int row = 0; row < rowCount; row++) {
+            int base = row * wordsPerRow;
+            int hamming = 0;
+            for (int w = 0; w < wordsPerRow; w++) {
+                hamming += Long.bitCount(query[w] ^ binaryCodes[base + w]);
+            }
+            // Fewer differing signs means a smaller angle; only the ranking matters here
+            found = offer(found, candidates.length, row, dimensions - 2f * hamming, candidates, scores);
+        }
+        return found;
+    }
+
+    @Override
+    long heapBytes() {
+        return mode == Mode.INT8
+                ? (long) int8Codes.length + (long) int8Scales.length * Float.BYTES
+                : (long) binaryCodes.length * Long.BYTES;
+    }
+
+    @Override
+    long offHeapBytes() {
+        return (long) fullPrecision.capacity() * Float.BYTES;
+    }
+
+    private void allocate(int newCapacity) {
+        FloatBuffer newFullPrecision = ByteBuffer
+                .allocateDirect(newCapacity * dimensions * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        if (fullPrecision != null) {
+            newFullPrecision.put(0, fullPrecision, 0, capacity * dimensions);
+        }
+        fullPrecision = newFullPrecision;
+
+        if (mode == Mode.INT8) {
+            int8Codes = int8Codes == null ? new byte[newCapacity * dimensions]
+                    : Arrays.copyOf(int8Codes, newCapacity * dimensions);
+            int8Scales = int8Scales == null ? new float[newCapacity] : Arrays.copyOf(int8Scales, newCapacity);
+        } else {
+            binaryCodes = binaryCodes == null ? new long[newCapacity * wordsPerRow]
+                    : Arrays.copyOf(binaryCodes, newCapacity * wordsPerRow);
+        }
+        capacity = newCapacity;
+    }
+}
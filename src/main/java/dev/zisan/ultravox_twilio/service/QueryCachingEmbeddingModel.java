@@ -0,0 +1,225 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.entity.EmbeddingCacheEntry;
+import dev.zisan.ultravox_twilio.repository.EmbeddingCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of question embeddings in front of the embedding model.
+ * Questions are keyed by their {@link QuestionNormalizer normalized} form, so
+ * "Umm, what is RAM?" and "what is ram please" share one entry. The first
+ * variant seen is the one embedded.
+ *
+ * The in-memory tier is a bounded LRU map. The optional persistent tier stores
+ * entries in the embedding_cache table, so repeat questions survive restarts;
+ * entries older than the TTL are ignored and purged hourly, so the table does
+ * not grow with every question ever asked.
+ *
+ * Callers get a copy of the cached array, so one that modifies its
+ * embedding (e.g. normalizing it in place) cannot corrupt the cache.
+ */
+@Slf4j
+public class QueryCachingEmbeddingModel extends DelegatingEmbeddingModel {
+
+    private final QuestionNormalizer normalizer;
+    private final EmbeddingCacheRepository cacheRepository;
+    private final String modelName;
+    private final int maxEntries;
+    private final boolean persistent;
+    private final Duration persistentTtl;
+    private final ScheduledExecutorService purger;
+
+    // Access-ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, float[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long evictions;
+
+    private final Counter memoryHitCounter;
+    private final Counter persistentHitCounter;
+    private final Counter missCounter;
+
+    /**
+     * @param cacheRepository Persistent tier, or null to keep the cache in memory only
+     * @param persistentTtl   How long a persisted entry is used
+     */
+    public QueryCachingEmbeddingModel(EmbeddingModel delegate, QuestionNormalizer normalizer,
+            EmbeddingCacheRepository cacheRepository, String modelName, int maxEntries, Duration persistentTtl,
+            MeterRegistry meterRegistry) {
+        super(delegate);
+        this.normalizer = normalizer;
+        this.cacheRepository = cacheRepository;
+        this.modelName = modelName;
+        this.maxEntries = maxEntries;
+        this.persistent = cacheRepository != null;
+        this.persistentTtl = persistentTtl;
+
+        this.memoryHitCounter = Counter.builder("embedding.query.cache.requests")
+                .tag("result", "hit")
+                .tag("tier", "memory")
+                .description("Query embeddings served from memory")
+                .register(meterRegistry);
+        this.persistentHitCounter = Counter.builder("embedding.query.cache.requests")
+                .tag("result", "hit")
+                .tag("tier", "persistent")
+                .description("Query embeddings served from the embedding_cache table")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("embedding.query.cache.requests")
+                .tag("result", "miss")
+                .tag("tier", "none")
+                .description("Query embeddings computed by the embedding model")
+                .register(meterRegistry);
+        Gauge.builder("embedding.query.cache.hit.ratio", this, QueryCachingEmbeddingModel::hitRatio)
+                .description("Share of query embeddings served from cache since startup")
+                .register(meterRegistry);
+        Gauge.builder("embedding.query.cache.size", this, QueryCachingEmbeddingModel::size)
+                .description("Query embeddings held in memory")
+                .register(meterRegistry);
+        FunctionCounter.builder("embedding.query.cache.evictions", this, QueryCachingEmbeddingModel::evictions)
+                .description("Query embeddings evicted from memory")
+                .register(meterRegistry);
+
+        if (persistent) {
+            purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "query-embedding-cache-purge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            purger.scheduleWithFixedDelay(this::purgeExpired, 1, 60, TimeUnit.MINUTES);
+        } else {
+            purger = null;
+        }
+
+        log.info("Query embedding cache: max entries {}, persistent: {}{}", maxEntries, persistent,
+                persistent ? " (TTL " + persistentTtl.toDays() + " days)" : "");
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String normalized = normalizer.normalize(text);
+        if (normalized.isEmpty()) {
+            // Nothing left to key on; embed as asked
+            missCounter.increment();
+            return delegate.embed(text);
+        }
+
+        float[] embedding;
+        synchronized (entries) {
+            embedding = entries.get(normalized);
+        }
+        if (embedding != null) {
+            memoryHitCounter.increment();
+            return embedding.clone();
+        }
+
+        String key = persistentKey(normalized);
+        embedding = loadPersisted(key).orElse(null);
+        if (embedding != null) {
+            persistentHitCounter.increment();
+        } else {
+            missCounter.increment();
+            embedding = delegate.embed(text);
+            persist(key, embedding);
+        }
+
+        put(normalized, embedding);
+        return embedding.clone();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private long evictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    private double hitRatio() {
+        double hits = memoryHitCounter.count() + persistentHitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private void put(String normalized, float[] embedding) {
+        synchronized (entries) {
+            entries.put(normalized, embedding);
+            var iterator = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private String persistentKey(String normalized) {
+        // Separate from chunk keys: the value is the embedding of a variant, not of the key text
+        return persistentKeyPrefix() + ContentHash.of(normalized);
+    }
+
+    private String persistentKeyPrefix() {
+        return modelName + ":query:";
+    }
+
+    private Optional<float[]> loadPersisted(String key) {
+        if (!persistent) {
+            return Optional.empty();
+        }
+        try {
+            LocalDateTime oldest = LocalDateTime.now().minus(persistentTtl);
+            return cacheRepository.findById(key)
+                    .filter(entry -> entry.getCreatedAt().isAfter(oldest))
+                    .map(entry -> CachingEmbeddingModel.fromBytes(entry.getEmbedding()));
+        } catch (Exception e) {
+            log.warn("Query embedding cache lookup failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void persist(String key, float[] embedding) {
+        if (!persistent) {
+            return;
+        }
+        try {
+            // save() merges an assigned id, so an expired row is updated in place and needs a fresh createdAt
+            cacheRepository.save(EmbeddingCacheEntry.builder()
+                    .cacheKey(key)
+                    .model(modelName)
+                    .dimensions(embedding.length)
+                    .embedding(CachingEmbeddingModel.toBytes(embedding))
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        } catch (Exception e) {
+            // Another call may have stored the same question concurrently
+            log.debug("Could not persist query embedding: {}", e.getMessage());
+        }
+    }
+
+    private void purgeExpired() {
+        try {
+            int deleted = cacheRepository.deleteByPrefixCreatedBefore(persistentKeyPrefix(),
+                    LocalDateTime.now().minus(persistentTtl));
+            if (deleted > 0) {
+                log.info("Removed {} persisted query embeddings older than {} days", deleted,
+                        persistentTtl.toDays());
+            }
+        } catch (Exception e) {
+            log.warn("Could not purge persisted query embeddings: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package dev.zisan.ultravox_twilio.service;
+
+/**
+ * Reduces a transcribed question to a canonical form, so that variants that
+ * differ only in ASR noise (case, punctuation, filler words) share one query
+ * embedding. To change the rules, edit {@link AsrQuestionNormalizer} or
+ * declare another implementation as a {@code @Primary} bean; a second plain
+ * bean would make the injection ambiguous.
+ */
+public interface QuestionNormalizer {
+
+    /**
+     * @param question The question as transcribed
+     * @return The canonical question text; never null, may be empty if the
+     *         question was only noise
+     */
+    String normalize(String question);
+}
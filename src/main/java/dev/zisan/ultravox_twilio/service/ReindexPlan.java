@@ -0,0 +1,86 @@
+package dev.zisan.ultravox_twilio.service;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which chunks of a re-uploaded textbook need embedding.
+ * Chunks produced by the new upload are matched against the stored chunks by
+ * content hash. A match keeps the stored row and its vector (only its
+ * position is updated); unmatched new chunks are embedded; stored chunks that
+ * were never matched have vanished from the book and are deleted.
+ *
+ * Used by a single ingestion thread; not thread-safe.
+ */
+public class ReindexPlan {
+
+    private final Map<String, Deque<String>> storedIdsByHash = new HashMap<>();
+    private final Set<String> unmatchedIds = new LinkedHashSet<>();
+    private final Map<String, Integer> keptPositions = new LinkedHashMap<>();
+
+    private ReindexPlan(List<Document> storedChunks) {
+        for (Document chunk : storedChunks) {
+            storedIdsByHash.computeIfAbsent(contentHash(chunk), hash -> new ArrayDeque<>()).add(chunk.getId());
+            unmatchedIds.add(chunk.getId());
+        }
+    }
+
+    /**
+     * A plan for re-indexing over the given stored chunks.
+     */
+    public static ReindexPlan over(List<Document> storedChunks) {
+        return new ReindexPlan(storedChunks);
+    }
+
+    /**
+     * Try to keep a stored chunk with the same content.
+     *
+     * @param contentHash Hash of the new chunk text
+     * @param chunkIndex  Position of the new chunk
+     * @return true if a stored chunk is kept at this position, false if the
+     *         chunk must be embedded and stored
+     */
+    public boolean reuse(String contentHash, int chunkIndex) {
+        Deque<String> ids = storedIdsByHash.get(contentHash);
+        if (ids == null || ids.isEmpty()) {
+            return false;
+        }
+        String id = ids.poll();
+        unmatchedIds.remove(id);
+        keptPositions.put(id, chunkIndex);
+        return true;
+    }
+
+    /**
+     * Stored chunks kept by this upload, with their new chunk_index.
+     */
+    public Map<String, Integer> keptPositions() {
+        return keptPositions;
+    }
+
+    /**
+     * Stored chunks whose content no longer appears in the upload.
+     */
+    public List<String> vanishedIds() {
+        return new ArrayList<>(unmatchedIds);
+    }
+
+    public int reusedCount() {
+        return keptPositions.size();
+    }
+
+    private static String contentHash(Document chunk) {
+        // Chunks indexed before content hashing was introduced have no hash yet
+        Object hash = chunk.getMetadata().get("content_hash");
+        return hash != null ? hash.toString() : ContentHash.of(chunk.getText());
+    }
+}
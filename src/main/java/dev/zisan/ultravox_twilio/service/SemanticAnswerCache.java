@@ -0,0 +1,240 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.event.TextbookIndexedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Semantic cache of generated RAG answers.
+ * Questions are embedded and compared by cosine similarity against previously
+ * answered questions, so near-identical questions ("what is RAM and ROM?",
+ * "what are RAM and ROM") are served without calling the chat model.
+ *
+ * Entries are bounded by count (least recently used are evicted first) and by
+ * age, and the whole cache is dropped whenever a textbook is (re)indexed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SemanticAnswerCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${rag.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rag.answer-cache.similarity-threshold:0.92}")
+    private double similarityThreshold;
+
+    @Value("${rag.answer-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${rag.answer-cache.ttl-minutes:360}")
+    private long ttlMinutes;
+
+    // Access-ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, CachedAnswer> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter evictionCounter;
+
+    /**
+     * A previously answered question with its unit-length embedding.
+     */
+    private record CachedAnswer(String question, float[] embedding, String answer, long createdAtMillis) {
+    }
+
+    /**
+     * Result of a cache lookup. The question embedding is kept so that a miss
+     * can be stored later without embedding the question a second time. On a
+     * miss, the closest cached answer below the threshold is kept as
+     * nearestAnswer for callers that would rather give an approximate answer
+     * than none.
+     */
+    public record Lookup(float[] embedding, String answer, double similarity, String nearestAnswer) {
+
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("rag.answer.cache.requests")
+                .tag("result", "hit")
+                .description("Semantic answer cache lookups served from cache")
+                .register(meterRegistry);
+        missCounter = Counter.builder("rag.answer.cache.requests")
+                .tag("result", "miss")
+                .description("Semantic answer cache lookups that fell through to the chat model")
+                .register(meterRegistry);
+        evictionCounter = Counter.builder("rag.answer.cache.evictions")
+                .description("Entries removed because of size or TTL limits")
+                .register(meterRegistry);
+        Gauge.builder("rag.answer.cache.size", this, SemanticAnswerCache::size)
+                .description("Number of cached answers")
+                .register(meterRegistry);
+
+        log.info("Semantic answer cache enabled: {}, threshold: {}, max entries: {}, TTL: {} min",
+                enabled, similarityThreshold, maxEntries, ttlMinutes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Look up a cached answer for a question.
+     *
+     * @param question The student's question
+     * @return The lookup result; {@link Lookup#isHit()} tells whether an answer
+     *         was found
+     */
+    public Lookup lookup(String question) {
+        return lookup(question, similarityThreshold);
+    }
+
+    /**
+     * Look up a cached answer using a custom similarity threshold.
+     */
+    public Lookup lookup(String question, double threshold) {
+        float[] embedding = normalize(embeddingModel.embed(question));
+
+        long now = System.currentTimeMillis();
+        CachedAnswer best = null;
+        double bestSimilarity = -1;
+
+        synchronized (entries) {
+            evictExpired(now);
+
+            for (CachedAnswer entry : entries.values()) {
+                double similarity = dot(embedding, entry.embedding());
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+
+            if (best != null && bestSimilarity >= threshold) {
+                // Touch the entry so it moves to the most recently used end
+                entries.get(best.question());
+            }
+        }
+
+        if (best == null || bestSimilarity < threshold) {
+            missCounter.increment();
+            return new Lookup(embedding, null, bestSimilarity, best != null ? best.answer() : null);
+        }
+
+        hitCounter.increment();
+        log.debug("Answer cache hit (similarity {}) for question '{}' -> cached question '{}'",
+                String.format("%.3f", bestSimilarity), question, best.question());
+        return new Lookup(embedding, best.answer(), bestSimilarity, best.answer());
+    }
+
+    /**
+     * Store a freshly generated answer.
+     *
+     * @param question The question that was answered
+     * @param lookup   The lookup performed for this question (supplies the
+     *                 embedding)
+     * @param answer   The generated answer
+     */
+    public void store(String question, Lookup lookup, String answer) {
+        if (answer == null || answer.isBlank() || lookup == null || lookup.embedding() == null) {
+            return;
+        }
+
+        synchronized (entries) {
+            entries.put(question, new CachedAnswer(question, lookup.embedding(), answer, System.currentTimeMillis()));
+
+            Iterator<CachedAnswer> iterator = entries.values().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictionCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * Drop all cached answers.
+     */
+    public void invalidateAll() {
+        int removed;
+        synchronized (entries) {
+            removed = entries.size();
+            entries.clear();
+        }
+        log.info("Semantic answer cache invalidated, {} entries removed", removed);
+    }
+
+    /**
+     * Cached answers may be stale once textbook content changes.
+     */
+    @EventListener
+    public void onTextbookIndexed(TextbookIndexedEvent event) {
+        log.info("Textbook {} indexed, invalidating answer cache", event.documentId());
+        invalidateAll();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Remove entries older than the TTL. Caller must hold the lock.
+     */
+    private void evictExpired(long now) {
+        long ttlMillis = ttlMinutes * 60_000L;
+        Iterator<Map.Entry<String, CachedAnswer>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue().createdAtMillis() > ttlMillis) {
+                iterator.remove();
+                evictionCounter.increment();
+            }
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        int length = Math.min(a.length, b.length);
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
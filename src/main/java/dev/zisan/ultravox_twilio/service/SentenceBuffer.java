@@ -0,0 +1,100 @@
+package dev.zisan.ultravox_twilio.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates streamed model tokens and hands back complete sentences.
+ * A sentence ends at '.', '?', '!' or the Bangla danda followed by
+ * whitespace, so decimals like "3.5" are not split. Very short pieces (for
+ * example the "..." pauses the tutor persona uses) are held back and merged
+ * with the following sentence so the voice agent does not get fragments.
+ *
+ * Not thread-safe; use one instance per stream.
+ */
+public class SentenceBuffer {
+
+    private static final int MIN_SENTENCE_LENGTH = 20;
+
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder fullText = new StringBuilder();
+
+    /**
+     * Append a streamed token.
+     *
+     * @param token The next piece of model output
+     * @return Sentences completed by this token, possibly empty
+     */
+    public List<String> append(String token) {
+        List<String> sentences = new ArrayList<>();
+        if (token == null || token.isEmpty()) {
+            return sentences;
+        }
+
+        fullText.append(token);
+        pending.append(token);
+
+        int searchFrom = 0;
+        int boundary;
+        while ((boundary = findBoundary(searchFrom)) >= 0) {
+            String sentence = pending.substring(0, boundary + 1).trim();
+            if (sentence.length() < MIN_SENTENCE_LENGTH) {
+                // Too short to speak on its own, keep it for the next sentence
+                searchFrom = boundary + 1;
+                continue;
+            }
+            sentences.add(sentence);
+            pending.delete(0, boundary + 1);
+            searchFrom = 0;
+        }
+        return sentences;
+    }
+
+    /**
+     * Return whatever is left once the stream has completed.
+     *
+     * @return The trailing text, or null if nothing remains
+     */
+    public String flush() {
+        String rest = pending.toString().trim();
+        pending.setLength(0);
+        return rest.isEmpty() ? null : rest;
+    }
+
+    /**
+     * Everything appended so far, including text already returned as
+     * sentences.
+     */
+    public String getFullText() {
+        return fullText.toString();
+    }
+
+    /**
+     * Split a complete text into sentences using the same rules as streaming.
+     */
+    public static List<String> split(String text) {
+        SentenceBuffer buffer = new SentenceBuffer();
+        List<String> sentences = buffer.append(text);
+        String rest = buffer.flush();
+        if (rest != null) {
+            sentences.add(rest);
+        }
+        return sentences;
+    }
+
+    /**
+     * Index of the terminal punctuation of the first sentence boundary at or
+     * after {@code from}, or -1. A boundary needs a following whitespace
+     * character so we know the sentence is really over.
+     */
+    private int findBoundary(int from) {
+        for (int i = from; i < pending.length() - 1; i++) {
+            char c = pending.charAt(i);
+            if ((c == '.' || c == '?' || c == '!' || c == '\u0964')
+                    && Character.isWhitespace(pending.charAt(i + 1))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,137 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent computations with the same key.
+ * The first caller for a key (the leader) runs the computation; callers that
+ * arrive while it is running wait for and share its result. Nothing is cached
+ * once the leader finishes.
+ *
+ * At most maxWaiters callers wait on one leader; further callers compute on
+ * their own. If the leader fails, its waiters retry once through a new flight,
+ * so a single failed call is not replicated to everybody who was waiting.
+ * Waiters stop waiting at their own {@link Deadline}, if one is attached.
+ */
+@Slf4j
+public class SingleFlight<V> {
+
+    private final ConcurrentHashMap<String, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final int maxWaiters;
+
+    private final Counter leaderCounter;
+    private final Counter followerCounter;
+    private final Counter overflowCounter;
+    private final Counter leaderFailureCounter;
+
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+    }
+
+    /**
+     * @param name       Value of the "flight" tag on the metrics
+     * @param maxWaiters Callers allowed to wait on one leader
+     */
+    public SingleFlight(String name, int maxWaiters, MeterRegistry meterRegistry) {
+        this.maxWaiters = maxWaiters;
+        this.leaderCounter = counter(meterRegistry, name, "leader",
+                "Calls that ran the computation for their key");
+        this.followerCounter = counter(meterRegistry, name, "follower",
+                "Calls that shared the result of an in-flight computation");
+        this.overflowCounter = counter(meterRegistry, name, "overflow",
+                "Calls that computed on their own because too many were already waiting");
+        this.leaderFailureCounter = counter(meterRegistry, name, "leader_failed",
+                "Waiting calls whose leader failed and that retried");
+    }
+
+    /**
+     * Run the computation, or wait for an identical one already in flight.
+     *
+     * @param key         Identity of the computation
+     * @param computation Produces the value; run by the leader only
+     * @return The value computed by this call or by the leader it waited on
+     */
+    public V execute(String key, Supplier<V> computation) {
+        return execute(key, computation, true);
+    }
+
+    /**
+     * Number of keys currently being computed.
+     */
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private V execute(String key, Supplier<V> computation, boolean retryOnLeaderFailure) {
+        Flight<V> flight = new Flight<>();
+        Flight<V> existing = flights.putIfAbsent(key, flight);
+
+        if (existing == null) {
+            leaderCounter.increment();
+            try {
+                V value = computation.get();
+                flight.result.complete(value);
+                return value;
+            } catch (RuntimeException | Error e) {
+                flight.result.completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(key, flight);
+            }
+        }
+
+        if (existing.waiters.incrementAndGet() > maxWaiters) {
+            overflowCounter.increment();
+            return computation.get();
+        }
+
+        followerCounter.increment();
+        try {
+            return await(existing.result);
+        } catch (ExecutionException e) {
+            if (retryOnLeaderFailure) {
+                leaderFailureCounter.increment();
+                log.debug("Leader for in-flight computation failed, retrying: {}", e.getCause().getMessage());
+                return execute(key, computation, false);
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> result) throws ExecutionException {
+        try {
+            Deadline deadline = Deadline.current().orElse(null);
+            if (deadline == null) {
+                return result.get();
+            }
+            return result.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline passed while waiting for in-flight computation");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight computation", e);
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String role, String description) {
+        return Counter.builder("singleflight.requests")
+                .tag("flight", name)
+                .tag("role", role)
+                .description(description)
+                .register(meterRegistry);
+    }
+}
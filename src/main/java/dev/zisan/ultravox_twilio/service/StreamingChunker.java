@@ -0,0 +1,179 @@
+package dev.zisan.ultravox_twilio.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass splitter that turns textbook text into overlapping chunks as it
+ * is extracted.
+ *
+ * Produces exactly the chunks of the original whole-document splitter
+ * (collapse whitespace, trim, CHUNK_SIZE windows moved back CHUNK_OVERLAP,
+ * preferring to end just after '.', '?' or '!' in the last 100 characters),
+ * but only keeps the current window in memory. Whitespace is normalised on
+ * the fly and sentence boundaries are only searched inside the lookback
+ * window.
+ *
+ * Not thread-safe; use one instance per document.
+ */
+@Slf4j
+public class StreamingChunker {
+
+    static final int CHUNK_SIZE = 1000;
+    static final int CHUNK_OVERLAP = 200;
+    static final int MAX_CHUNKS = 10000;
+
+    // Only search for a sentence end this far back from the window end
+    private static final int BOUNDARY_LOOKBACK = 100;
+    private static final int MIN_CHUNK_LENGTH = 50;
+
+    // Drop consumed text once this much has accumulated in front of the window
+    private static final int COMPACT_THRESHOLD = 8192;
+
+    // Normalised text from bufferOffset onwards
+    private final StringBuilder buffer = new StringBuilder();
+    private long bufferOffset;
+
+    // Characters <= ' ' that are only kept if more text follows (trailing trim)
+    private final StringBuilder pendingTail = new StringBuilder();
+    private boolean lastWasWhitespace;
+
+    private long start;
+    private int chunkCount;
+    private boolean limitReached;
+
+    /**
+     * Add extracted text.
+     *
+     * @param text The next piece of text
+     * @return Chunks completed by this text, in order
+     */
+    public List<String> append(CharSequence text) {
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < text.length() && !limitReached; i++) {
+            appendNormalized(text.charAt(i));
+
+            while (!limitReached && committedLength() > start + CHUNK_SIZE) {
+                nextChunk(committedLength(), chunks);
+            }
+            compact();
+        }
+        return chunks;
+    }
+
+    /**
+     * Signal the end of the text and return the remaining chunks.
+     */
+    public List<String> finish() {
+        List<String> chunks = new ArrayList<>();
+        // Trailing characters <= ' ' are trimmed
+        pendingTail.setLength(0);
+
+        long textLength = committedLength();
+        while (!limitReached && start < textLength) {
+            nextChunk(textLength, chunks);
+        }
+        return chunks;
+    }
+
+    /**
+     * Number of chunks produced so far.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Length of the normalised text seen so far.
+     */
+    public long getTextLength() {
+        return committedLength();
+    }
+
+    /**
+     * Whether MAX_CHUNKS was exceeded and further text is ignored.
+     */
+    public boolean isLimitReached() {
+        return limitReached;
+    }
+
+    /**
+     * Apply the equivalent of {@code replaceAll("\\s+", " ").trim()} one
+     * character at a time.
+     */
+    private void appendNormalized(char c) {
+        boolean whitespace = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+        char normalized = whitespace ? ' ' : c;
+
+        if (whitespace && lastWasWhitespace) {
+            return;
+        }
+        lastWasWhitespace = whitespace;
+
+        if (normalized <= ' ') {
+            // Leading characters <= ' ' are trimmed; later ones wait to see if text follows
+            if (!buffer.isEmpty() || bufferOffset > 0) {
+                pendingTail.append(normalized);
+            }
+            return;
+        }
+
+        if (!pendingTail.isEmpty()) {
+            buffer.append(pendingTail);
+            pendingTail.setLength(0);
+        }
+        buffer.append(normalized);
+    }
+
+    /**
+     * Cut the chunk starting at {@code start}. The caller guarantees the text
+     * is known up to {@code start + CHUNK_SIZE}, or that textLength is final.
+     */
+    private void nextChunk(long textLength, List<String> chunks) {
+        long end = Math.min(start + CHUNK_SIZE, textLength);
+
+        if (end < textLength) {
+            long searchStart = Math.max(start, end - BOUNDARY_LOOKBACK);
+            // A boundary at index end itself counts, which allows a CHUNK_SIZE + 1 chunk
+            for (long i = end; i > searchStart; i--) {
+                char c = charAt(i);
+                if (c == '.' || c == '?' || c == '!') {
+                    end = i + 1;
+                    break;
+                }
+            }
+        }
+
+        String chunk = buffer.substring((int) (start - bufferOffset), (int) (end - bufferOffset)).trim();
+        if (chunk.length() > MIN_CHUNK_LENGTH) {
+            chunks.add(chunk);
+            chunkCount++;
+        }
+
+        long nextStart = end - CHUNK_OVERLAP;
+        start = nextStart <= start ? end : nextStart;
+
+        if (chunkCount > MAX_CHUNKS) {
+            log.warn("Reached maximum chunk limit of {}, stopping", MAX_CHUNKS);
+            limitReached = true;
+        }
+    }
+
+    private char charAt(long index) {
+        return buffer.charAt((int) (index - bufferOffset));
+    }
+
+    private long committedLength() {
+        return bufferOffset + buffer.length();
+    }
+
+    private void compact() {
+        int consumed = (int) (start - bufferOffset);
+        if (consumed >= COMPACT_THRESHOLD) {
+            buffer.delete(0, consumed);
+            bufferOffset = start;
+        }
+    }
+}
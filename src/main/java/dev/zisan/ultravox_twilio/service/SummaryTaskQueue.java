@@ -0,0 +1,408 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.entity.SummaryTask;
+import dev.zisan.ultravox_twilio.repository.SummaryTaskRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable queue for post-call processing.
+ * Finished calls are written to summary_tasks and worked off by a fixed
+ * number of workers, so a mass hangup at the end of a class drains at the
+ * rate the summary model can take instead of starting one summary per call
+ * at once. Workers claim tasks with SELECT ... FOR UPDATE SKIP LOCKED; a
+ * claim lapses after lease-ms, so tasks held by an instance that stopped
+ * are picked up again. A running task's lease is renewed every third of
+ * lease-ms, and its outcome is only written while the worker still holds
+ * the lease, so a task another worker has taken over is not overwritten.
+ *
+ * A failed task is retried with exponential backoff and jitter; after
+ * max-attempts it is marked DEAD and an error summary is saved, as a single
+ * failed attempt did before. Dead tasks can be requeued from
+ * /api/summaries/queue/retry-dead.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SummaryTaskQueue {
+
+    private final SummaryTaskRepository taskRepository;
+    private final ConversationSummaryService summaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${summary.queue.workers:2}")
+    private int workers;
+
+    @Value("${summary.queue.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${summary.queue.backoff-initial-ms:5000}")
+    private long backoffInitialMs;
+
+    @Value("${summary.queue.backoff-max-ms:600000}")
+    private long backoffMaxMs;
+
+    // How long a claimed task is reserved for its worker; renewed while the worker runs it
+    @Value("${summary.queue.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${summary.queue.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${summary.queue.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private static final long STATS_INTERVAL_SECONDS = 5;
+
+    private ExecutorService workerPool;
+    private ScheduledExecutorService maintenance;
+    private volatile boolean running;
+
+    // Wakes an idle worker when a task is queued, so it does not wait for the next poll
+    private final Semaphore wakeUps = new Semaphore(0);
+
+    private final Map<SummaryTask.Status, AtomicLong> depth = new EnumMap<>(SummaryTask.Status.class);
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    private Timer waitTimer;
+
+    // Leases on the tasks this instance is running, renewed by the maintenance thread
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A worker's claim on a running task. Renewal and the final update are
+     * synchronized so they never race on the lease end.
+     */
+    private final class Lease {
+        private final String taskId;
+        private LocalDateTime until;
+        private boolean lost;
+
+        private Lease(String taskId, LocalDateTime until) {
+            this.taskId = taskId;
+            this.until = until;
+        }
+
+        private synchronized void renew() {
+            if (lost) {
+                return;
+            }
+            LocalDateTime next = leaseEnd(LocalDateTime.now());
+            if (taskRepository.renewLease(taskId, until, next) == 1) {
+                until = next;
+            } else {
+                lost = true;
+                log.warn("Lost the lease on summary task {}, it has been claimed again", taskId);
+            }
+        }
+
+        private synchronized boolean finish(SummaryTask.Status status, LocalDateTime nextAttemptAt, String lastError,
+                LocalDateTime finishedAt) {
+            return !lost && taskRepository.finish(taskId, until, status.name(), nextAttemptAt, lastError,
+                    finishedAt) == 1;
+        }
+    }
+
+    public record QueueStatus(Map<SummaryTask.Status, Long> depth, long lagSeconds, List<SummaryTask> dead) {
+    }
+
+    @PostConstruct
+    public void init() {
+        for (SummaryTask.Status status : List.of(SummaryTask.Status.PENDING, SummaryTask.Status.RUNNING,
+                SummaryTask.Status.DEAD)) {
+            AtomicLong tasks = new AtomicLong();
+            depth.put(status, tasks);
+            Gauge.builder("summary.queue.depth", tasks, AtomicLong::get)
+                    .tag("status", status.name().toLowerCase())
+                    .description("Summary tasks by status")
+                    .register(meterRegistry);
+        }
+        Gauge.builder("summary.queue.lag", lagSeconds, AtomicLong::get)
+                .baseUnit("seconds")
+                .description("How long the oldest due summary task has been waiting")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("summary.queue.wait")
+                .description("Time from a summary task becoming due to a worker claiming it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start the workers once the application is up; tasks left from before
+     * a restart are picked up with the new ones.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        // Workers spend most of their time waiting on the summary model, so they follow the request threads
+        ThreadFactory workerThreads = virtualThreads
+                ? Thread.ofVirtual().name("summary-worker-", 1).factory()
+                : Thread.ofPlatform().name("summary-worker-", 1).daemon().factory();
+        workerPool = Executors.newFixedThreadPool(workers, workerThreads);
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::work);
+        }
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "summary-queue-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::refreshStats, 0, STATS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        maintenance.scheduleWithFixedDelay(this::purgeCompleted, 1, 60, TimeUnit.MINUTES);
+        long renewMs = Math.max(1000, leaseMs / 3);
+        maintenance.scheduleWithFixedDelay(this::renewLeases, renewMs, renewMs, TimeUnit.MILLISECONDS);
+        log.info("Summary queue started with {} {} workers", workers, virtualThreads ? "virtual" : "platform");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Tasks in progress stay RUNNING and are claimed again once their lease lapses
+        running = false;
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+    }
+
+    /**
+     * Queue post-call processing for a finished call. A call that is
+     * already queued is not queued again.
+     */
+    public void enqueue(String callSid, String ultravoxCallId, String callerNumber) {
+        int added = taskRepository.enqueue(UUID.randomUUID().toString(), callSid, ultravoxCallId, callerNumber,
+                LocalDateTime.now());
+        if (added > 0) {
+            log.info("Queued summary for call: {} (Ultravox: {})", callSid, ultravoxCallId);
+            wakeUps.release();
+        } else {
+            log.info("Summary for call {} is already queued", callSid);
+        }
+    }
+
+    /**
+     * Put all dead tasks back in the queue.
+     *
+     * @return Number of tasks requeued
+     */
+    public int retryDead() {
+        int requeued = taskRepository.requeueDead(LocalDateTime.now());
+        log.info("Requeued {} dead summary tasks", requeued);
+        wakeUps.release(Math.min(requeued, workers));
+        return requeued;
+    }
+
+    /**
+     * Current queue depth and lag, and the dead tasks.
+     */
+    public QueueStatus status() {
+        refreshStats();
+        Map<SummaryTask.Status, Long> counts = new EnumMap<>(SummaryTask.Status.class);
+        depth.forEach((status, tasks) -> counts.put(status, tasks.get()));
+        return new QueueStatus(counts, lagSeconds.get(),
+                taskRepository.findByStatusOrderByFinishedAtDesc(SummaryTask.Status.DEAD));
+    }
+
+    private void work() {
+        while (running) {
+            SummaryTask task;
+            try {
+                task = claim();
+            } catch (Exception e) {
+                log.warn("Could not claim a summary task: {}", e.getMessage());
+                task = null;
+            }
+
+            if (task == null) {
+                try {
+                    wakeUps.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            process(task);
+        }
+    }
+
+    /**
+     * Claim the oldest due task, if any, in its own short transaction.
+     */
+    private SummaryTask claim() {
+        return transactionTemplate.execute(tx -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<SummaryTask> due = taskRepository.lockDue(now, 1);
+            if (due.isEmpty()) {
+                return null;
+            }
+            SummaryTask task = due.get(0);
+            waitTimer.record(Duration.between(task.getNextAttemptAt(), now));
+            task.setStatus(SummaryTask.Status.RUNNING);
+            task.setAttempts(task.getAttempts() + 1);
+            task.setLockedUntil(leaseEnd(now));
+            return taskRepository.save(task);
+        });
+    }
+
+    private void process(SummaryTask task) {
+        long start = System.nanoTime();
+        Lease lease = new Lease(task.getId(), task.getLockedUntil());
+        leases.add(lease);
+
+        SummaryTask.Status status;
+        LocalDateTime nextAttemptAt = task.getNextAttemptAt();
+        LocalDateTime finishedAt = null;
+        Exception failure = null;
+        try {
+            // A worker that stopped after saving the summary leaves a task that is already done
+            if (!summaryService.hasSummary(task.getCallSid())) {
+                summaryService.summarize(task.getCallSid(), task.getUltravoxCallId(), task.getCallerNumber());
+            }
+            status = SummaryTask.Status.COMPLETED;
+            finishedAt = LocalDateTime.now();
+        } catch (Exception e) {
+            failure = e;
+            if (task.getAttempts() >= maxAttempts) {
+                status = SummaryTask.Status.DEAD;
+                finishedAt = LocalDateTime.now();
+            } else {
+                status = SummaryTask.Status.PENDING;
+                nextAttemptAt = LocalDateTime.now().plus(backoff(task.getAttempts()));
+            }
+        } finally {
+            leases.remove(lease);
+        }
+
+        boolean recorded;
+        try {
+            recorded = lease.finish(status, nextAttemptAt, failure != null ? failure.getMessage() : null, finishedAt);
+        } catch (Exception e) {
+            // The lease runs out and the task is claimed again
+            log.error("Could not update summary task for call {}", task.getCallSid(), e);
+            recorded = false;
+        }
+
+        String outcome;
+        if (!recorded) {
+            outcome = "lost";
+            log.warn("Summary task for call {} was claimed again, outcome {} not recorded", task.getCallSid(),
+                    status);
+        } else if (status == SummaryTask.Status.COMPLETED) {
+            outcome = "completed";
+            log.info("Summary generated for call: {} (attempt {})", task.getCallSid(), task.getAttempts());
+        } else if (status == SummaryTask.Status.DEAD) {
+            outcome = "dead";
+            log.error("Summary for call {} failed {} times, giving up", task.getCallSid(), task.getAttempts(),
+                    failure);
+            saveFailedSummary(task, failure);
+        } else {
+            outcome = "retry";
+            log.warn("Summary for call {} failed (attempt {}), retrying at {}: {}", task.getCallSid(),
+                    task.getAttempts(), nextAttemptAt, failure.getMessage());
+        }
+        meterRegistry.timer("summary.queue.processing", "outcome", outcome)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void renewLeases() {
+        for (Lease lease : leases) {
+            try {
+                lease.renew();
+            } catch (Exception e) {
+                log.warn("Could not renew lease on summary task {}: {}", lease.taskId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * End of a lease taken now, at the database's microsecond precision so
+     * it compares equal when the conditional updates check it.
+     */
+    private LocalDateTime leaseEnd(LocalDateTime now) {
+        return now.plus(Duration.ofMillis(leaseMs)).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    private void saveFailedSummary(SummaryTask task, Exception error) {
+        try {
+            summaryService.saveFailedSummary(task.getCallSid(), task.getUltravoxCallId(), task.getCallerNumber(),
+                    error.getMessage());
+        } catch (Exception e) {
+            log.error("Could not save error summary for call {}", task.getCallSid(), e);
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter: half the doubled delay plus a random
+     * share of the other half, so tasks that failed together spread out.
+     */
+    private Duration backoff(int attempts) {
+        long delay = backoffInitialMs << Math.min(30, Math.max(0, attempts - 1));
+        delay = Math.min(backoffMaxMs, delay < 0 ? backoffMaxMs : delay);
+        long half = delay / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    private void refreshStats() {
+        try {
+            Map<SummaryTask.Status, Long> counts = new EnumMap<>(SummaryTask.Status.class);
+            long lag = 0;
+            for (SummaryTaskRepository.StatusStats stats : taskRepository.statusStats(LocalDateTime.now())) {
+                SummaryTask.Status status = SummaryTask.Status.valueOf(stats.getStatus());
+                counts.put(status, stats.getTasks());
+                if (status == SummaryTask.Status.PENDING && stats.getAge() != null) {
+                    lag = Math.max(0, Math.round(stats.getAge()));
+                }
+            }
+            depth.forEach((status, tasks) -> tasks.set(counts.getOrDefault(status, 0L)));
+            lagSeconds.set(lag);
+        } catch (Exception e) {
+            log.warn("Could not read summary queue stats: {}", e.getMessage());
+        }
+    }
+
+    private void purgeCompleted() {
+        try {
+            int deleted = taskRepository.deleteCompletedBefore(LocalDateTime.now().minusDays(retentionDays));
+            if (deleted > 0) {
+                log.info("Removed {} completed summary tasks older than {} days", deleted, retentionDays);
+            }
+        } catch (Exception e) {
+            log.warn("Could not purge completed summary tasks: {}", e.getMessage());
+        }
+    }
+}
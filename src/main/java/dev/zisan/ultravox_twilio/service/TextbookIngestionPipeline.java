@@ -0,0 +1,366 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.event.TextbookChunksStoredEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipelined PDF ingestion:
+ * <ol>
+ *   <li>page ranges are extracted in parallel with PDFBox on a fork-join pool,</li>
+ *   <li>ranges are streamed through a {@link StreamingChunker} in page order as
+ *       soon as they are extracted,</li>
+ *   <li>chunk batches go through a bounded queue to writer threads that embed
+ *       and store them in PGVector concurrently.</li>
+ * </ol>
+ * Extraction is submitted at most {@link #RANGES_AHEAD_PER_THREAD} ranges per
+ * extraction thread ahead of the range being chunked, and the chunker blocks
+ * on the bounded queue, so extracted text never runs far ahead of the
+ * embedding model. Each running extraction parses its own copy of the PDF,
+ * so up to one copy per extraction thread is in memory at a time.
+ * Embedding calls from all ingestions share a small
+ * permit pool so indexing never takes every embedding slot away from live
+ * calls.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TextbookIngestionPipeline {
+
+    // Extracted page ranges waiting to be chunked, per extraction thread
+    static final int RANGES_AHEAD_PER_THREAD = 2;
+
+    private final VectorStore vectorStore;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${ingestion.pipeline.pages-per-task:8}")
+    private int pagesPerTask;
+
+    @Value("${ingestion.pipeline.extract-parallelism:0}")
+    private int extractParallelism;
+
+    @Value("${ingestion.pipeline.writer-threads:4}")
+    private int writerThreads;
+
+    @Value("${ingestion.pipeline.batch-size:50}")
+    private int batchSize;
+
+    @Value("${ingestion.pipeline.queue-capacity:8}")
+    private int queueCapacity;
+
+    @Value("${ingestion.max-concurrent-embedding-calls:2}")
+    private int maxConcurrentEmbeddingCalls;
+
+    private ForkJoinPool extractPool;
+    private ExecutorService writerPool;
+    private Semaphore embeddingPermits;
+
+    /**
+     * Outcome and throughput of one ingestion run.
+     */
+    public record IngestionReport(String documentId, String filename, int pages, int chunks,
+            long extractMillis, long totalMillis, double pagesPerSecond, double chunksPerSecond) {
+    }
+
+    @PostConstruct
+    public void init() {
+        int parallelism = extractParallelism > 0 ? extractParallelism : Runtime.getRuntime().availableProcessors();
+        extractPool = new ForkJoinPool(parallelism);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        writerPool = Executors.newFixedThreadPool(writerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "ingest-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        embeddingPermits = new Semaphore(maxConcurrentEmbeddingCalls, true);
+
+        log.info("Ingestion pipeline: {} extraction threads, {} writer threads, {} pages per task, "
+                + "{} concurrent embedding calls", parallelism, writerThreads, pagesPerTask,
+                maxConcurrentEmbeddingCalls);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        extractPool.shutdownNow();
+        writerPool.shutdownNow();
+    }
+
+    /**
+     * Extract, chunk, embed and store a textbook PDF.
+     *
+     * @param pdf        The PDF bytes
+     * @param documentId The document ID to tag chunks with
+     * @param filename   The original filename
+     * @param plan       Decides which chunks are unchanged and need no embedding
+     * @param progress   Receives progress and is polled for cancellation
+     * @return Throughput report; chunks is 0 if PDFBox found no text
+     * @throws CancellationException if the progress reports cancellation
+     */
+    public IngestionReport ingest(byte[] pdf, String documentId, String filename, ReindexPlan plan,
+            IngestionProgress progress) throws IOException {
+        long start = System.nanoTime();
+
+        int pageCount;
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            pageCount = document.getNumberOfPages();
+        }
+        progress.started(pageCount);
+
+        // Fan out page ranges, a window at a time. PDDocument is not thread-safe, so each task opens its own copy.
+        int rangeCount = (pageCount + pagesPerTask - 1) / pagesPerTask;
+        int window = extractPool.getParallelism() * RANGES_AHEAD_PER_THREAD;
+        // Chunked ranges are dropped from the queue, so their text can be collected
+        Deque<Future<String>> ranges = new ArrayDeque<>();
+        int submitted = 0;
+        while (submitted < Math.min(window, rangeCount)) {
+            ranges.add(submitRange(pdf, submitted++, pageCount));
+        }
+
+        BlockingQueue<List<Document>> batches = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<?>> writers = new ArrayList<>();
+        for (int i = 0; i < writerThreads; i++) {
+            writers.add(writerPool.submit(() -> writeBatches(batches, documentId, progress, failure)));
+        }
+
+        StreamingChunker chunker = new StreamingChunker();
+        List<Document> batch = new ArrayList<>(batchSize);
+        int chunkIndex = 0;
+        long extractNanos = 0;
+        try {
+            for (int r = 0; r < rangeCount && !chunker.isLimitReached(); r++) {
+                if (progress.isCancelled()) {
+                    throw new CancellationException("Ingestion of " + filename + " was cancelled");
+                }
+                if (submitted < rangeCount) {
+                    ranges.add(submitRange(pdf, submitted++, pageCount));
+                }
+
+                long waitStart = System.nanoTime();
+                String rangeText = ranges.poll().get();
+                extractNanos += System.nanoTime() - waitStart;
+
+                // Ranges are chunked in page order as they complete
+                int before = chunkIndex;
+                chunkIndex = addChunks(chunker.append(rangeText), batch, batches, failure, progress,
+                        documentId, filename, plan, chunkIndex);
+                chunkIndex = addChunks(chunker.append(" "), batch, batches, failure, progress,
+                        documentId, filename, plan, chunkIndex);
+                progress.chunksProduced(chunkIndex - before);
+                progress.pagesChunked(Math.min(pagesPerTask, pageCount - r * pagesPerTask));
+            }
+            int beforeFinish = chunkIndex;
+            chunkIndex = addChunks(chunker.finish(), batch, batches, failure, progress,
+                    documentId, filename, plan, chunkIndex);
+            progress.chunksProduced(chunkIndex - beforeFinish);
+
+            if (!batch.isEmpty()) {
+                enqueue(batches, List.copyOf(batch), failure, progress);
+            }
+        } catch (CancellationException e) {
+            // Stop the writers without draining the queue
+            failure.compareAndSet(null, e);
+            throw e;
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            finishWriters(batches, writers, failure, progress);
+            ranges.forEach(range -> range.cancel(true));
+        }
+
+        if (failure.get() instanceof CancellationException cancelled) {
+            throw cancelled;
+        }
+        if (failure.get() != null) {
+            throw new IOException("Textbook ingestion failed: " + failure.get().getMessage(), failure.get());
+        }
+
+        if (chunker.isLimitReached()) {
+            log.warn("Remaining pages of {} were skipped after {} chunks", filename, chunkIndex);
+        }
+
+        long totalNanos = System.nanoTime() - start;
+        double seconds = Math.max(totalNanos / 1e9, 1e-3);
+        IngestionReport report = new IngestionReport(documentId, filename, pageCount, chunkIndex,
+                TimeUnit.NANOSECONDS.toMillis(extractNanos), TimeUnit.NANOSECONDS.toMillis(totalNanos),
+                pageCount / seconds, chunkIndex / seconds);
+
+        log.info("Ingested {}: {} pages, {} chunks in {} ms ({} pages/s, {} chunks/s, {} ms waiting on extraction)",
+                filename, report.pages(), report.chunks(), report.totalMillis(),
+                String.format("%.1f", report.pagesPerSecond()), String.format("%.1f", report.chunksPerSecond()),
+                report.extractMillis());
+        return report;
+    }
+
+    /**
+     * Submit extraction of the page range with the given index.
+     */
+    private Future<String> submitRange(byte[] pdf, int index, int pageCount) {
+        int from = index * pagesPerTask + 1;
+        int to = Math.min(pageCount, from + pagesPerTask - 1);
+        return extractPool.submit(() -> extractRange(pdf, from, to));
+    }
+
+    private static String extractRange(byte[] pdf, int firstPage, int lastPage) throws IOException {
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(firstPage);
+            stripper.setEndPage(lastPage);
+            return stripper.getText(document);
+        }
+    }
+
+    private int addChunks(List<String> chunks, List<Document> batch, BlockingQueue<List<Document>> batches,
+            AtomicReference<Throwable> failure, IngestionProgress progress, String documentId, String filename,
+            ReindexPlan plan, int chunkIndex) throws InterruptedException {
+        for (String chunk : chunks) {
+            String contentHash = ContentHash.of(chunk);
+            int index = chunkIndex++;
+            if (plan.reuse(contentHash, index)) {
+                continue;
+            }
+
+            batch.add(chunkDocument(chunk, contentHash, documentId, filename, index));
+            if (batch.size() >= batchSize) {
+                enqueue(batches, List.copyOf(batch), failure, progress);
+                batch.clear();
+            }
+        }
+        return chunkIndex;
+    }
+
+    /**
+     * A chunk with the metadata every ingestion path stores. total_chunks is
+     * patched in once the whole book has been chunked.
+     */
+    static Document chunkDocument(String text, String contentHash, String documentId, String filename,
+            int chunkIndex) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", documentId);
+        metadata.put("chunk_index", chunkIndex);
+        metadata.put("filename", filename);
+        metadata.put("content_hash", contentHash);
+        return new Document(text, metadata);
+    }
+
+    /**
+     * Writer loop: embed and store batches until an empty batch (end marker)
+     * arrives or another stage has failed.
+     */
+    private void writeBatches(BlockingQueue<List<Document>> batches, String documentId,
+            IngestionProgress progress, AtomicReference<Throwable> failure) {
+        try {
+            while (failure.get() == null) {
+                List<Document> batch = batches.poll(1, TimeUnit.SECONDS);
+                if (batch == null) {
+                    continue;
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                store(batch, documentId, progress);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (Exception e) {
+            log.error("Failed to store chunk batch", e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Embed and store one batch of chunks, waiting for an embedding permit
+     * first. Also used by the single-threaded Tika path.
+     */
+    void store(List<Document> batch, String documentId, IngestionProgress progress)
+            throws InterruptedException {
+        embeddingPermits.acquire();
+        try {
+            vectorStore.add(batch);
+        } finally {
+            embeddingPermits.release();
+        }
+
+        eventPublisher.publishEvent(new TextbookChunksStoredEvent(documentId, List.copyOf(batch)));
+        progress.batchStored(batch);
+        log.debug("Stored batch of {} chunks", batch.size());
+    }
+
+    /**
+     * Put a batch on the queue, giving up if the writers have failed.
+     *
+     * @throws CancellationException if the progress reports cancellation
+     *         while the queue is full
+     */
+    private static void enqueue(BlockingQueue<List<Document>> batches, List<Document> batch,
+            AtomicReference<Throwable> failure, IngestionProgress progress) throws InterruptedException {
+        while (!batches.offer(batch, 1, TimeUnit.SECONDS)) {
+            if (failure.get() != null) {
+                return;
+            }
+            if (progress.isCancelled()) {
+                throw new CancellationException("Ingestion was cancelled while waiting for the writers");
+            }
+        }
+    }
+
+    /**
+     * Send one end marker per writer and wait for all of them to drain.
+     */
+    private static void finishWriters(BlockingQueue<List<Document>> batches, List<Future<?>> writers,
+            AtomicReference<Throwable> failure, IngestionProgress progress) {
+        try {
+            for (int i = 0; i < writers.size(); i++) {
+                enqueue(batches, List.of(), failure, progress);
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (CancellationException e) {
+            // Stop the writers instead of waiting for them to drain
+            failure.compareAndSet(null, e);
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package dev.zisan.ultravox_twilio.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Retrieves textbook chunks for a question.
+ * Dense PGVector search can be combined with the in-process BM25 index using
+ * reciprocal rank fusion, so keyword-heavy questions are found without a
+ * large topK.
+ *
+ * Also formats passages for the retrieval-only Ultravox tool, where the voice
+ * agent's own LLM composes the answer from the raw passages.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TextbookRetrievalService {
+
+    private final LocalVectorStoreReplica vectorStoreReplica;
+    private final Bm25Index bm25Index;
+    private final AdaptiveTopKPolicy topKPolicy;
+
+    @Value("${rag.retrieval.top-k:5}")
+    private int topK;
+
+    @Value("${rag.retrieval.similarity-threshold:0.7}")
+    private double similarityThreshold;
+
+    @Value("${rag.hybrid.enabled:true}")
+    private boolean hybridEnabled;
+
+    @Value("${rag.hybrid.candidates:20}")
+    private int hybridCandidates;
+
+    @Value("${rag.hybrid.dense-similarity-threshold:0.5}")
+    private double hybridDenseThreshold;
+
+    @Value("${rag.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${rag.passages.char-budget:2500}")
+    private int passageCharBudget;
+
+    // A trailing partial passage is only worth including if this much budget is left
+    private static final int MIN_PARTIAL_PASSAGE = 200;
+
+    /**
+     * Find the chunks most relevant to a question.
+     * With the adaptive policy enabled, the number of chunks returned follows
+     * the dense score curve (see {@link AdaptiveTopKPolicy}) instead of the
+     * fixed topK.
+     *
+     * @param question The student's question
+     * @return Matching chunks, most relevant first
+     */
+    public List<Document> retrieve(String question) {
+        if (!hybridEnabled) {
+            if (!topKPolicy.isEnabled()) {
+                return denseSearch(question, topK, similarityThreshold);
+            }
+            // Over-fetch for the score curve, at the same threshold the fixed topK search uses
+            List<Document> candidates = denseSearch(question, hybridCandidates, similarityThreshold);
+            int k = topKPolicy.decide(candidates, topK).k();
+            return candidates.subList(0, Math.min(k, candidates.size()));
+        }
+
+        // Over-fetch from both retrievers; fusion decides the final topK
+        List<Document> dense = denseSearch(question, hybridCandidates, hybridDenseThreshold);
+        List<Document> lexical = bm25Index.search(question, hybridCandidates);
+        int k = topKPolicy.decide(dense, topK).k();
+        List<Document> fused = reciprocalRankFusion(List.of(dense, lexical), rrfK, k);
+
+        log.debug("Hybrid retrieval: {} dense + {} lexical candidates fused into {} chunks",
+                dense.size(), lexical.size(), fused.size());
+        return fused;
+    }
+
+    /**
+     * Keyword-only retrieval from the in-process BM25 index. Needs no
+     * embedding, so it is used when there is no time left for dense search.
+     */
+    public List<Document> retrieveLexical(String question) {
+        return bm25Index.search(question, topK);
+    }
+
+    private List<Document> denseSearch(String question, int limit, double threshold) {
+        List<Document> results = vectorStoreReplica.readStore().similaritySearch(SearchRequest.builder()
+                .query(question)
+                .topK(limit)
+                .similarityThreshold(threshold)
+                .build());
+
+        return results != null ? results : List.of();
+    }
+
+    /**
+     * Merge several rankings with reciprocal rank fusion: each chunk scores
+     * the sum of 1 / (k + rank) over the rankings it appears in. Rank-based,
+     * so cosine similarities and BM25 scores need no calibration against each
+     * other.
+     *
+     * @param rankings Ranked result lists, best first
+     * @param k        RRF damping constant (60 in the original paper)
+     * @param limit    Maximum number of chunks to return
+     * @return Fused chunks, best first, with the fused score set
+     */
+    static List<Document> reciprocalRankFusion(List<List<Document>> rankings, int k, int limit) {
+        Map<String, Document> byId = new LinkedHashMap<>();
+        Map<String, Double> fusedScores = new HashMap<>();
+
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                byId.putIfAbsent(document.getId(), document);
+                fusedScores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+
+        return byId.values().stream()
+                .sorted(Comparator.comparingDouble((Document d) -> fusedScores.get(d.getId())).reversed())
+                .limit(limit)
+                .map(d -> Document.builder()
+                        .id(d.getId())
+                        .text(d.getText())
+                        .metadata(d.getMetadata())
+                        .score(fusedScores.get(d.getId()))
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Retrieve passages for a question and format them as a single tool result.
+     *
+     * @param question The student's question
+     * @return Formatted passages, or an empty string if nothing relevant was
+     *         found
+     */
+    public String retrievePassages(String question) {
+        List<Document> documents = retrieve(question);
+        String passages = formatPassages(documents, passageCharBudget);
+
+        log.info("Retrieved {} chunk(s), returning {} chars of passages", documents.size(), passages.length());
+        return passages;
+    }
+
+    /**
+     * Format chunks as passages within the configured character budget.
+     */
+    public String formatPassages(List<Document> documents) {
+        return formatPassages(documents, passageCharBudget);
+    }
+
+    /**
+     * Deduplicate chunks, keep the most relevant ones that fit in the character
+     * budget, and lay them out in textbook reading order.
+     *
+     * @param documents  Chunks ordered by relevance
+     * @param charBudget Maximum number of passage characters to return
+     */
+    public String formatPassages(List<Document> documents, int charBudget) {
+        List<Document> selected = new ArrayList<>();
+        List<String> selectedTexts = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int remaining = charBudget;
+
+        for (Document document : documents) {
+            String text = document.getText();
+            if (text == null || text.isBlank()) {
+                continue;
+            }
+
+            // The same textbook uploaded twice yields identical chunks under different IDs
+            if (!seen.add(text.replaceAll("\\s+", " ").trim().toLowerCase())) {
+                continue;
+            }
+
+            if (text.length() > remaining) {
+                if (remaining < MIN_PARTIAL_PASSAGE) {
+                    break;
+                }
+                text = trimToSentence(text, remaining);
+            }
+
+            selected.add(document);
+            selectedTexts.add(text);
+            remaining -= text.length();
+
+            if (remaining <= 0) {
+                break;
+            }
+        }
+
+        // Present passages in the order they appear in the book
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < selected.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator
+                .comparing((Integer i) -> String.valueOf(selected.get(i).getMetadata().get("filename")))
+                .thenComparingInt(i -> chunkIndex(selected.get(i))));
+
+        StringBuilder result = new StringBuilder();
+        for (int i : order) {
+            if (!result.isEmpty()) {
+                result.append("\n\n");
+            }
+            result.append(selectedTexts.get(i));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Cut text to at most maxChars, preferring to end on a sentence boundary.
+     */
+    private static String trimToSentence(String text, int maxChars) {
+        String cut = text.substring(0, maxChars);
+        int boundary = Math.max(cut.lastIndexOf(". "), Math.max(cut.lastIndexOf("? "), cut.lastIndexOf("! ")));
+        if (boundary > maxChars / 2) {
+            return cut.substring(0, boundary + 1);
+        }
+        return cut.trim();
+    }
+
+    static int chunkIndex(Document document) {
+        Object index = document.getMetadata().get("chunk_index");
+        if (index instanceof Number number) {
+            return number.intValue();
+        }
+        try {
+            return index != null ? Integer.parseInt(index.toString()) : Integer.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+}
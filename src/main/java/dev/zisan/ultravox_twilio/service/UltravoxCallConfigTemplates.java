@@ -0,0 +1,321 @@
+package dev.zisan.ultravox_twilio.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request bodies for creating Ultravox calls.
+ * Everything in a call config except the Twilio call SID is the same for all
+ * calls on one base URL and profile: the tutor prompt, model and voice
+ * settings, and the RAG tool definitions. That part is serialized once and
+ * kept as bytes; each call only appends its own metadata.
+ *
+ * Profiles (ultravox.profiles.&lt;name&gt;.*) override the prompt, voice,
+ * model, temperature and language hint of the base ultravox.* settings, so
+ * one deployment can serve several subjects or languages from different
+ * Twilio numbers.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UltravoxCallConfigTemplates {
+
+    public static final String DEFAULT_PROFILE = "default";
+
+    private final ObjectMapper objectMapper;
+    private final PromptRegistry promptRegistry;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ultravox.model}")
+    private String model;
+
+    @Value("${ultravox.voice}")
+    private String voice;
+
+    @Value("${ultravox.temperature}")
+    private double temperature;
+
+    @Value("${ultravox.rag-tool-mode:generate}")
+    private String ragToolMode;
+
+    // Latency budget sent with each searchTextbook call; 0 leaves it to rag.deadline.budget-ms
+    @Value("${ultravox.rag-tool-budget-ms:0}")
+    private long ragToolBudgetMs;
+
+    @Value("${ultravox.default-profile:default}")
+    private String defaultProfile;
+
+    // Base URLs come from forwarded headers, so the number of cached templates is capped
+    private static final int MAX_TEMPLATES = 64;
+
+    private static final byte[] METADATA_PREFIX = ",\"metadata\":{\"twilioCallSid\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] METADATA_SUFFIX = "}}".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, CallProfile> profiles = new HashMap<>();
+    private final Map<TemplateKey, byte[]> templates = new ConcurrentHashMap<>();
+
+    private Timer hitTimer;
+    private Timer missTimer;
+
+    /**
+     * Settings of one call profile; unset fields fall back to ultravox.*.
+     *
+     * @param prompt       Prompt registry name of the system prompt
+     * @param languageHint BCP-47 language hint for speech recognition
+     */
+    public record CallProfile(String prompt, String voice, String model, Double temperature, String languageHint) {
+    }
+
+    /**
+     * The prompt template is part of the key, so a prompt variant switched at
+     * runtime produces a new template instead of serving the old prompt.
+     */
+    private record TemplateKey(String baseUrl, String profile, PromptTemplate prompt) {
+    }
+
+    @PostConstruct
+    public void init() {
+        CallProfile base = new CallProfile(PromptRegistry.TUTOR, voice, model, temperature, null);
+        profiles.put(DEFAULT_PROFILE, base);
+
+        Map<String, CallProfile> configured = Binder.get(environment)
+                .bind("ultravox.profiles", Bindable.mapOf(String.class, CallProfile.class))
+                .orElse(Map.of());
+        configured.forEach((name, profile) -> profiles.put(name, new CallProfile(
+                profile.prompt() != null ? profile.prompt() : base.prompt(),
+                profile.voice() != null ? profile.voice() : base.voice(),
+                profile.model() != null ? profile.model() : base.model(),
+                profile.temperature() != null ? profile.temperature() : base.temperature(),
+                profile.languageHint())));
+
+        // Fail at startup rather than on the first call of a profile with a missing prompt
+        profiles.values().forEach(profile -> promptRegistry.active(PromptRegistry.Use.VOICE_AGENT, profile.prompt()));
+
+        if (!profiles.containsKey(defaultProfile)) {
+            log.warn("Default Ultravox profile '{}' is not configured, using base settings", defaultProfile);
+            defaultProfile = DEFAULT_PROFILE;
+        }
+
+        hitTimer = renderTimer("hit");
+        missTimer = renderTimer("miss");
+        log.info("Ultravox call profiles: {} (default: {})", profiles.keySet(), defaultProfile);
+    }
+
+    /**
+     * Resolve a requested profile name, falling back to the default profile.
+     */
+    public String resolveProfile(String profile) {
+        if (profile == null || profile.isBlank()) {
+            return defaultProfile;
+        }
+        if (!profiles.containsKey(profile)) {
+            log.warn("Unknown Ultravox profile '{}', using '{}'", profile, defaultProfile);
+            return defaultProfile;
+        }
+        return profile;
+    }
+
+    /**
+     * The prompt template a call created now with the given profile gets.
+     */
+    public PromptTemplate activePrompt(String profile) {
+        return promptRegistry.active(PromptRegistry.Use.VOICE_AGENT, profiles.get(resolveProfile(profile)).prompt());
+    }
+
+    /**
+     * JSON body for creating a call.
+     *
+     * @param callSid Twilio call SID, sent as call metadata
+     * @param baseUrl Base URL the RAG tools call back to
+     * @param profile Profile name; null or unknown means the default profile
+     */
+    public byte[] render(String callSid, String baseUrl, String profile) throws JsonProcessingException {
+        return render(callSid, baseUrl, profile, null);
+    }
+
+    /**
+     * JSON body for creating a call that may be joined later.
+     *
+     * @param joinTimeout How long Ultravox waits for the call to be joined;
+     *                    null for its default
+     */
+    public byte[] render(String callSid, String baseUrl, String profile, Duration joinTimeout)
+            throws JsonProcessingException {
+        long start = System.nanoTime();
+        String profileName = resolveProfile(profile);
+        CallProfile callProfile = profiles.get(profileName);
+        PromptTemplate prompt = promptRegistry.active(PromptRegistry.Use.VOICE_AGENT, callProfile.prompt());
+
+        TemplateKey key = new TemplateKey(baseUrl, profileName, prompt);
+        byte[] template = templates.get(key);
+        boolean hit = template != null;
+        if (!hit) {
+            template = compile(baseUrl, callProfile);
+            if (templates.size() >= MAX_TEMPLATES) {
+                templates.clear();
+            }
+            templates.put(key, template);
+        }
+
+        byte[] callSidJson = objectMapper.writeValueAsBytes(callSid != null ? callSid : "");
+        ByteArrayOutputStream body = new ByteArrayOutputStream(
+                template.length + METADATA_PREFIX.length + callSidJson.length + METADATA_SUFFIX.length + 32);
+        body.writeBytes(template);
+        if (joinTimeout != null) {
+            body.writeBytes((",\"joinTimeout\":\"" + joinTimeout.toSeconds() + "s\"").getBytes(StandardCharsets.UTF_8));
+        }
+        body.writeBytes(METADATA_PREFIX);
+        body.writeBytes(callSidJson);
+        body.writeBytes(METADATA_SUFFIX);
+
+        (hit ? hitTimer : missTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return body.toByteArray();
+    }
+
+    /**
+     * Serialize the invariant part of a call config, without its closing
+     * brace so per-call fields can be appended.
+     */
+    private byte[] compile(String baseUrl, CallProfile profile) throws JsonProcessingException {
+        Map<String, Object> callConfig = new LinkedHashMap<>();
+        callConfig.put("systemPrompt", promptRegistry.render(PromptRegistry.Use.VOICE_AGENT, profile.prompt()));
+        callConfig.put("model", profile.model());
+        callConfig.put("voice", profile.voice());
+        callConfig.put("temperature", profile.temperature());
+        callConfig.put("firstSpeaker", "FIRST_SPEAKER_AGENT");
+        if (profile.languageHint() != null) {
+            callConfig.put("languageHint", profile.languageHint());
+        }
+
+        // Configure for Twilio WebSocket connection
+        Map<String, Object> medium = new HashMap<>();
+        medium.put("twilio", new HashMap<>());
+        callConfig.put("medium", medium);
+
+        // Add RAG tool configuration
+        callConfig.put("selectedTools", buildRagTools(baseUrl));
+
+        byte[] json = objectMapper.writeValueAsBytes(callConfig);
+        log.debug("Compiled Ultravox call config for {}: {} bytes", baseUrl, json.length);
+        return Arrays.copyOf(json, json.length - 1);
+    }
+
+    /**
+     * Build RAG tool configuration for Ultravox.
+     * This tool allows Ultravox to call our RAG endpoint during conversation.
+     *
+     * ultravox.rag-tool-mode selects what the agent gets:
+     * "generate" - searchTextbook answers via the local RAG chat model,
+     * "retrieval" - searchTextbook returns raw textbook passages,
+     * "both" - searchTextbook generates and lookupTextbookPassages returns passages.
+     */
+    private List<Map<String, Object>> buildRagTools(String baseUrl) {
+        List<Map<String, Object>> tools = new ArrayList<>();
+
+        switch (ragToolMode) {
+            case "retrieval" -> tools.add(buildHttpTool(
+                    "searchTextbook",
+                    "Searches the textbook and returns the most relevant passages for the student's question. " +
+                            "Use this tool when the student asks about any topic from their textbook or course material, " +
+                            "then explain the answer in your own words based on the passages.",
+                    baseUrl + "/api/rag/passages"));
+            case "both" -> {
+                tools.add(buildHttpTool(
+                        "searchTextbook",
+                        "Searches the textbook to find relevant information to answer the student's question. " +
+                                "Use this tool when the student asks about any topic from their textbook or course material.",
+                        baseUrl + "/api/rag/query"));
+                tools.add(buildHttpTool(
+                        "lookupTextbookPassages",
+                        "Returns the exact textbook passages relevant to the student's question. " +
+                                "Use this tool for quick fact lookups such as definitions, names and dates.",
+                        baseUrl + "/api/rag/passages"));
+            }
+            default -> tools.add(buildHttpTool(
+                    "searchTextbook",
+                    "Searches the textbook to find relevant information to answer the student's question. " +
+                            "Use this tool when the student asks about any topic from their textbook or course material.",
+                    baseUrl + "/api/rag/query"));
+        }
+
+        log.debug("Configured {} RAG tool(s) in '{}' mode for base URL: {}", tools.size(), ragToolMode, baseUrl);
+        return tools;
+    }
+
+    /**
+     * Build a temporary HTTP tool that posts the student's question to one of
+     * our endpoints.
+     */
+    private Map<String, Object> buildHttpTool(String toolName, String description, String url) {
+        Map<String, Object> tool = new HashMap<>();
+        Map<String, Object> temporaryTool = new HashMap<>();
+
+        temporaryTool.put("modelToolName", toolName);
+        temporaryTool.put("description", description);
+
+        // Define parameters
+        List<Map<String, Object>> parameters = new ArrayList<>();
+
+        Map<String, Object> queryParam = new HashMap<>();
+        queryParam.put("name", "question");
+        queryParam.put("location", "PARAMETER_LOCATION_BODY");
+        queryParam.put("required", true);
+
+        Map<String, Object> schema = new HashMap<>();
+        schema.put("type", "string");
+        schema.put("description", "The student's question to search for in the textbook");
+        queryParam.put("schema", schema);
+        parameters.add(queryParam);
+
+        temporaryTool.put("dynamicParameters", parameters);
+
+        // Generating tools get their own latency budget, so the answer degrades before the caller hears dead air
+        if (ragToolBudgetMs > 0 && url.endsWith("/api/rag/query")) {
+            Map<String, Object> budgetParam = new HashMap<>();
+            budgetParam.put("name", "budgetMs");
+            budgetParam.put("location", "PARAMETER_LOCATION_BODY");
+            budgetParam.put("value", String.valueOf(ragToolBudgetMs));
+            temporaryTool.put("staticParameters", List.of(budgetParam));
+        }
+
+        // HTTP configuration - points to our endpoint
+        Map<String, Object> http = new HashMap<>();
+        http.put("baseUrlPattern", url);
+        http.put("httpMethod", "POST");
+        temporaryTool.put("http", http);
+
+        tool.put("temporaryTool", temporaryTool);
+        return tool;
+    }
+
+    private Timer renderTimer(String cache) {
+        return Timer.builder("ultravox.call.config.render")
+                .tag("cache", cache)
+                .description("Time to produce the request body for creating an Ultravox call")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -2,6 +2,9 @@ package dev.zisan.ultravox_twilio.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
@@ -9,11 +12,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.*;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Service for interacting with Ultravox Voice AI API.
- * Creates voice AI calls and configures RAG tools for textbook queries.
+ * Creates voice AI calls configured with RAG tools for textbook queries; the
+ * request bodies come precompiled from {@link UltravoxCallConfigTemplates}.
+ *
+ * Call creation sits between Twilio answering and the caller hearing the
+ * agent, so it runs under ultravox.create-call.deadline-ms and is hedged (see
+ * {@link HedgedHttpCall}): a slow POST /calls gets a second identical request,
+ * and a call created by the losing request is deleted again.
  */
 @Slf4j
 @Service
@@ -26,243 +37,59 @@ public class UltravoxService {
     @Value("${ultravox.api-url}")
     private String apiUrl;
 
-    @Value("${ultravox.model}")
-    private String model;
+    @Value("${ultravox.create-call.deadline-ms:4000}")
+    private long createCallDeadlineMs;
 
-    @Value("${ultravox.voice}")
-    private String voice;
+    @Value("${ultravox.create-call.hedge.enabled:true}")
+    private boolean hedgeEnabled;
 
-    @Value("${ultravox.temperature}")
-    private double temperature;
+    @Value("${ultravox.create-call.hedge.percentile:0.95}")
+    private double hedgePercentile;
 
-    @Value("${server.port:8080}")
-    private int serverPort;
+    @Value("${ultravox.create-call.hedge.initial-delay-ms:1500}")
+    private long hedgeInitialDelayMs;
 
-    private final ObjectMapper objectMapper;
-    private final OkHttpClient httpClient;
-
-    private static final String SYSTEM_PROMPT = """
-            # Education AI - System Prompt
-
-            ## Identity & Core Role
-
-            You are **Education AI**, an exceptionally knowledgeable and intelligent education tutor specializing in the **NCTB (National Curriculum and Textbook Board) Class 9-10 ICT (Information and Communication Technology)** curriculum from Bangladesh. You are speaking with students over voice, so respond conversationally and naturally as if you're their trusted, friendly teacher who knows every page of their textbook by heart.
-
-            You have deeply studied and memorized every chapter, every concept, every example, and every exercise from the ICT textbook. When students ask you questions, you answer with confidence and authority because you genuinely know the material inside out. You don't just recite information... you explain it in a way that makes students truly understand.
-
-            ---
-
-            ## Voice Interaction Guidelines
-
-            Since you are communicating through voice:
-
-            - Speak casually and warmly, like a friendly teacher talking to a student on the phone
-            - Keep responses concise but complete... aim for two to four sentences for simple questions, and break complex topics into digestible parts
-            - Never use bullet points, numbered lists, emojis, or any formatting that doesn't translate to speech
-            - Avoid stage directions like "pauses" or "laughs"... just speak naturally
-            - When saying numbers, say them clearly... for example, say "nine dash ten" instead of "9-10"
-            - Use natural pauses by including ellipses where appropriate
-            - Be encouraging and supportive... celebrate when students understand something
-            - If a student seems confused, offer to explain differently or give a simple example
-
-            ---
-
-            ## Your Personality & Teaching Style
-
-            You are:
-
-            - **Deeply knowledgeable**: You know every chapter, every topic, every subtopic of the ICT textbook. You can recall specific examples, definitions, and explanations from the book.
-            - **Patient and encouraging**: Learning technology concepts can be challenging. You never make students feel stupid for not knowing something.
-            - **Clear and articulate**: You explain complex technical concepts using simple, relatable Bangladeshi examples that students can connect with.
-            - **Confident but humble**: You speak with authority because you truly know the subject, but you're always ready to help students at their level.
-            - **Contextually aware**: You understand the Bangladeshi context... Digital Bangladesh initiatives, local examples, and how ICT affects life in Bangladesh.
-
-            ---
-
-            ## ICT Curriculum Mastery: Chapter-by-Chapter Deep Knowledge
-
-            ### Chapter 1: Information and Communication Technology and Our Bangladesh
-
-            You know this chapter covers the foundation of ICT and its connection to Bangladesh's development. When students ask about this chapter, you confidently explain:
-
-            **What ICT Is**:
-            ICT stands for Information and Communication Technology. It's the combination of technologies used to handle information and enable communication. The five main components are hardware, software, people, data, and network. Hardware includes physical devices like computers, smartphones, and tablets. Software refers to programs and applications that run on hardware. People are the users who operate and benefit from technology. Data is the raw information that gets processed into meaningful output. Network connects devices to share information.
-
-            **Digital Bangladesh Vision**:
-            The Digital Bangladesh vision was launched in two thousand eight with the goal of transforming Bangladesh into a digitally empowered nation by two thousand twenty-one. This includes e-governance services, digital literacy, connectivity, and developing the ICT industry. You know examples like the national web portal, online birth registration, and the a2i project.
-
-            **ICT in Bangladesh's Development**:
-            You can explain how ICT supports agriculture through apps that give farmers weather updates and market prices. In healthcare, telemedicine connects rural patients with city doctors. Education uses digital content and online learning platforms. E-commerce has grown with services like bKash and Nagad enabling mobile financial services.
-
-            **Digital Divide and Globalization**:
-            The digital divide refers to the gap between those who have access to technology and those who don't. In Bangladesh, rural areas often have less connectivity than cities. Globalization means the world is more connected through technology, and Bangladesh participates through outsourcing, call centers, and freelancing.
-
-            **Digital Citizenship and Ethics**:
-            This covers responsible use of technology, respecting others online, understanding the consequences of cyber activities, and following the ICT Act of Bangladesh.
-
-            ---
-
-            ### Chapter 2: Computer and the Internet
-
-            You have mastered all concepts about computer architecture and internet fundamentals:
-
-            **Computer Architecture**:
-            A computer has input devices like keyboard and mouse that receive data, a CPU or Central Processing Unit that processes data... which is often called the brain of the computer, memory that stores data temporarily in RAM or permanently in ROM, and output devices like monitor and printer that show results. Storage devices include hard disks, SSDs, and USB drives.
-
-            **System Software vs Application Software**:
-            System software like Windows or Linux manages the computer's hardware and provides a platform for other programs. Application software like Microsoft Word or browsers are programs users interact with directly to accomplish tasks.
-
-            **The Internet**:
-            The Internet is a global network connecting millions of computers. You explain connection types including dial-up, broadband, and mobile internet like three G and four G. Web browsers like Chrome and Firefox let users access websites. Search engines like Google help find information. Email allows electronic message exchange.
-
-            **Cloud Services**:
-            Cloud computing means storing and accessing data and programs over the internet instead of the computer's hard drive. Examples include Google Drive and Dropbox. This allows access from anywhere.
-
-            **Internet Safety**:
-            You teach students about creating strong passwords, not sharing personal information online, recognizing fake websites, and being careful with downloads.
-
-            ---
-
-            ### Chapter 3: Word Processing and Presentation
-
-            You are an expert in document and presentation creation:
-
-            **Word Processing**:
-            Word processors like Microsoft Word or LibreOffice Writer create text documents. You explain formatting text using bold, italic, and underline. Paragraph formatting includes alignment and spacing. Styles help maintain consistent formatting. Tables organize information in rows and columns. You can insert images and clip arts. Headers appear at the top of pages and footers at the bottom. Page setup includes margins and orientation. Printing options let you control the final output.
-
-            **Presentation Software**:
-            Programs like Microsoft PowerPoint or LibreOffice Impress create slideshows. You explain creating slides, adding text and images, using transitions between slides, and applying animations to elements. Good presentation design includes readable fonts, appropriate colors, and not overcrowding slides with information.
-
-            ---
-
-            ### Chapter 4: Data, Spreadsheet and Database Management
-
-            You deeply understand data handling concepts:
-
-            **Data and Information**:
-            Data refers to raw facts and figures that by themselves don't mean much. When data is processed and organized, it becomes information which is meaningful and useful. Types of data include numeric, text, date, and logical or true-false values.
-
-            **Spreadsheets**:
-            Spreadsheet programs like Microsoft Excel or LibreOffice Calc work with data in cells organized in rows and columns. Cell references use letters for columns and numbers for rows, like A1 or B5. Formulas perform calculations using operators like plus, minus, multiply, and divide. Functions are predefined formulas like SUM for adding numbers, AVERAGE for finding mean values, MAX for highest value, and MIN for lowest value. Charts visualize data as bar charts, pie charts, or line graphs.
-
-            **Databases**:
-            A database is an organized collection of data. Tables store related data with rows called records and columns called fields. A primary key is a unique identifier for each record... like a student ID number. Databases are used in schools for student records, in banks for account information, and in hospitals for patient data.
-
-            ---
-
-            ### Chapter 5: Programming and Programming Languages
-
-            You can explain programming concepts clearly:
-
-            **What is Programming**:
-            A program is a set of instructions that tells a computer what to do. A programming language is a formal language with specific rules that computers can understand. Computers need these formal instructions because they cannot understand human language directly.
-
-            **Problem Solving Steps**:
-            First, understand the problem clearly. Second, write an algorithm which is a step-by-step solution in plain language. Third, draw a flowchart which is a visual representation using shapes... ovals for start and end, rectangles for processes, diamonds for decisions, and parallelograms for input-output. Fourth, write the code in a programming language.
-
-            **Types of Programming Languages**:
-            Low-level languages like machine language and assembly are close to what the computer understands but difficult for humans. High-level languages like C, Python, and Java are easier for humans to read and write. Compilers translate the entire program at once, while interpreters translate line by line.
-
-            **Basic Programming Examples**:
-            You can explain simple programs that calculate sums by adding numbers, find averages by dividing the total by count, and make decisions using if-else conditions. For example, a program to check if a number is even or odd uses the modulus operator to find the remainder when dividing by two.
-
-            ---
-
-            ### Chapter 6: ICT in Everyday Life
-
-            You know practical real-world applications:
-
-            **E-Governance**:
-            E-governance uses ICT to deliver government services. In Bangladesh, examples include the national web portal bangladesh dot gov dot bd, online birth and death registration, land records digitization, and digital service centers at union parishads.
-
-            **E-Commerce**:
-            E-commerce is buying and selling online. In Bangladesh, platforms like Daraz and Evaly are examples. Mobile banking through bKash, Nagad, and Rocket allows money transfers without visiting banks.
-
-            **E-Learning**:
-            Online learning platforms provide education through the internet. Shikkhok Batayon offers teacher resources. Ten minute school and other platforms provide video lessons. This is especially important for reaching students in remote areas.
-
-            **E-Health**:
-            Telemedicine connects patients with doctors through video calls. Digital health records make patient information accessible. Mobile apps track health and provide medical information.
-
-            **Social Media**:
-            Platforms like Facebook connect people and share information. While useful for communication, students should use them responsibly.
-
-            **Benefits of ICT**:
-            Speed and efficiency in completing tasks. Convenience of accessing services from home. Transparency in government processes. New job opportunities in the tech sector.
-
-            **Risks of ICT**:
-            Online fraud and scams. Misinformation spreading quickly. Some traditional jobs being replaced by automation. Digital addiction affecting health and studies.
-
-            ---
-
-            ### Chapter 7: ICT Security and Ethical Use
-
-            You are knowledgeable about staying safe online:
-
-            **Security Threats**:
-            Viruses are malicious programs that can damage or delete files. Malware is software designed to harm computers. Phishing tricks users into revealing passwords by pretending to be legitimate websites. Password hacking tries to guess or steal login credentials. Data theft steals personal or sensitive information.
-
-            **Protection Methods**:
-            Install and update antivirus software. Use strong passwords with letters, numbers, and symbols. Enable two-factor authentication when available. Don't click suspicious links or download from unknown sources. Keep software and operating systems updated. Be careful when using public wifi.
-
-            **Cyber Ethics**:
-            Use social media responsibly without spreading rumors or hate. Respect others' privacy and don't share their information without permission. Avoid plagiarism by giving credit to original authors. Understand that online actions have real consequences.
-
-            **Cyber Laws in Bangladesh**:
-            The ICT Act and Digital Security Act outline rules for online behavior and consequences for cybercrimes. Hacking, spreading false information, and online harassment are punishable offenses.
-
-            **Digital Citizenship**:
-            Being a good digital citizen means using technology responsibly, respecting others online, protecting personal information, and contributing positively to online communities.
-
-            ---
+    @Value("${ultravox.create-call.hedge.min-delay-ms:300}")
+    private long hedgeMinDelayMs;
 
-            ## How to Handle Questions
+    // Call creations in flight at once, hedges included; more wait in OkHttp's queue
+    @Value("${ultravox.create-call.max-concurrent-requests:128}")
+    private int maxConcurrentRequests;
 
-            **CRITICAL RULE - Never Deny Access to Data**:
-            You must NEVER say that you don't have access to data from RAG or anything, couldn't retrieve information, or failed to get textbook content. You always have complete access to the NCTB ICT textbook. If asked any question, always respond confidently as if you have the full textbook right in front of you. Start your answers by naturally referencing the textbook content... for example say "Based on what the textbook covers..." or "From the ICT textbook, I can tell you that..." or simply dive straight into explaining the concept. Never use phrases like "I couldn't find this" or "I don't have access" or "the data wasn't available" or anything similar. You are the textbook... you know everything in it.
-
-            **When a student asks about a topic**:
-            Answer confidently because you know the textbook thoroughly. Provide clear explanations with examples from the Bangladeshi context. If appropriate, connect the topic to other related concepts in the curriculum. Always sound like you have instant access to all the information.
-
-            **When a student asks something outside the ICT curriculum**:
-            Politely mention that your specialty is ICT for class nine and ten, but you can try to help or suggest they ask their teacher for topics outside this subject. Do not say you lack data... just say your expertise is focused on ICT.
-
-            **When a student seems confused**:
-            Offer to explain the concept differently. Use a simple everyday example. Break down the explanation into smaller parts. Ask if they'd like you to repeat or clarify anything.
-
-            **When a student asks for exam tips**:
-            Share study strategies specific to ICT. Emphasize understanding concepts rather than memorizing. Suggest practicing the practical components like word processing and spreadsheets.
-
-            ---
-
-            ## Response Style Examples
-
-            If a student asks "What is a computer virus?"... you might say:
-            "A computer virus is a type of malicious software that can copy itself and spread from one computer to another. Just like a biological virus makes people sick, a computer virus can damage your files, slow down your computer, or even steal your personal information. This is why it's so important to have updated antivirus software and be careful about what you download. The ICT Security chapter covers this in detail!"
-
-            If a student asks "Can you explain RAM and ROM?"... you might say:
-            "Sure! RAM stands for Random Access Memory... it's temporary memory that stores data while you're working on something. When you turn off the computer, RAM gets cleared. ROM stands for Read Only Memory... it stores permanent instructions that the computer needs to start up, and this data doesn't disappear when power is off. Think of RAM like a whiteboard you use during class that gets erased at the end, and ROM like a textbook that stays the same forever."
-
-            ---
-
-            ## Important Reminders
-
-            - You are speaking through voice, so never use formatting that won't work in speech
-            - Be warm, encouraging, and make learning enjoyable
-            - You genuinely know this curriculum deeply... speak with that confidence
-            - Keep responses conversational and appropriately paced
-            - When you mention chapter or topic references, do so naturally as if recalling from memory
-            - Use Bangladeshi context and examples whenever possible to make concepts relatable
-            - If students ask about NCTB English books, you can help with those too as part of class nine curriculum
-
-            ---
-
-            ## Closing Note
-
-            You are not just reading from a textbook... you have internalized this knowledge and can discuss ICT topics as naturally as talking about your favorite subject. Students should feel like they're getting personalized tutoring from an expert who truly cares about their learning journey. Every interaction should leave them feeling more confident and knowledgeable about ICT.
+    private final ObjectMapper objectMapper;
+    private final OkHttpClient httpClient;
+    private final UltravoxCallConfigTemplates callConfigTemplates;
+    private final MeterRegistry meterRegistry;
+
+    private static final okhttp3.MediaType JSON = okhttp3.MediaType.parse("application/json");
+
+    private ScheduledExecutorService hedgeScheduler;
+    private HedgedHttpCall createCallRequests;
+
+    @PostConstruct
+    public void init() {
+        hedgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ultravox-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // OkHttp allows 64 requests and 5 per host by default; hedges would queue behind each other
+        Dispatcher dispatcher = new Dispatcher(httpClient.dispatcher().executorService());
+        dispatcher.setMaxRequests(maxConcurrentRequests);
+        dispatcher.setMaxRequestsPerHost(maxConcurrentRequests);
+        OkHttpClient createCallClient = httpClient.newBuilder().dispatcher(dispatcher).build();
+
+        createCallRequests = new HedgedHttpCall(createCallClient, hedgeScheduler, meterRegistry, "ultravox.call.create",
+                hedgeEnabled, hedgePercentile, Duration.ofMillis(hedgeInitialDelayMs),
+                Duration.ofMillis(hedgeMinDelayMs));
+        log.info("Ultravox call creation: deadline {} ms, hedging {}", createCallDeadlineMs,
+                hedgeEnabled ? "after p" + Math.round(hedgePercentile * 100) + " latency" : "disabled");
+    }
 
-            Welcome each student warmly and let them know you're here to help them master ICT!
-            """;
+    @PreDestroy
+    public void shutdown() {
+        hedgeScheduler.shutdownNow();
+    }
 
     /**
      * Create an Ultravox call with Twilio medium and RAG tool.
@@ -272,52 +99,7 @@ public class UltravoxService {
      * @return The joinUrl for Twilio to connect to
      */
     public String createCall(String callSid, String baseUrl) throws IOException {
-        log.info("Creating Ultravox call for CallSid: {}", callSid);
-
-        Map<String, Object> callConfig = new HashMap<>();
-        callConfig.put("systemPrompt", SYSTEM_PROMPT);
-        callConfig.put("model", model);
-        callConfig.put("voice", voice);
-        callConfig.put("temperature", temperature);
-        callConfig.put("firstSpeaker", "FIRST_SPEAKER_AGENT");
-
-        // Configure for Twilio WebSocket connection
-        Map<String, Object> medium = new HashMap<>();
-        medium.put("twilio", new HashMap<>());
-        callConfig.put("medium", medium);
-
-        // Add RAG tool configuration
-        callConfig.put("selectedTools", buildRagTools(baseUrl));
-
-        // Make API request to create call
-        String json = objectMapper.writeValueAsString(callConfig);
-        log.debug("Ultravox request body: {}", json);
-
-        RequestBody body = RequestBody.create(
-                json,
-                okhttp3.MediaType.parse("application/json"));
-
-        Request request = new Request.Builder()
-                .url(apiUrl + "/calls")
-                .post(body)
-                .addHeader("Content-Type", "application/json")
-                .addHeader("X-API-Key", apiKey)
-                .build();
-
-        try (Response response = httpClient.newCall(request).execute()) {
-            String responseBody = response.body() != null ? response.body().string() : "";
-
-            if (!response.isSuccessful()) {
-                log.error("Failed to create Ultravox call: {} - {}", response.code(), responseBody);
-                throw new IOException("Failed to create Ultravox call: " + response.code());
-            }
-
-            JsonNode responseJson = objectMapper.readTree(responseBody);
-            String joinUrl = responseJson.get("joinUrl").asText();
-
-            log.info("Ultravox call created. Join URL: {}", joinUrl);
-            return joinUrl;
-        }
+        return createCallWithId(callSid, baseUrl).joinUrl();
     }
 
     /**
@@ -327,7 +109,8 @@ public class UltravoxService {
     }
 
     /**
-     * Create an Ultravox call and return both call ID and join URL.
+     * Create an Ultravox call with the default profile and return both call
+     * ID and join URL.
      * This allows tracking the call for later transcript retrieval.
      *
      * @param callSid The Twilio call SID for reference
@@ -335,97 +118,103 @@ public class UltravoxService {
      * @return UltravoxCallResult containing callId and joinUrl
      */
     public UltravoxCallResult createCallWithId(String callSid, String baseUrl) throws IOException {
-        log.info("Creating Ultravox call for CallSid: {}", callSid);
-
-        Map<String, Object> callConfig = new HashMap<>();
-        callConfig.put("systemPrompt", SYSTEM_PROMPT);
-        callConfig.put("model", model);
-        callConfig.put("voice", voice);
-        callConfig.put("temperature", temperature);
-        callConfig.put("firstSpeaker", "FIRST_SPEAKER_AGENT");
+        return createCallWithId(callSid, baseUrl, null);
+    }
 
-        // Configure for Twilio WebSocket connection
-        Map<String, Object> medium = new HashMap<>();
-        medium.put("twilio", new HashMap<>());
-        callConfig.put("medium", medium);
+    /**
+     * Create an Ultravox call with the given profile.
+     *
+     * @param profile Name of an ultravox.profiles entry; null for the default
+     * @throws DeadlineExceededException if Ultravox did not answer within the
+     *                                   call creation deadline
+     */
+    public UltravoxCallResult createCallWithId(String callSid, String baseUrl, String profile) throws IOException {
+        log.info("Creating Ultravox call for CallSid: {} (profile: {})", callSid,
+                callConfigTemplates.resolveProfile(profile));
 
-        // Add RAG tool configuration
-        callConfig.put("selectedTools", buildRagTools(baseUrl));
+        byte[] json = callConfigTemplates.render(callSid, baseUrl, profile);
+        return postCall(json);
+    }
 
-        // Make API request to create call
-        String json = objectMapper.writeValueAsString(callConfig);
-        log.debug("Ultravox request body: {}", json);
+    /**
+     * Create a call ahead of time, before any Twilio call is waiting for it.
+     * The call has no Twilio call SID in its metadata.
+     *
+     * @param joinTimeout How long Ultravox keeps the call open for a join
+     */
+    public UltravoxCallResult createPooledCall(String baseUrl, String profile, Duration joinTimeout) throws IOException {
+        log.debug("Creating pooled Ultravox call (profile: {})", profile);
+        return postCall(callConfigTemplates.render(null, baseUrl, profile, joinTimeout));
+    }
 
-        RequestBody body = RequestBody.create(
-                json,
-                okhttp3.MediaType.parse("application/json"));
+    private UltravoxCallResult postCall(byte[] json) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Ultravox request body: {} bytes", json.length);
+        }
 
         Request request = new Request.Builder()
                 .url(apiUrl + "/calls")
-                .post(body)
+                .post(RequestBody.create(json, JSON))
                 .addHeader("Content-Type", "application/json")
                 .addHeader("X-API-Key", apiKey)
                 .build();
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            String responseBody = response.body() != null ? response.body().string() : "";
+        HedgedHttpCall.Result result = createCallRequests.execute(request,
+                Duration.ofMillis(createCallDeadlineMs), this::deleteDuplicateCall);
 
-            if (!response.isSuccessful()) {
-                log.error("Failed to create Ultravox call: {} - {}", response.code(), responseBody);
-                throw new IOException("Failed to create Ultravox call: " + response.code());
-            }
+        if (!result.isSuccessful()) {
+            log.error("Failed to create Ultravox call: {} - {}", result.code(), result.body());
+            throw new IOException("Failed to create Ultravox call: " + result.code());
+        }
 
-            JsonNode responseJson = objectMapper.readTree(responseBody);
-            String joinUrl = responseJson.get("joinUrl").asText();
-            String callId = responseJson.has("callId") ? responseJson.get("callId").asText()
-                    : (responseJson.has("uuid") ? responseJson.get("uuid").asText() : "unknown");
+        UltravoxCallResult call = parseCall(result.body());
+        log.info("Ultravox call created{} in {} ms. Call ID: {}, Join URL: {}", result.hedged() ? " by hedge" : "",
+                Duration.ofNanos(result.latencyNanos()).toMillis(), call.callId(), call.joinUrl());
+        return call;
+    }
 
-            log.info("Ultravox call created. Call ID: {}, Join URL: {}", callId, joinUrl);
-            return new UltravoxCallResult(callId, joinUrl);
-        }
+    private UltravoxCallResult parseCall(String responseBody) throws IOException {
+        JsonNode responseJson = objectMapper.readTree(responseBody);
+        String joinUrl = responseJson.get("joinUrl").asText();
+        String callId = responseJson.has("callId") ? responseJson.get("callId").asText()
+                : (responseJson.has("uuid") ? responseJson.get("uuid").asText() : "unknown");
+        return new UltravoxCallResult(callId, joinUrl);
     }
 
     /**
-     * Build RAG tool configuration for Ultravox.
-     * This tool allows Ultravox to call our RAG endpoint during conversation.
+     * Delete a call created by the request that lost a hedged race; nobody
+     * will ever join it.
      */
-    private List<Map<String, Object>> buildRagTools(String baseUrl) {
-        List<Map<String, Object>> tools = new ArrayList<>();
-
-        Map<String, Object> ragTool = new HashMap<>();
-        Map<String, Object> temporaryTool = new HashMap<>();
-
-        temporaryTool.put("modelToolName", "searchTextbook");
-        temporaryTool.put("description",
-                "Searches the textbook to find relevant information to answer the student's question. " +
-                        "Use this tool when the student asks about any topic from their textbook or course material.");
-
-        // Define parameters
-        List<Map<String, Object>> parameters = new ArrayList<>();
-
-        Map<String, Object> queryParam = new HashMap<>();
-        queryParam.put("name", "question");
-        queryParam.put("location", "PARAMETER_LOCATION_BODY");
-        queryParam.put("required", true);
-
-        Map<String, Object> schema = new HashMap<>();
-        schema.put("type", "string");
-        schema.put("description", "The student's question to search for in the textbook");
-        queryParam.put("schema", schema);
-        parameters.add(queryParam);
-
-        temporaryTool.put("dynamicParameters", parameters);
-
-        // HTTP configuration - points to our RAG endpoint
-        Map<String, Object> http = new HashMap<>();
-        http.put("baseUrlPattern", baseUrl + "/api/rag/query");
-        http.put("httpMethod", "POST");
-        temporaryTool.put("http", http);
+    private void deleteDuplicateCall(HedgedHttpCall.Result duplicate) {
+        try {
+            deleteCall(parseCall(duplicate.body()).callId(), "duplicate");
+        } catch (Exception e) {
+            log.warn("Could not read duplicate Ultravox call from hedged request: {}", e.getMessage());
+        }
+    }
 
-        ragTool.put("temporaryTool", temporaryTool);
-        tools.add(ragTool);
+    /**
+     * Delete an unjoined call in the background, best effort.
+     *
+     * @param reason Why the call is not needed, for the log
+     */
+    public void deleteCall(String callId, String reason) {
+        Request request = new Request.Builder()
+                .url(apiUrl + "/calls/" + callId)
+                .delete()
+                .addHeader("X-API-Key", apiKey)
+                .build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                log.info("Deleted {} Ultravox call {} ({})", reason, callId, response.code());
+            }
 
-        log.debug("Configured RAG tool with endpoint: {}/api/rag/query", baseUrl);
-        return tools;
+            @Override
+            public void onFailure(Call call, IOException e) {
+                log.warn("Failed to delete {} Ultravox call {}: {}", reason, callId, e.getMessage());
+            }
+        });
     }
 }
@@ -0,0 +1,351 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pre-created, unjoined Ultravox calls, so an incoming Twilio call can be
+ * connected without waiting for POST /calls.
+ *
+ * There is one pool per base URL, profile and active prompt template, since
+ * all three are baked into the call config; when a prompt variant is
+ * switched, sessions created with the old prompt are deleted instead of
+ * served. A pool is sized from the call arrival rate it has seen: enough
+ * sessions to cover the arrivals expected while a replacement is being
+ * created (times a headroom factor), between min-size and max-size, and none
+ * once no call has arrived for the rate window. Pooled calls are created with
+ * a long join timeout and discarded (and deleted) expiry-margin-seconds
+ * before it runs out.
+ *
+ * ultravox.session.pool.requests{result=hit|miss} gives the hit rate and
+ * ultravox.session.pool.wasted{reason=expired|stale|shutdown} against
+ * ultravox.session.pool.created the share of calls created for nothing.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UltravoxSessionPool {
+
+    private final UltravoxService ultravoxService;
+    private final UltravoxCallConfigTemplates callConfigTemplates;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ultravox.session-pool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ultravox.session-pool.min-size:1}")
+    private int minSize;
+
+    @Value("${ultravox.session-pool.max-size:5}")
+    private int maxSize;
+
+    @Value("${ultravox.session-pool.headroom:2.0}")
+    private double headroom;
+
+    @Value("${ultravox.session-pool.join-timeout-seconds:300}")
+    private long joinTimeoutSeconds;
+
+    @Value("${ultravox.session-pool.expiry-margin-seconds:30}")
+    private long expiryMarginSeconds;
+
+    @Value("${ultravox.session-pool.rate-window-seconds:600}")
+    private long rateWindowSeconds;
+
+    @Value("${ultravox.session-pool.refill-interval-ms:1000}")
+    private long refillIntervalMs;
+
+    // Base URLs come from forwarded headers, so the number of pools is capped
+    private static final int MAX_POOLS = 8;
+
+    // Short window for the arrival rate, so a burst grows the pool before the long window notices
+    private static final long BURST_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    // Assumed creation time until one has been measured
+    private static final double INITIAL_CREATE_SECONDS = 1.5;
+
+    private final Map<PoolKey, Pool> pools = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService refillScheduler;
+    private ExecutorService creators;
+    private volatile double createSeconds = INITIAL_CREATE_SECONDS;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter created;
+    private Counter createFailures;
+    private Counter expired;
+    private Counter stale;
+    private Counter unusedAtShutdown;
+    private DistributionSummary sessionAge;
+
+    private record PoolKey(String baseUrl, String profile, PromptTemplate prompt) {
+    }
+
+    private record PooledSession(UltravoxService.UltravoxCallResult call, long createdAt, long expiresAt) {
+    }
+
+    /**
+     * Ready sessions and recent arrivals of one base URL and profile.
+     */
+    private static final class Pool {
+        private final Deque<PooledSession> ready = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger creating = new AtomicInteger();
+        private final Deque<Long> arrivals = new ArrayDeque<>();
+        private volatile int target;
+
+        private synchronized void arrived(long now) {
+            arrivals.addLast(now);
+        }
+
+        /**
+         * Arrivals per second: the higher of the burst window and the full
+         * window rate. Drops arrivals older than the window.
+         */
+        private synchronized double arrivalRate(long now, long windowNanos) {
+            while (!arrivals.isEmpty() && now - arrivals.peekFirst() > windowNanos) {
+                arrivals.removeFirst();
+            }
+            long burst = arrivals.stream().filter(at -> now - at <= BURST_WINDOW_NANOS).count();
+            double windowRate = arrivals.size() / (windowNanos / 1e9);
+            double burstRate = burst / (BURST_WINDOW_NANOS / 1e9);
+            return Math.max(windowRate, burstRate);
+        }
+
+        private synchronized boolean idle() {
+            return arrivals.isEmpty();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        hits = requests("hit");
+        misses = requests("miss");
+        created = Counter.builder("ultravox.session.pool.created")
+                .description("Ultravox calls created for the session pool")
+                .register(meterRegistry);
+        createFailures = Counter.builder("ultravox.session.pool.create.failures")
+                .description("Failed attempts to create a pooled Ultravox call")
+                .register(meterRegistry);
+        expired = wasted("expired");
+        stale = wasted("stale");
+        unusedAtShutdown = wasted("shutdown");
+        sessionAge = DistributionSummary.builder("ultravox.session.pool.age")
+                .baseUnit("seconds")
+                .description("Age of pooled sessions when taken")
+                .register(meterRegistry);
+        Gauge.builder("ultravox.session.pool.ready", pools,
+                        p -> p.values().stream().mapToInt(pool -> pool.ready.size()).sum())
+                .description("Pooled Ultravox calls ready to be joined")
+                .register(meterRegistry);
+        Gauge.builder("ultravox.session.pool.target", pools,
+                        p -> p.values().stream().mapToInt(pool -> pool.target).sum())
+                .description("Pooled Ultravox calls wanted for the observed arrival rate")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        if (expiryMarginSeconds >= joinTimeoutSeconds) {
+            throw new IllegalStateException("ultravox.session-pool.expiry-margin-seconds must be below join-timeout-seconds");
+        }
+
+        refillScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ultravox-pool-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        creators = Executors.newFixedThreadPool(Math.max(1, Math.min(4, maxSize)), runnable -> {
+            Thread thread = new Thread(runnable, "ultravox-pool-create-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        refillScheduler.scheduleWithFixedDelay(this::refillSafely, refillIntervalMs, refillIntervalMs,
+                TimeUnit.MILLISECONDS);
+        log.info("Ultravox session pool enabled: {}-{} sessions per profile, join timeout {} s",
+                minSize, maxSize, joinTimeoutSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        refillScheduler.shutdownNow();
+        creators.shutdownNow();
+        pools.values().forEach(pool -> discardAll(pool, unusedAtShutdown, "unused pooled"));
+    }
+
+    /**
+     * Take a ready session for an incoming call.
+     *
+     * @param profile Requested profile; null for the default
+     * @return A pooled call, or empty if the pool is disabled or has none
+     *         ready, in which case the caller creates one itself
+     */
+    public Optional<UltravoxService.UltravoxCallResult> take(String baseUrl, String profile) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        PoolKey key = new PoolKey(baseUrl, callConfigTemplates.resolveProfile(profile),
+                callConfigTemplates.activePrompt(profile));
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            if (pools.size() >= MAX_POOLS) {
+                log.warn("Session pool limit reached, not pooling calls for {}", baseUrl);
+                misses.increment();
+                return Optional.empty();
+            }
+            pool = pools.computeIfAbsent(key, k -> new Pool());
+        }
+        pool.arrived(now);
+
+        PooledSession session;
+        while ((session = pool.ready.pollFirst()) != null) {
+            if (session.expiresAt() - now > 0) {
+                hits.increment();
+                sessionAge.record((now - session.createdAt()) / 1e9);
+                // Replace what was taken without waiting for the next refill
+                refillScheduler.execute(this::refillSafely);
+                log.info("Using pooled Ultravox call {}", session.call().callId());
+                return Optional.of(session.call());
+            }
+            discardExpired(session);
+        }
+
+        misses.increment();
+        refillScheduler.execute(this::refillSafely);
+        return Optional.empty();
+    }
+
+    private void refillSafely() {
+        try {
+            refill();
+        } catch (Exception e) {
+            log.warn("Session pool refill failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drop expired sessions and pools of a replaced prompt, and start
+     * creating sessions up to each pool's target.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        long windowNanos = TimeUnit.SECONDS.toNanos(rateWindowSeconds);
+
+        pools.forEach((key, pool) -> {
+            if (callConfigTemplates.activePrompt(key.profile()) != key.prompt()) {
+                pools.remove(key, pool);
+                discardAll(pool, stale, "stale pooled");
+                log.info("Prompt of profile {} changed, discarded its pooled sessions", key.profile());
+                return;
+            }
+
+            pool.ready.removeIf(session -> {
+                if (session.expiresAt() - now <= 0) {
+                    discardExpired(session);
+                    return true;
+                }
+                return false;
+            });
+
+            double rate = pool.arrivalRate(now, windowNanos);
+            pool.target = targetSize(rate);
+            if (pool.idle() && pool.ready.isEmpty() && pool.creating.get() == 0) {
+                pools.remove(key, pool);
+                return;
+            }
+
+            int missing = pool.target - pool.ready.size() - pool.creating.get();
+            for (int i = 0; i < missing; i++) {
+                pool.creating.incrementAndGet();
+                creators.execute(() -> create(key, pool));
+            }
+        });
+    }
+
+    /**
+     * Sessions needed to cover the arrivals expected while replacements are
+     * being created.
+     */
+    private int targetSize(double arrivalsPerSecond) {
+        if (arrivalsPerSecond <= 0) {
+            return 0;
+        }
+        int expected = (int) Math.ceil(arrivalsPerSecond * createSeconds * headroom);
+        return Math.max(minSize, Math.min(maxSize, expected));
+    }
+
+    private void create(PoolKey key, Pool pool) {
+        try {
+            long start = System.nanoTime();
+            UltravoxService.UltravoxCallResult call = ultravoxService.createPooledCall(key.baseUrl(), key.profile(),
+                    Duration.ofSeconds(joinTimeoutSeconds));
+            long now = System.nanoTime();
+            createSeconds = 0.8 * createSeconds + 0.2 * ((now - start) / 1e9);
+
+            long expiresAt = start + TimeUnit.SECONDS.toNanos(joinTimeoutSeconds - expiryMarginSeconds);
+            pool.ready.addLast(new PooledSession(call, now, expiresAt));
+            created.increment();
+            if (pools.get(key) != pool) {
+                // The pool was dropped for a prompt change while this call was being created
+                discardAll(pool, stale, "stale pooled");
+            }
+        } catch (Exception e) {
+            createFailures.increment();
+            log.warn("Could not create pooled Ultravox call for profile {}: {}", key.profile(), e.getMessage());
+        } finally {
+            pool.creating.decrementAndGet();
+        }
+    }
+
+    private void discardExpired(PooledSession session) {
+        expired.increment();
+        ultravoxService.deleteCall(session.call().callId(), "expired pooled");
+    }
+
+    private void discardAll(Pool pool, Counter reason, String description) {
+        PooledSession session;
+        while ((session = pool.ready.pollFirst()) != null) {
+            reason.increment();
+            ultravoxService.deleteCall(session.call().callId(), description);
+        }
+    }
+
+    private Counter wasted(String reason) {
+        return Counter.builder("ultravox.session.pool.wasted")
+                .tag("reason", reason)
+                .description("Pooled Ultravox calls discarded without being used")
+                .register(meterRegistry);
+    }
+
+    private Counter requests(String result) {
+        return Counter.builder("ultravox.session.pool.requests")
+                .tag("result", result)
+                .description("Incoming calls served from the session pool or not")
+                .register(meterRegistry);
+    }
+}
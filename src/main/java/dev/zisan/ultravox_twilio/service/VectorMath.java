@@ -0,0 +1,91 @@
+package dev.zisan.ultravox_twilio.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dot products over flat float arrays for in-process vector search.
+ * Uses the JDK Vector API when the jdk.incubator.vector module has been
+ * added to the JVM (--add-modules jdk.incubator.vector, set up by the Gradle
+ * build), and a plain scalar loop otherwise.
+ */
+@Slf4j
+final class VectorMath {
+
+    static final boolean SIMD_AVAILABLE = simdAvailable();
+
+    static {
+        log.info("Vector math using {}", SIMD_AVAILABLE ? "JDK Vector API" : "scalar fallback");
+    }
+
+    private VectorMath() {
+    }
+
+    /**
+     * Whether the Vector API kernels can run here. They are called once up
+     * front, so a vector shape this CPU lacks fails now, not on every search.
+     */
+    private static boolean simdAvailable() {
+        if (Boolean.getBoolean("rag.simd.disabled")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            SimdVectorMath.dot(new float[1], new float[1], 0, 1);
+            SimdVectorMath.dotInt8(new byte[1], new byte[1], 0, 1);
+            return true;
+        } catch (LinkageError | RuntimeException e) {
+            log.warn("JDK Vector API kernels failed to load, using scalar fallback", e);
+            return false;
+        }
+    }
+
+    /**
+     * Dot product of {@code query} with the row of {@code matrix} starting at
+     * {@code offset}.
+     */
+    static float dot(float[] query, float[] matrix, int offset, int length) {
+        if (SIMD_AVAILABLE) {
+            return SimdVectorMath.dot(query, matrix, offset, length);
+        }
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += query[i] * matrix[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Dot product of int8 codes: {@code query} with the row of {@code codes}
+     * starting at {@code offset}.
+     */
+    static int dotInt8(byte[] query, byte[] codes, int offset, int length) {
+        if (SIMD_AVAILABLE) {
+            return SimdVectorMath.dotInt8(query, codes, offset, length);
+        }
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += query[i] * codes[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Return a unit-length copy of a vector (all zeros stays all zeros).
+     */
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,140 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads pinned to their carrier thread.
+ * On Java 21 a virtual thread that blocks inside a synchronized block (as
+ * OkHttp's connection handling and the JDBC driver do) or a native frame
+ * cannot unmount, and holds a carrier the other virtual threads need. A JFR
+ * stream picks up jdk.VirtualThreadPinned events longer than the threshold,
+ * times them in jvm.threads.virtual.pinned by source (okhttp, jdbc, other)
+ * and logs each distinct pinning site once with its stack.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    // Distinct pinning sites logged with their stack; later ones are only counted
+    private static final int MAX_LOGGED_SITES = 50;
+
+    private static final int LOGGED_FRAMES = 12;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${diagnostics.virtual-thread-pinning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${diagnostics.virtual-thread-pinning.threshold-ms:20}")
+    private long thresholdMs;
+
+    private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || !virtualThreads) {
+            return;
+        }
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::pinned);
+            stream.startAsync();
+            log.info("Watching for virtual threads pinned longer than {} ms", thresholdMs);
+        } catch (Exception e) {
+            // JFR can be unavailable (e.g. some minimal runtimes); the app runs without the diagnostics
+            log.warn("Virtual thread pinning diagnostics unavailable: {}", e.getMessage());
+            stream = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void pinned(RecordedEvent event) {
+        List<RecordedFrame> frames = frames(event.getStackTrace());
+        String source = source(frames);
+        Timer.builder("jvm.threads.virtual.pinned")
+                .tag("source", source)
+                .description("Time virtual threads spent pinned to their carrier thread")
+                .register(meterRegistry)
+                .record(event.getDuration());
+
+        String site = site(frames);
+        if (loggedSites.size() < MAX_LOGGED_SITES && loggedSites.add(site)) {
+            log.warn("Virtual thread pinned for {} ms ({}) at:\n\t{}", event.getDuration().toMillis(), source,
+                    frames.stream().limit(LOGGED_FRAMES).map(this::describe).collect(Collectors.joining("\n\t")));
+        }
+    }
+
+    /**
+     * The library holding the carrier: the first OkHttp or JDBC frame on the
+     * stack, if any.
+     */
+    private static String source(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith("okhttp3.") || type.startsWith("okio.")) {
+                return "okhttp";
+            }
+            if (type.startsWith("org.postgresql.") || type.startsWith("com.zaxxer.hikari.")
+                    || type.startsWith("org.hibernate.")) {
+                return "jdbc";
+            }
+        }
+        return "other";
+    }
+
+    /**
+     * First frame outside the JDK, which tells pinning sites apart better
+     * than the park or wait call at the top.
+     */
+    private String site(List<RecordedFrame> frames) {
+        return frames.stream()
+                .filter(frame -> {
+                    String type = frame.getMethod().getType().getName();
+                    return !type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.");
+                })
+                .findFirst()
+                .or(() -> frames.stream().findFirst())
+                .map(this::describe)
+                .orElse("unknown");
+    }
+
+    private static List<RecordedFrame> frames(RecordedStackTrace stackTrace) {
+        return stackTrace != null ? stackTrace.getFrames() : List.of();
+    }
+
+    private String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
@@ -0,0 +1,67 @@
+package dev.zisan.ultravox_twilio.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * JDK Vector API kernels. Only loaded by {@link VectorMath} when the incubator
+ * module is present, so the class never fails to link on a JVM without it.
+ */
+final class SimdVectorMath {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+
+    // Bytes are widened to ints lane by lane. 64 bits is the smallest byte shape, so on
+    // 128-bit hardware one byte vector widens into two int vectors (parts 0 and 1).
+    private static final VectorSpecies<Byte> BYTE_SPECIES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.max(64, INT_SPECIES.vectorBitSize() / 4)));
+
+    private static final int INT_PARTS = BYTE_SPECIES.length() / INT_SPECIES.length();
+
+    private SimdVectorMath() {
+    }
+
+    static float dot(float[] query, float[] matrix, int offset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector q = FloatVector.fromArray(SPECIES, query, i);
+            FloatVector m = FloatVector.fromArray(SPECIES, matrix, offset + i);
+            acc = q.fma(m, acc);
+        }
+
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * matrix[offset + i];
+        }
+        return sum;
+    }
+
+    static int dotInt8(byte[] query, byte[] codes, int offset, int length) {
+        IntVector acc = IntVector.zero(INT_SPECIES);
+        int upperBound = BYTE_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upperBound; i += BYTE_SPECIES.length()) {
+            ByteVector q = ByteVector.fromArray(BYTE_SPECIES, query, i);
+            ByteVector c = ByteVector.fromArray(BYTE_SPECIES, codes, offset + i);
+            for (int part = 0; part < INT_PARTS; part++) {
+                IntVector qi = (IntVector) q.castShape(INT_SPECIES, part);
+                IntVector ci = (IntVector) c.castShape(INT_SPECIES, part);
+                acc = qi.mul(ci).add(acc);
+            }
+        }
+
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * codes[offset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,75 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.repository.VectorStoreChunkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class Bm25IndexTest {
+
+	private final VectorStoreChunkRepository chunkRepository = mock(VectorStoreChunkRepository.class);
+	private final Bm25Index index = new Bm25Index(chunkRepository);
+
+	@BeforeEach
+	void configure() {
+		ReflectionTestUtils.setField(index, "k1", 1.2);
+		ReflectionTestUtils.setField(index, "b", 0.75);
+		when(chunkRepository.tableExists()).thenReturn(true);
+	}
+
+	@Test
+	void changesDuringRebuildAreKept() {
+		when(chunkRepository.findAll()).thenAnswer(invocation -> {
+			// Ingestion and deletion finish while the table is being read
+			index.addAll(List.of(chunk("new", "spreadsheet SUM function")));
+			index.removeAll(List.of("deleted"));
+			return List.of(chunk("kept", "computer network basics"), chunk("deleted", "bKash mobile payment"));
+		});
+
+		index.rebuild();
+
+		assertThat(ids(index.search("spreadsheet", 10))).containsExactly("new");
+		assertThat(index.search("bKash", 10)).isEmpty();
+		assertThat(ids(index.search("network", 10))).containsExactly("kept");
+		assertThat(index.size()).isEqualTo(2);
+	}
+
+	@Test
+	void removedSlotsAreCompacted() {
+		List<Document> documents = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			documents.add(chunk("c" + i, "chunk number " + i + (i % 10 == 0 ? " spreadsheet" : " network")));
+		}
+		index.addAll(documents);
+		List<String> removed = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			if (i % 10 != 0) {
+				removed.add("c" + i);
+			}
+		}
+		index.removeAll(removed);
+
+		@SuppressWarnings("unchecked")
+		List<Document> slots = (List<Document>) ReflectionTestUtils.getField(index, "chunks");
+		assertThat(slots).hasSize(100).doesNotContainNull();
+		assertThat(index.size()).isEqualTo(100);
+		assertThat(index.search("spreadsheet", 200)).hasSize(100);
+		assertThat(index.search("network", 10)).isEmpty();
+	}
+
+	private static Document chunk(String id, String text) {
+		return Document.builder().id(id).text(text).build();
+	}
+
+	private static List<String> ids(List<Document> documents) {
+		return documents.stream().map(Document::getId).toList();
+	}
+}
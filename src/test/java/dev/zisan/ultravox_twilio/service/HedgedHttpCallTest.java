@@ -0,0 +1,212 @@
+package dev.zisan.ultravox_twilio.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs hedged requests against a local stand-in for the Ultravox API.
+ */
+class HedgedHttpCallTest {
+
+	private static final Duration HEDGE_DELAY = Duration.ofMillis(200);
+
+	private final OkHttpClient client = new OkHttpClient();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final List<HedgedHttpCall.Result> discarded = new CopyOnWriteArrayList<>();
+
+	private MockWebServer server;
+	private ScheduledExecutorService scheduler;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = new MockWebServer();
+		server.start();
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		scheduler.shutdownNow();
+		server.close();
+	}
+
+	@Test
+	void fastPrimaryIsNotHedged() throws IOException {
+		server.enqueue(response(201, "{\"callId\":\"primary\"}", 0));
+
+		HedgedHttpCall.Result result = hedged(true).execute(request(), Duration.ofSeconds(2), discarded::add);
+
+		assertThat(result.code()).isEqualTo(201);
+		assertThat(result.body()).contains("primary");
+		assertThat(result.hedged()).isFalse();
+		assertThat(server.getRequestCount()).isEqualTo(1);
+		assertThat(meterRegistry.get("ultravox.call.create").tag("outcome", "primary").timer().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("ultravox.call.create.hedges").counter().count()).isZero();
+	}
+
+	@Test
+	void slowPrimaryIsHedgedAndHedgeWins() throws IOException {
+		server.enqueue(response(201, "{\"callId\":\"primary\"}", 1500));
+		server.enqueue(response(201, "{\"callId\":\"hedge\"}", 0));
+
+		long start = System.nanoTime();
+		HedgedHttpCall.Result result = hedged(true).execute(request(), Duration.ofSeconds(3), discarded::add);
+		long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+		assertThat(result.body()).contains("hedge");
+		assertThat(result.hedged()).isTrue();
+		assertThat(elapsedMs).isGreaterThanOrEqualTo(HEDGE_DELAY.toMillis()).isLessThan(1500);
+		assertThat(server.getRequestCount()).isEqualTo(2);
+		assertThat(meterRegistry.get("ultravox.call.create").tag("outcome", "hedge").timer().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("ultravox.call.create.hedges").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void failedPrimaryIsHedgedWithoutWaiting() throws IOException {
+		server.enqueue(response(500, "{\"error\":\"unavailable\"}", 0));
+		server.enqueue(response(201, "{\"callId\":\"hedge\"}", 0));
+
+		long start = System.nanoTime();
+		HedgedHttpCall.Result result = hedged(true).execute(request(), Duration.ofSeconds(2), discarded::add);
+		long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+		assertThat(result.code()).isEqualTo(201);
+		assertThat(result.hedged()).isTrue();
+		assertThat(elapsedMs).isLessThan(HEDGE_DELAY.toMillis());
+	}
+
+	@Test
+	void losingSuccessIsDiscarded() throws IOException, InterruptedException {
+		server.enqueue(response(201, "{\"callId\":\"primary\"}", 800));
+		server.enqueue(response(201, "{\"callId\":\"hedge\"}", 0));
+
+		HedgedHttpCall.Result result = hedged(true).execute(request(), Duration.ofSeconds(3), discarded::add);
+
+		assertThat(result.body()).contains("hedge");
+		// The primary is still in flight when the hedge wins and lands afterwards
+		awaitDiscarded(1);
+		assertThat(discarded).singleElement().satisfies(loser -> {
+			assertThat(loser.body()).contains("primary");
+			assertThat(loser.hedged()).isFalse();
+		});
+	}
+
+	@Test
+	void successesAfterTheDeadlineAreDiscarded() throws InterruptedException {
+		server.enqueue(response(201, "{\"callId\":\"primary\"}", 800));
+		server.enqueue(response(201, "{\"callId\":\"hedge\"}", 800));
+
+		assertThatThrownBy(() -> hedged(true).execute(request(), Duration.ofMillis(400), discarded::add))
+				.isInstanceOf(DeadlineExceededException.class);
+
+		awaitDiscarded(2);
+		assertThat(discarded).extracting(HedgedHttpCall.Result::body)
+				.anySatisfy(body -> assertThat(body).contains("primary"))
+				.anySatisfy(body -> assertThat(body).contains("hedge"));
+	}
+
+	@Test
+	void clientErrorIsReturnedWithoutHedging() throws IOException {
+		server.enqueue(response(429, "{\"error\":\"rate limited\"}", 0));
+		server.enqueue(response(201, "{\"callId\":\"hedge\"}", 0));
+
+		HedgedHttpCall.Result result = hedged(true).execute(request(), Duration.ofSeconds(2), discarded::add);
+
+		assertThat(result.code()).isEqualTo(429);
+		assertThat(result.hedged()).isFalse();
+		assertThat(server.getRequestCount()).isEqualTo(1);
+		assertThat(meterRegistry.get("ultravox.call.create.hedges").counter().count()).isZero();
+	}
+
+	@Test
+	void missedDeadlineThrows() {
+		server.enqueue(response(201, "{\"callId\":\"primary\"}", 2000));
+		server.enqueue(response(201, "{\"callId\":\"hedge\"}", 2000));
+
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> hedged(true).execute(request(), Duration.ofMillis(500), discarded::add))
+				.isInstanceOf(DeadlineExceededException.class);
+		long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+		assertThat(elapsedMs).isLessThan(1500);
+		assertThat(meterRegistry.get("ultravox.call.create").tag("outcome", "deadline").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void failureIsReturnedWhenAllAttemptsFail() throws IOException {
+		server.enqueue(response(500, "{\"error\":\"first\"}", 0));
+		server.enqueue(response(503, "{\"error\":\"second\"}", 0));
+
+		HedgedHttpCall.Result result = hedged(true).execute(request(), Duration.ofSeconds(2), discarded::add);
+
+		assertThat(result.isSuccessful()).isFalse();
+		assertThat(server.getRequestCount()).isEqualTo(2);
+		assertThat(meterRegistry.get("ultravox.call.create").tag("outcome", "failed").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void disabledHedgingSendsOneRequest() {
+		server.enqueue(response(201, "{\"callId\":\"primary\"}", 1500));
+		server.enqueue(response(201, "{\"callId\":\"hedge\"}", 0));
+
+		assertThatThrownBy(() -> hedged(false).execute(request(), Duration.ofMillis(800), discarded::add))
+				.isInstanceOf(DeadlineExceededException.class);
+		assertThat(server.getRequestCount()).isEqualTo(1);
+	}
+
+	@Test
+	void hedgeDelayFollowsObservedLatency() throws IOException {
+		HedgedHttpCall call = hedged(true);
+		assertThat(call.hedgeDelay()).isEqualTo(HEDGE_DELAY);
+
+		for (int i = 0; i < 20; i++) {
+			server.enqueue(response(201, "{}", 0));
+			call.execute(request(), Duration.ofSeconds(2), discarded::add);
+		}
+
+		// Local responses are far faster than the initial delay
+		assertThat(call.hedgeDelay()).isLessThan(HEDGE_DELAY).isGreaterThanOrEqualTo(Duration.ofMillis(20));
+	}
+
+	private void awaitDiscarded(int count) throws InterruptedException {
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (discarded.size() < count && System.nanoTime() < end) {
+			Thread.sleep(20);
+		}
+		assertThat(discarded).hasSize(count);
+	}
+
+	private HedgedHttpCall hedged(boolean enabled) {
+		return new HedgedHttpCall(client, scheduler, meterRegistry, "ultravox.call.create", enabled, 0.95,
+				HEDGE_DELAY, Duration.ofMillis(20));
+	}
+
+	private Request request() {
+		return new Request.Builder().url(server.url("/calls")).get().build();
+	}
+
+	private static MockResponse response(int code, String body, long delayMs) {
+		return new MockResponse.Builder()
+				.code(code)
+				.body(body)
+				.headersDelay(delayMs, TimeUnit.MILLISECONDS)
+				.build();
+	}
+}
@@ -0,0 +1,72 @@
+package dev.zisan.ultravox_twilio.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the Vector API kernels against plain loops, over lengths that are
+ * and are not a multiple of the vector width and at unaligned row offsets.
+ */
+class SimdVectorMathTest {
+
+	@BeforeEach
+	void requireVectorApi() {
+		assumeTrue(VectorMath.SIMD_AVAILABLE, "jdk.incubator.vector is not on this JVM");
+	}
+
+	@Test
+	void dotInt8MatchesScalar() {
+		Random random = new Random(42);
+		for (int round = 0; round < 500; round++) {
+			int length = random.nextInt(400);
+			int offset = random.nextInt(8);
+			byte[] query = new byte[length];
+			byte[] codes = new byte[offset + length];
+			random.nextBytes(query);
+			random.nextBytes(codes);
+
+			int expected = 0;
+			for (int i = 0; i < length; i++) {
+				expected += query[i] * codes[offset + i];
+			}
+
+			assertThat(SimdVectorMath.dotInt8(query, codes, offset, length)).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	void dotInt8HandlesExtremeCodes() {
+		byte[] query = new byte[384];
+		byte[] codes = new byte[384];
+		Arrays.fill(query, Byte.MIN_VALUE);
+		Arrays.fill(codes, Byte.MIN_VALUE);
+
+		assertThat(SimdVectorMath.dotInt8(query, codes, 0, 384)).isEqualTo(384 * 128 * 128);
+	}
+
+	@Test
+	void dotMatchesScalar() {
+		Random random = new Random(7);
+		for (int round = 0; round < 500; round++) {
+			int length = random.nextInt(400);
+			int offset = random.nextInt(8);
+			float[] query = new float[length];
+			float[] matrix = new float[offset + length];
+			double expected = 0;
+			for (int i = 0; i < length; i++) {
+				query[i] = random.nextFloat() * 2 - 1;
+				matrix[offset + i] = random.nextFloat() * 2 - 1;
+				expected += (double) query[i] * matrix[offset + i];
+			}
+
+			assertThat(SimdVectorMath.dot(query, matrix, offset, length)).isCloseTo((float) expected, within(1e-3f));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package dev.zisan.ultravox_twilio.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingChunkerTest {
+
+	private static final String[] WORDS = {
+			"computer", "network", "the", "ICT", "a", "of", "spreadsheet", "SUM", "function", "bKash",
+			"\u0995\u09ae\u09cd\u09aa\u09bf\u0989\u099f\u09be\u09b0", "internet", "data", "is", "and", "e-mail" };
+
+	private static final String[] SEPARATORS = {
+			" ", " ", " ", " ", "  ", "\n", "\r\n", "\t", " \n\n ", ". ", "? ", "! ", ".", ", ", "\u000B", "\f",
+			"\u0000", " \u0001 " };
+
+	@Test
+	void matchesLegacySplitterOnRandomText() {
+		Random random = new Random(42);
+		for (int round = 0; round < 300; round++) {
+			String text = randomText(random, random.nextInt(12000), random.nextInt(4));
+			assertParity(text, random);
+		}
+	}
+
+	@Test
+	void matchesLegacySplitterOnEdgeCases() {
+		Random random = new Random(7);
+		assertParity("", random);
+		assertParity("   \n\t  ", random);
+		assertParity("Too short to become a chunk.", random);
+		assertParity("\u0000 \u0001 leading control characters and a sentence that is long enough to keep.", random);
+		assertParity("x".repeat(1000), random);
+		assertParity("x".repeat(1001), random);
+		assertParity("x".repeat(999) + ".y" + "z".repeat(500), random);
+		assertParity("x".repeat(1000) + "." + "z".repeat(500), random);
+		assertParity("x".repeat(900) + "." + "z".repeat(2000), random);
+		assertParity("x".repeat(901) + "." + "z".repeat(2000), random);
+		assertParity(("word ".repeat(30) + "\n\n   \t").repeat(40) + " \u0002 \n", random);
+		// Punctuation-poor text: the legacy splitter scans all the way back on every chunk
+		assertParity("a".repeat(20) + "." + "b ".repeat(5000), random);
+	}
+
+	@Test
+	void stopsAtTheSameChunkLimitAsTheLegacySplitter() {
+		// All three sentence ends occur often, so the legacy lastIndexOf scans stay short
+		String text = "Is this regular? Yes! The sentence ends keep chunk boundaries regular. ".repeat(120_000);
+		Random random = new Random(3);
+
+		List<String> legacy = legacySplit(text);
+		List<String> streamed = streamedSplit(text, random);
+
+		assertThat(legacy).hasSize(StreamingChunker.MAX_CHUNKS + 1);
+		assertThat(streamed).isEqualTo(legacy);
+	}
+
+	private static void assertParity(String text, Random random) {
+		assertThat(streamedSplit(text, random)).isEqualTo(legacySplit(text));
+	}
+
+	/**
+	 * Feed the chunker in random slices, like extracted pages arriving.
+	 */
+	private static List<String> streamedSplit(String text, Random random) {
+		StreamingChunker chunker = new StreamingChunker();
+		List<String> chunks = new ArrayList<>();
+		int offset = 0;
+		while (offset < text.length()) {
+			int end = Math.min(text.length(), offset + 1 + random.nextInt(3000));
+			chunks.addAll(chunker.append(text.substring(offset, end)));
+			offset = end;
+		}
+		chunks.addAll(chunker.finish());
+		assertThat(chunker.getChunkCount()).isEqualTo(chunks.size());
+		return chunks;
+	}
+
+	private static String randomText(Random random, int approximateLength, int punctuationBias) {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < approximateLength) {
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+			// Some texts have almost no sentence ends
+			String separator = SEPARATORS[random.nextInt(SEPARATORS.length)];
+			if (punctuationBias == 0 && (separator.contains(".") || separator.contains("?") || separator.contains("!"))) {
+				separator = " ";
+			}
+			text.append(separator);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * The whole-document splitter StreamingChunker replaced, kept verbatim as
+	 * the parity reference.
+	 */
+	private static List<String> legacySplit(String text) {
+		List<String> chunks = new ArrayList<>();
+
+		// Clean and normalize text
+		text = text.replaceAll("\\s+", " ").trim();
+
+		if (text.isEmpty()) {
+			return chunks;
+		}
+
+		int textLength = text.length();
+		int start = 0;
+
+		while (start < textLength) {
+			// Calculate end position
+			int end = Math.min(start + 1000, textLength);
+
+			// Try to break at sentence boundary (only if not at the very end)
+			if (end < textLength) {
+				// Look for sentence boundary in the last 100 chars of the chunk
+				int searchStart = Math.max(start, end - 100);
+				int lastPeriod = text.lastIndexOf('.', end);
+				int lastQuestion = text.lastIndexOf('?', end);
+				int lastExclamation = text.lastIndexOf('!', end);
+
+				int breakPoint = Math.max(lastPeriod, Math.max(lastQuestion, lastExclamation));
+
+				// Only use break point if it's within the search window
+				if (breakPoint > searchStart) {
+					end = breakPoint + 1;
+				}
+			}
+
+			// Extract the chunk
+			String chunk = text.substring(start, end).trim();
+			if (!chunk.isEmpty() && chunk.length() > 50) {
+				chunks.add(chunk);
+			}
+
+			// Move to next position with overlap
+			// IMPORTANT: Always advance start to prevent infinite loop
+			int nextStart = end - 200;
+			if (nextStart <= start) {
+				// If we're not making progress, just move to end
+				start = end;
+			} else {
+				start = nextStart;
+			}
+
+			// Safety check: if we've processed enough chunks, break
+			if (chunks.size() > 10000) {
+				break;
+			}
+		}
+
+		return chunks;
+	}
+}
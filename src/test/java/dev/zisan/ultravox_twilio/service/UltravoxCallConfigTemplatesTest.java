@@ -0,0 +1,177 @@
+package dev.zisan.ultravox_twilio.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the precompiled call config is the body the map-built request
+ * used to send, plus the per-call fields appended to it.
+ */
+class UltravoxCallConfigTemplatesTest {
+
+	private static final String BASE_URL = "https://tutor.example.com";
+	private static final String CALL_SID = "CA0123456789abcdef\"quoted\"";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final MockEnvironment environment = new MockEnvironment();
+
+	private PromptRegistry promptRegistry;
+
+	@BeforeEach
+	void loadPrompts() throws IOException {
+		promptRegistry = new PromptRegistry(environment, meterRegistry);
+		promptRegistry.init();
+	}
+
+	@Test
+	void renderedBodyMatchesMapBuiltBody() throws IOException {
+		UltravoxCallConfigTemplates templates = templates("generate", 0);
+
+		JsonNode rendered = objectMapper.readTree(templates.render(CALL_SID, BASE_URL, null));
+
+		assertThat(rendered.path("metadata").path("twilioCallSid").asText()).isEqualTo(CALL_SID);
+		assertThat(rendered.has("joinTimeout")).isFalse();
+		assertThat(withoutPerCallFields(rendered)).isEqualTo(legacyBody("generate", 0));
+	}
+
+	@Test
+	void renderedBodyWithJoinTimeoutMatchesMapBuiltBody() throws IOException {
+		UltravoxCallConfigTemplates templates = templates("both", 3000);
+
+		JsonNode rendered = objectMapper.readTree(
+				templates.render(null, BASE_URL, null, Duration.ofSeconds(300)));
+
+		assertThat(rendered.path("joinTimeout").asText()).isEqualTo("300s");
+		assertThat(rendered.path("metadata").path("twilioCallSid").asText()).isEmpty();
+		assertThat(withoutPerCallFields(rendered)).isEqualTo(legacyBody("both", 3000));
+	}
+
+	@Test
+	void cachedTemplateRendersTheSameBody() throws IOException {
+		UltravoxCallConfigTemplates templates = templates("retrieval", 0);
+
+		JsonNode first = objectMapper.readTree(templates.render(CALL_SID, BASE_URL, null));
+		JsonNode second = objectMapper.readTree(templates.render(CALL_SID, BASE_URL, null));
+
+		assertThat(second).isEqualTo(first);
+		assertThat(withoutPerCallFields(second)).isEqualTo(legacyBody("retrieval", 0));
+	}
+
+	private UltravoxCallConfigTemplates templates(String ragToolMode, long ragToolBudgetMs) {
+		UltravoxCallConfigTemplates templates = new UltravoxCallConfigTemplates(objectMapper, promptRegistry,
+				environment, meterRegistry);
+		ReflectionTestUtils.setField(templates, "model", "fixie-ai/ultravox");
+		ReflectionTestUtils.setField(templates, "voice", "Conversationalist-English");
+		ReflectionTestUtils.setField(templates, "temperature", 0.3);
+		ReflectionTestUtils.setField(templates, "ragToolMode", ragToolMode);
+		ReflectionTestUtils.setField(templates, "ragToolBudgetMs", ragToolBudgetMs);
+		ReflectionTestUtils.setField(templates, "defaultProfile", UltravoxCallConfigTemplates.DEFAULT_PROFILE);
+		templates.init();
+		return templates;
+	}
+
+	private static JsonNode withoutPerCallFields(JsonNode rendered) {
+		ObjectNode body = rendered.deepCopy();
+		body.remove("metadata");
+		body.remove("joinTimeout");
+		return body;
+	}
+
+	/**
+	 * The request body as UltravoxService built it before the templates, from
+	 * nested maps on every call.
+	 */
+	private JsonNode legacyBody(String ragToolMode, long ragToolBudgetMs) {
+		Map<String, Object> callConfig = new HashMap<>();
+		callConfig.put("systemPrompt", promptRegistry.render(PromptRegistry.Use.VOICE_AGENT, PromptRegistry.TUTOR));
+		callConfig.put("model", "fixie-ai/ultravox");
+		callConfig.put("voice", "Conversationalist-English");
+		callConfig.put("temperature", 0.3);
+		callConfig.put("firstSpeaker", "FIRST_SPEAKER_AGENT");
+
+		Map<String, Object> medium = new HashMap<>();
+		medium.put("twilio", new HashMap<>());
+		callConfig.put("medium", medium);
+
+		callConfig.put("selectedTools", legacyTools(ragToolMode, ragToolBudgetMs));
+		return objectMapper.valueToTree(callConfig);
+	}
+
+	private static List<Map<String, Object>> legacyTools(String ragToolMode, long ragToolBudgetMs) {
+		List<Map<String, Object>> tools = new ArrayList<>();
+		switch (ragToolMode) {
+			case "retrieval" -> tools.add(legacyTool(
+					"searchTextbook",
+					"Searches the textbook and returns the most relevant passages for the student's question. " +
+							"Use this tool when the student asks about any topic from their textbook or course material, " +
+							"then explain the answer in your own words based on the passages.",
+					BASE_URL + "/api/rag/passages", ragToolBudgetMs));
+			case "both" -> {
+				tools.add(legacyTool(
+						"searchTextbook",
+						"Searches the textbook to find relevant information to answer the student's question. " +
+								"Use this tool when the student asks about any topic from their textbook or course material.",
+						BASE_URL + "/api/rag/query", ragToolBudgetMs));
+				tools.add(legacyTool(
+						"lookupTextbookPassages",
+						"Returns the exact textbook passages relevant to the student's question. " +
+								"Use this tool for quick fact lookups such as definitions, names and dates.",
+						BASE_URL + "/api/rag/passages", ragToolBudgetMs));
+			}
+			default -> tools.add(legacyTool(
+					"searchTextbook",
+					"Searches the textbook to find relevant information to answer the student's question. " +
+							"Use this tool when the student asks about any topic from their textbook or course material.",
+					BASE_URL + "/api/rag/query", ragToolBudgetMs));
+		}
+		return tools;
+	}
+
+	private static Map<String, Object> legacyTool(String toolName, String description, String url,
+			long ragToolBudgetMs) {
+		Map<String, Object> temporaryTool = new HashMap<>();
+		temporaryTool.put("modelToolName", toolName);
+		temporaryTool.put("description", description);
+
+		Map<String, Object> schema = new HashMap<>();
+		schema.put("type", "string");
+		schema.put("description", "The student's question to search for in the textbook");
+		Map<String, Object> queryParam = new HashMap<>();
+		queryParam.put("name", "question");
+		queryParam.put("location", "PARAMETER_LOCATION_BODY");
+		queryParam.put("required", true);
+		queryParam.put("schema", schema);
+		temporaryTool.put("dynamicParameters", List.of(queryParam));
+
+		if (ragToolBudgetMs > 0 && url.endsWith("/api/rag/query")) {
+			Map<String, Object> budgetParam = new HashMap<>();
+			budgetParam.put("name", "budgetMs");
+			budgetParam.put("location", "PARAMETER_LOCATION_BODY");
+			budgetParam.put("value", String.valueOf(ragToolBudgetMs));
+			temporaryTool.put("staticParameters", List.of(budgetParam));
+		}
+
+		Map<String, Object> http = new HashMap<>();
+		http.put("baseUrlPattern", url);
+		http.put("httpMethod", "POST");
+		temporaryTool.put("http", http);
+
+		return Map.of("temporaryTool", temporaryTool);
+	}
+}
@@ -0,0 +1,196 @@
+package dev.zisan.ultravox_twilio.service;
+
+import dev.zisan.ultravox_twilio.config.HttpClientConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mockwebserver3.Dispatcher;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Concurrent-call capacity of the incoming-call path with platform and with
+ * virtual request threads, on the same machine. Each simulated webhook calls
+ * UltravoxService.createCallWithId, as handleIncomingCall does, against a
+ * local Ultravox stand-in that answers after a fixed delay; the OkHttp client
+ * is the application's, built for the thread mode under test. Hedging is off
+ * and the request cap is raised to load.calls, so the request threads are
+ * what limits capacity.
+ *
+ * Run with ./gradlew loadTest; load.calls, load.platform-threads (Tomcat's
+ * default maximum) and load.ultravox-delay-ms are system properties.
+ */
+@Tag("load")
+class VirtualThreadCapacityLoadTest {
+
+	private static final int CALLS = Integer.getInteger("load.calls", 400);
+	private static final int PLATFORM_THREADS = Integer.getInteger("load.platform-threads", 200);
+	private static final long ULTRAVOX_DELAY_MS = Long.getLong("load.ultravox-delay-ms", 500);
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger peakInFlight = new AtomicInteger();
+
+	private MockWebServer ultravox;
+	private UltravoxService ultravoxService;
+
+	private record Capacity(String mode, int completed, int failed, int peakConcurrent, long wallMs, long p50Ms,
+			long p99Ms) {
+
+		double callsPerSecond() {
+			return completed * 1000.0 / Math.max(1, wallMs);
+		}
+	}
+
+	@BeforeEach
+	void start() throws IOException {
+		ultravox = new MockWebServer();
+		ultravox.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(ULTRAVOX_DELAY_MS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					inFlight.decrementAndGet();
+				}
+				return new MockResponse.Builder()
+						.code(201)
+						.body("{\"callId\":\"load\",\"joinUrl\":\"wss://example.invalid/join\"}")
+						.build();
+			}
+		});
+		ultravox.start();
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		if (ultravoxService != null) {
+			ultravoxService.shutdown();
+		}
+		ultravox.close();
+	}
+
+	@Test
+	void virtualThreadsServeMoreConcurrentCalls() throws IOException, InterruptedException {
+		Capacity platform;
+		ultravoxService = ultravoxService(false);
+		try (ExecutorService executor = Executors.newFixedThreadPool(PLATFORM_THREADS)) {
+			platform = run("platform (" + PLATFORM_THREADS + " threads)", executor);
+		}
+		ultravoxService.shutdown();
+
+		Capacity virtual;
+		ultravoxService = ultravoxService(true);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			virtual = run("virtual", executor);
+		}
+
+		System.out.printf("%n%d calls, Ultravox answering in %d ms%n", CALLS, ULTRAVOX_DELAY_MS);
+		System.out.printf("%-24s %9s %6s %10s %8s %8s %8s %9s%n",
+				"mode", "completed", "failed", "concurrent", "wall ms", "p50 ms", "p99 ms", "calls/s");
+		for (Capacity capacity : List.of(platform, virtual)) {
+			System.out.printf("%-24s %9d %6d %10d %8d %8d %8d %9.1f%n", capacity.mode(), capacity.completed(),
+					capacity.failed(), capacity.peakConcurrent(), capacity.wallMs(), capacity.p50Ms(),
+					capacity.p99Ms(), capacity.callsPerSecond());
+		}
+
+		assertThat(platform.completed()).isEqualTo(CALLS);
+		assertThat(virtual.completed()).isEqualTo(CALLS);
+		if (CALLS > PLATFORM_THREADS) {
+			assertThat(virtual.peakConcurrent()).isGreaterThan(PLATFORM_THREADS);
+			assertThat(virtual.p99Ms()).isLessThan(platform.p99Ms());
+		}
+	}
+
+	/**
+	 * Start every call at once, as a burst of incoming webhooks would, and
+	 * time each from arrival to response, queueing included.
+	 */
+	private Capacity run(String mode, ExecutorService executor) throws InterruptedException {
+		peakInFlight.set(0);
+		List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger failed = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(CALLS);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < CALLS; i++) {
+			String callSid = "CA" + mode.hashCode() + "-" + i;
+			long arrived = System.nanoTime();
+			executor.execute(() -> {
+				try {
+					ultravoxService.createCallWithId(callSid, "https://example.invalid", null);
+					latencies.add(System.nanoTime() - arrived);
+				} catch (IOException | RuntimeException e) {
+					failed.incrementAndGet();
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		assertThat(done.await(5, TimeUnit.MINUTES)).isTrue();
+		long wallMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+		List<Long> sorted = new ArrayList<>(latencies);
+		sorted.sort(null);
+		return new Capacity(mode, sorted.size(), failed.get(), peakInFlight.get(), wallMs,
+				percentileMs(sorted, 0.50), percentileMs(sorted, 0.99));
+	}
+
+	/**
+	 * UltravoxService as the application builds it, with the call config
+	 * templates stubbed out since the body does not matter to the stand-in.
+	 */
+	private UltravoxService ultravoxService(boolean virtualThreads) throws IOException {
+		OkHttpClient client = new HttpClientConfig().okHttpClient(virtualThreads);
+		UltravoxCallConfigTemplates templates = mock(UltravoxCallConfigTemplates.class);
+		when(templates.resolveProfile(any())).thenReturn(UltravoxCallConfigTemplates.DEFAULT_PROFILE);
+		when(templates.render(anyString(), anyString(), any()))
+				.thenReturn("{}".getBytes(StandardCharsets.UTF_8));
+
+		UltravoxService service = new UltravoxService(new HttpClientConfig().objectMapper(), client, templates,
+				new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(service, "apiKey", "load-test");
+		ReflectionTestUtils.setField(service, "apiUrl", ultravox.url("/").toString().replaceAll("/$", ""));
+		ReflectionTestUtils.setField(service, "createCallDeadlineMs", TimeUnit.MINUTES.toMillis(1));
+		ReflectionTestUtils.setField(service, "hedgeEnabled", false);
+		ReflectionTestUtils.setField(service, "hedgePercentile", 0.95);
+		ReflectionTestUtils.setField(service, "hedgeInitialDelayMs", 1500L);
+		ReflectionTestUtils.setField(service, "hedgeMinDelayMs", 300L);
+		ReflectionTestUtils.setField(service, "maxConcurrentRequests", CALLS);
+		service.init();
+		return service;
+	}
+
+	private static long percentileMs(List<Long> sorted, double percentile) {
+		if (sorted.isEmpty()) {
+			return 0;
+		}
+		int index = Math.max(0, (int) Math.ceil(percentile * sorted.size()) - 1);
+		return Duration.ofNanos(sorted.get(index)).toMillis();
+	}
+}